@@ -0,0 +1,135 @@
+/*
+ * File: AdventureJmhBridge.java
+ * -----------------------------
+ * Hands the engine's hot paths to the JMH benchmarks.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.*;
+
+/* Class: AdventureJmhBridge */
+/**
+ * The game lives in the unnamed package, which classes in a named package (as
+ * JMH requires benchmarks to be) cannot refer to.  This class sits in the unnamed
+ * package too and wraps each hot path in a standard functional interface; the
+ * benchmarks look its methods up by reflection once, in their setup, so the
+ * measured calls are plain interface calls.
+ *
+ * Game files are looked up in the folder named by the adventure.home system
+ * property, or the current folder if it is not set.
+ */
+
+public class AdventureJmhBridge {
+
+	/**
+	 * @param game is the name of a game, e.g. "Crowther".
+	 * @return is the path prefix of that game's files.
+	 */
+	public static String gamePath(String game) {
+		return Path.of(System.getProperty("adventure.home", "."), game).toString();
+	}
+
+	/**
+	 * @param game is the name of a game.
+	 * @param snapshot is true to load the compiled snapshot (compiling it first)
+	 * rather than the text files.
+	 * @return is a loader of that game's world.
+	 */
+	public static Callable<Object> worldLoader(String game, boolean snapshot) throws IOException {
+		String path = gamePath(game);
+		if (!snapshot) return () -> AdvWorld.readFromText(path);
+		AdvWorldSnapshot.write(AdvWorld.readFromText(path), path);
+		return () -> AdvWorldSnapshot.read(path);
+	}
+
+	/**
+	 * @param game is the name of a game.
+	 * @return is the command parser of a session playing that game.
+	 */
+	public static Function<String, Object> commandParser(String game) throws IOException {
+		Adventure session = startSession(game);
+		return session::parseCommand;
+	}
+
+	/**
+	 * @param game is the name of a game.
+	 * @return is a session playing that game, which discards its output; each call
+	 * runs one line of input and tells whether the game is still going on.
+	 */
+	public static Predicate<String> session(String game) throws IOException {
+		return startSession(game)::execute;
+	}
+
+	/**
+	 * @param game is the name of a game with a ...Test.txt transcript.
+	 * @return is a full replay of that transcript in a new session, from loading
+	 * the world to the end of the game.
+	 */
+	public static Runnable replay(String game) throws IOException {
+		String path = gamePath(game);
+		String transcript = Files.readString(Path.of(path + "Test.txt"));
+		// The first line names the game; point it at the files wherever they are:
+		String input = path + transcript.substring(transcript.indexOf('\n'));
+		return () -> new Adventure(new Scanner(input), nullOutput()).play();
+	}
+
+	/**
+	 * @param game is the name of a game with a ...Test.txt transcript.
+	 * @return is a writer of the saved state of a session that has played the
+	 * first half of that transcript; each call writes it to the given buffer.
+	 */
+	public static Consumer<ByteBuffer> snapshotWriter(String game) throws IOException {
+		Adventure session = startSession(game);
+		List<String> transcript = Files.readAllLines(Path.of(gamePath(game) + "Test.txt"));
+		for (String line : transcript.subList(1, transcript.size() / 2)) session.execute(line);
+		return out -> AdvSessionSnapshot.write(session, out);
+	}
+
+	/**
+	 * @param game is the name of a game.
+	 * @return is a reader of saved states into a session playing that game; each
+	 * call restores the state held by the given buffer.
+	 */
+	public static Consumer<ByteBuffer> snapshotReader(String game) throws IOException {
+		Adventure session = startSession(game);
+		return in -> {
+			try { AdvSessionSnapshot.read(session, in); }
+			catch (AdvFormatException exception) { throw new UncheckedIOException(exception); }
+		};
+	}
+
+	/**
+	 * @param game is the name of a game with a ...Test.txt transcript.
+	 * @param measured is true to measure sessions with AdvMetrics, false not to.
+	 * @return is a replay of that transcript, short of winning, in a new session
+	 * of a world loaded once, with measuring switched on or off for every session.
+	 */
+	public static Runnable metricsReplay(String game, boolean measured) throws IOException {
+		AdvWorld world = AdvWorld.readFromText(gamePath(game));
+		List<String> transcript = Files.readAllLines(Path.of(gamePath(game) + "Test.txt"));
+		List<String> commands = transcript.subList(1, transcript.size() - 10);
+		AdvMetrics.setEnabled(measured);
+		return () -> {
+			Adventure session = new Adventure(new Scanner(""), nullOutput());
+			session.start(world);
+			for (String line : commands) session.execute(line);
+		};
+	}
+
+	private static Adventure startSession(String game) throws IOException {
+		AdvWorld world = AdvWorld.readFromText(gamePath(game));
+		if (world == null) throw new FileNotFoundException("No Rooms file for " + gamePath(game));
+		Adventure session = new Adventure(new Scanner(""), nullOutput());
+		session.start(world);
+		return session;
+	}
+
+	private static AdvOutput nullOutput() {
+		return new AdvOutput.Channel(Channels.newChannel(OutputStream.nullOutputStream()));
+	}
+}
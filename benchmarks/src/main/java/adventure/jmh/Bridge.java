@@ -0,0 +1,28 @@
+package adventure.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Looks up the hot paths that AdventureJmhBridge (in the unnamed package, with
+ * the game) hands out.  Only used from the benchmarks' setup methods.
+ */
+final class Bridge {
+
+	private Bridge() {}
+
+	@SuppressWarnings("unchecked")
+	static <T> T get(String method, Object... args) throws Exception {
+		Class<?> bridge = Class.forName("AdventureJmhBridge");
+		for (Method m : bridge.getMethods()) {
+			if (!m.getName().equals(method) || m.getParameterCount() != args.length) continue;
+			try {
+				return (T) m.invoke(null, args);
+			}
+			catch (InvocationTargetException exception) {
+				throw (exception.getCause() instanceof Exception e) ? e : exception;
+			}
+		}
+		throw new NoSuchMethodException("AdventureJmhBridge." + method);
+	}
+}
@@ -0,0 +1,42 @@
+package adventure.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Turning a line of input into a command, for every line of CrowtherTest.txt.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParseBenchmark {
+
+	private Function<String, Object> parser;
+	private String[] lines;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		parser = Bridge.get("commandParser", "Crowther");
+		String path = Bridge.get("gamePath", "Crowther");
+		List<String> transcript = Files.readAllLines(Path.of(path + "Test.txt"));
+		lines = transcript.subList(1, transcript.size()).stream()
+				.map(line -> line.trim().toUpperCase())
+				.toArray(String[]::new);
+	}
+
+	@Benchmark
+	public Object parse() {
+		String line = lines[next];
+		next = (next + 1) % lines.length;
+		return parser.apply(line);
+	}
+}
@@ -0,0 +1,34 @@
+package adventure.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * What AdvMetrics costs: the Crowther test transcript, short of winning, played
+ * in a new session with measuring switched off and on.  Each setting runs in a
+ * fork of its own, so the JIT does not see the other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean measured;
+
+	private Runnable replay;
+
+	@Setup
+	public void setup() throws Exception {
+		replay = Bridge.get("metricsReplay", "Crowther", measured);
+	}
+
+	@Benchmark
+	public void replay() {
+		replay.run();
+	}
+}
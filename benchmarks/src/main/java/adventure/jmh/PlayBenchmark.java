@@ -0,0 +1,49 @@
+package adventure.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Single commands in a running game of Small: moving between two rooms,
+ * taking and dropping an object, and looking around.  Each call includes
+ * echoing the command and flushing its output to a discarding channel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayBenchmark {
+
+	private Predicate<String> moving;
+	private Predicate<String> inBuilding;
+
+	@Setup
+	public void setup() throws Exception {
+		moving = Bridge.get("session", "Small");
+		inBuilding = Bridge.get("session", "Small");
+		inBuilding.test("IN"); // the keys are inside the building
+	}
+
+	/** Out to the end of the road and back again. */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public boolean move() {
+		return moving.test("WEST") & moving.test("EAST");
+	}
+
+	/** The keys into the inventory and back into the room. */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public boolean takeDrop() {
+		return inBuilding.test("TAKE KEYS") & inBuilding.test("DROP KEYS");
+	}
+
+	@Benchmark
+	public boolean look() {
+		return inBuilding.test("LOOK");
+	}
+}
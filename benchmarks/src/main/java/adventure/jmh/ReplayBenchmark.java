@@ -0,0 +1,33 @@
+package adventure.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A full game in a new session: loading the world from its text files and
+ * replaying the game's whole ...Test.txt transcript.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+	@Param({ "Small", "Crowther" })
+	public String game;
+
+	private Runnable replay;
+
+	@Setup
+	public void setup() throws Exception {
+		replay = Bridge.get("replay", game);
+	}
+
+	@Benchmark
+	public void replay() {
+		replay.run();
+	}
+}
@@ -0,0 +1,48 @@
+package adventure.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Writing and reading the saved state of a game of Crowther that has played
+ * half of its test transcript, as a server checkpointing idle sessions would.
+ * The size of the snapshot is printed once, in the setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionSnapshotBenchmark {
+
+	private Consumer<ByteBuffer> writer;
+	private Consumer<ByteBuffer> reader;
+	private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+	@Setup
+	public void setup() throws Exception {
+		writer = Bridge.get("snapshotWriter", "Crowther");
+		reader = Bridge.get("snapshotReader", "Crowther");
+		writer.accept(buffer);
+		System.out.println("\nsnapshot size: " + buffer.position() + " bytes");
+		buffer.flip();
+	}
+
+	@Benchmark
+	public ByteBuffer write() {
+		buffer.clear();
+		writer.accept(buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public ByteBuffer read() {
+		buffer.rewind();
+		reader.accept(buffer);
+		return buffer;
+	}
+}
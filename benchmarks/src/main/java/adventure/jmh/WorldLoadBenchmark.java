@@ -0,0 +1,36 @@
+package adventure.jmh;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Loading a whole world, from its text files or from its compiled snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldLoadBenchmark {
+
+	@Param({ "Tiny", "Small", "Crowther" })
+	public String game;
+
+	@Param({ "text", "snapshot" })
+	public String source;
+
+	private Callable<Object> loader;
+
+	@Setup
+	public void setup() throws Exception {
+		loader = Bridge.get("worldLoader", game, source.equals("snapshot"));
+	}
+
+	@Benchmark
+	public Object load() throws Exception {
+		return loader.call();
+	}
+}
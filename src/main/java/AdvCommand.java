@@ -38,6 +38,47 @@ public abstract class AdvCommand {
 	/** The predefined entry for the DROP command */
 	public static final AdvCommand HELP = new HelpCommand();
 
+	/** The predefined entry for the SAVE command */
+	public static final AdvCommand SAVE = new SaveCommand();
+
+	/** The predefined entry for the RESTORE command */
+	public static final AdvCommand RESTORE = new RestoreCommand();
+
+	/** The predefined entry for the HINT command */
+	public static final AdvCommand HINT = new HintCommand(false);
+
+	/** The predefined entry for the GOTO command, which only exists for testing */
+	public static final AdvCommand GOTO = new HintCommand(true);
+
+	private final String name;
+	private final AdvMetrics.Timer timer;
+
+	/* Constructor: AdvCommand(name) */
+	/**
+	 * Creates a command with the given name, which is what its metrics are
+	 * reported under (see AdvMetrics).  Commands with the same name share them.
+	 *
+	 * @param name The canonical name of the command, e.g. "TAKE" or "NORTH"
+	 */
+	protected AdvCommand(String name) {
+		this.name = name;
+		this.timer = AdvMetrics.commandTimer(name);
+	}
+
+	/**
+	 * @return is the canonical name of this command.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return is the counts and latencies of the commands of this name.
+	 */
+	AdvMetrics.Timer getTimer() {
+		return timer;
+	}
+
 	/* Abstract method: execute(game, obj) */
 	/**
 	 * Executes this command in the context of the specified adventure game. The
@@ -46,7 +87,7 @@ public abstract class AdvCommand {
 	 * appropriate object in the case of the TAKE and DROP commands.
 	 * 
 	 * @usage command.execute(game, obj);
-	 * @param game The instance of the Adventure class that represents the game
+	 * @param game The Adventure session (one player's game) the command runs against
 	 * @param modifiers Modifiers to the execution.  Null allowed no modifiers are necessary.
 	 */
 	public abstract void execute(Adventure game, String[] modifiers);
@@ -59,9 +100,13 @@ public abstract class AdvCommand {
  */
 
 class QuitCommand extends AdvCommand {
+	QuitCommand() {
+		super("QUIT");
+	}
+
 	public void execute(Adventure game, String[] modifiers) {
 		if (modifiers != null) {
-			System.out.println("Do not use a modifier with a quit command.");
+			game.getOutput().println("Do not use a modifier with a quit command.");
 			return;
 		}
 		game.executeQuitCommand();
@@ -74,9 +119,13 @@ class QuitCommand extends AdvCommand {
  */
 
 class LookCommand extends AdvCommand {
+	LookCommand() {
+		super("LOOK");
+	}
+
 	public void execute(Adventure game, String[] modifiers) {
 		if (modifiers != null) {
-			System.out.println("Do not use a modifier with a look command.");
+			game.getOutput().println("Do not use a modifier with a look command.");
 			return;
 		}
 		game.executeLookCommand();
@@ -89,9 +138,13 @@ class LookCommand extends AdvCommand {
  */
 
 class InventoryCommand extends AdvCommand {
+	InventoryCommand() {
+		super("INVENTORY");
+	}
+
 	public void execute(Adventure game, String[] modifiers) {
 		if (modifiers != null) {
-			System.out.println("Do not use a modifier with an inventory command.");
+			game.getOutput().println("Do not use a modifier with an inventory command.");
 			return;
 		}
 		game.executeInventoryCommand();
@@ -104,6 +157,10 @@ class InventoryCommand extends AdvCommand {
  */
 
 class TakeCommand extends AdvCommand {
+	TakeCommand() {
+		super("TAKE");
+	}
+
 	public void execute(Adventure game,String[] modifiers) {
 		game.executeTakeCommand(modifiers);
 	}
@@ -115,6 +172,10 @@ class TakeCommand extends AdvCommand {
  */
 
 class DropCommand extends AdvCommand {
+	DropCommand() {
+		super("DROP");
+	}
+
 	public void execute(Adventure game, String[] modifiers) {
 		game.executeDropCommand(modifiers);
 	}
@@ -126,7 +187,60 @@ class DropCommand extends AdvCommand {
  */
 
 class HelpCommand extends AdvCommand {
+	HelpCommand() {
+		super("HELP");
+	}
+
 	public void execute(Adventure game, String[] modifiers) {
 		game.executeHelpCommand(modifiers);
 	}
-}
\ No newline at end of file
+}
+
+/* Package class: SaveCommand */
+/**
+ * This class implements the SAVE command.
+ */
+
+class SaveCommand extends AdvCommand {
+	SaveCommand() {
+		super("SAVE");
+	}
+
+	public void execute(Adventure game, String[] modifiers) {
+		game.executeSaveCommand(modifiers);
+	}
+}
+
+/* Package class: RestoreCommand */
+/**
+ * This class implements the RESTORE command.
+ */
+
+class RestoreCommand extends AdvCommand {
+	RestoreCommand() {
+		super("RESTORE");
+	}
+
+	public void execute(Adventure game, String[] modifiers) {
+		game.executeRestoreCommand(modifiers);
+	}
+}
+
+/* Package class: HintCommand */
+/**
+ * This class implements the HINT command, and the GOTO command, which walks the
+ * route that HINT would give.
+ */
+
+class HintCommand extends AdvCommand {
+	private final boolean walk;
+
+	HintCommand(boolean walk) {
+		super(walk ? "GOTO" : "HINT");
+		this.walk = walk;
+	}
+
+	public void execute(Adventure game, String[] modifiers) {
+		game.executeHintCommand(modifiers, walk);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * File: AdvFormatException.java
+ * -----------------------------
+ * This file defines the error reported for badly formatted game files.
+ */
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+
+/* Class: AdvFormatException */
+/**
+ * Thrown when a game file does not follow the format described in the
+ * assignment handout.  The message names the line the problem was found on.
+ */
+
+public class AdvFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int lineNumber;
+
+/* Constructor: AdvFormatException(rd, problem) */
+/**
+ * Creates an exception for a problem on the line most recently read from rd.
+ *
+ * @param rd The reader the bad line was read from
+ * @param problem A description of what is wrong with that line
+ */
+	public AdvFormatException(LineNumberReader rd, String problem) {
+		this(rd.getLineNumber(), problem);
+	}
+
+/* Constructor: AdvFormatException(lineNumber, problem) */
+/**
+ * Creates an exception for a problem on the given line, for parsers that do
+ * not read through a LineNumberReader.
+ *
+ * @param lineNumber The number of the bad line, counting from 1
+ * @param problem A description of what is wrong with that line
+ */
+	public AdvFormatException(int lineNumber, String problem) {
+		super("line " + lineNumber + ": " + problem);
+		this.lineNumber = lineNumber;
+	}
+
+/* Constructor: AdvFormatException(problem) */
+/**
+ * Creates an exception for a problem that is not on any one line, such as
+ * one found when the parts of a world are linked together.
+ *
+ * @param problem A description of what is wrong
+ */
+	public AdvFormatException(String problem) {
+		super(problem);
+		lineNumber = 0;
+	}
+
+/* Constructor: AdvFormatException(fileName, cause) */
+/**
+ * Creates a copy of cause whose message also names the file it came from.
+ *
+ * @param fileName The name of the file that was being read
+ * @param cause The exception reported by the reader of that file
+ */
+	public AdvFormatException(String fileName, AdvFormatException cause) {
+		super(fileName + ", " + cause.getMessage(), cause);
+		lineNumber = cause.lineNumber;
+	}
+
+/* Method: getLineNumber() */
+/**
+ * Returns the number of the line the problem was found on, counting from 1.
+ *
+ * @return The line number, or 0 if the problem is not on any one line
+ */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
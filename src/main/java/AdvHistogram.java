@@ -0,0 +1,152 @@
+/*
+ * File: AdvHistogram.java
+ * -----------------------
+ * This file defines a latency histogram that many sessions can record into at
+ * once.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/* Class: AdvHistogram */
+/**
+ * This class counts durations in log-linear buckets: exact below 16 ns, then
+ * eight buckets for every power of two, so any duration is placed within 12.5%
+ * of its value.  Recording is a couple of shifts and one atomic increment.  To
+ * keep sessions on different cores from fighting over the same counters, the
+ * counts are kept in several stripes, chosen by thread, and are only added up
+ * when the histogram is read.
+ */
+
+public class AdvHistogram {
+
+	private static final int EXACT = 16;
+	private static final int SUB_BUCKETS = 8;
+	private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+	private static final int STRIPES = Integer.highestOneBit(Math.min(64, 2 * Runtime.getRuntime().availableProcessors() - 1));
+
+	private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public AdvHistogram() {
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new AtomicLongArray(BUCKETS);
+	}
+
+	/* Method: record(nanos) */
+	/**
+	 * Counts one duration.
+	 *
+	 * @usage histogram.record(nanos);
+	 * @param nanos is the duration, in nanoseconds; negative ones count as 0.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		int stripe = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+		stripes[stripe].getAndIncrement(bucketOf(nanos));
+		if (nanos > max.get()) max.accumulate(nanos);
+	}
+
+	/* Method: snapshot() */
+	/**
+	 * Adds up the stripes into a copy of the histogram as it is now.  Durations
+	 * recorded while it runs may or may not be included.
+	 *
+	 * @usage AdvHistogram.Snapshot s = histogram.snapshot();
+	 * @return is the copy.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (AtomicLongArray stripe : stripes)
+			for (int i = 0; i < BUCKETS; i++)
+				counts[i] += stripe.get(i);
+		return new Snapshot(counts, max.get());
+	}
+
+	static int bucketOf(long nanos) {
+		if (nanos < EXACT) return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos); // at least 4
+		int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+		return EXACT + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return is the smallest duration that falls in the given bucket.
+	 */
+	static long lowestOf(int bucket) {
+		if (bucket < EXACT) return bucket;
+		int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+		int sub = (bucket - EXACT) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << (exponent - 3);
+	}
+
+	/* Class: AdvHistogram.Snapshot */
+	/**
+	 * The counts of a histogram at one moment.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long max;
+		private final double total;
+
+		Snapshot(long[] counts, long max) {
+			this.counts = counts;
+			long n = 0;
+			double sum = 0;
+			for (int i = 0; i < counts.length; i++) {
+				n += counts[i];
+				sum += counts[i] * (double) midpointOf(i);
+			}
+			this.count = n;
+			this.max = max;
+			this.total = sum;
+		}
+
+		/**
+		 * @return is the number of durations recorded.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return is the longest duration recorded, in nanoseconds.
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return is the mean duration, in nanoseconds, or 0 if there are none.
+		 */
+		public double getMean() {
+			return (count == 0) ? 0 : total / count;
+		}
+
+		/* Method: getPercentile(p) */
+		/**
+		 * Returns the duration that a given fraction of the recorded durations do
+		 * not exceed, to within the width of its bucket.
+		 *
+		 * @usage long p99 = snapshot.getPercentile(0.99);
+		 * @param p is the fraction, from 0 to 1.
+		 * @return is the duration, in nanoseconds, or 0 if there are none.
+		 */
+		public long getPercentile(double p) {
+			if (count == 0) return 0;
+			long rank = Math.max(1, (long) Math.ceil(p * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) return Math.min(max, midpointOf(i));
+			}
+			return max;
+		}
+
+		private static long midpointOf(int bucket) {
+			long low = lowestOf(bucket);
+			return (bucket < EXACT) ? low : low + (lowestOf(bucket + 1) - low) / 2;
+		}
+	}
+}
@@ -0,0 +1,576 @@
+/*
+ * File: AdvJournal.java
+ * ---------------------
+ * This file defines the write-ahead journal that lets a crashed server bring
+ * its games back.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.zip.CRC32C;
+
+/* Class: AdvJournal */
+/**
+ * This class writes every command a registered game accepts to disk before the
+ * command runs, so that a process that crashes can rebuild each game it was
+ * playing by replaying its commands.  Commands from all games go to one journal
+ * and are written by one thread in batches: whatever has been appended while the
+ * previous batch was being forced to disk is written and forced together, so a
+ * thousand games typing at once cost a handful of force() calls rather than a
+ * thousand.  A game does not go on until its command is on disk.
+ *
+ * The journal is a folder of segment files, journal-00000001.log and up, each a
+ * sequence of records: an int payload length, the CRC32C of the payload and the
+ * payload.  A payload is a record type, the session id, and then
+ *
+ * <ul>
+ * <li>SNAPSHOT: the game directory and a session snapshot (see
+ *     AdvSessionSnapshot), which replaces everything before it;
+ * <li>COMMAND: an input line that parsed to a command;
+ * <li>END: nothing; the game is over and need not be recovered.
+ * </ul>
+ *
+ * A game's first record is a snapshot of it, taken when it is registered.
+ * QUIT, SAVE and RESTORE are not journalled as commands, since replaying them
+ * would read input or files again; a game that is restored is journalled as a
+ * new snapshot instead.  A checkpoint starts a new segment, writes a snapshot of
+ * every registered game into it and deletes the older segments.  Each game is
+ * snapshotted and its snapshot appended between two of its commands, so that
+ * the commands before the snapshot in the new segment are those it includes.
+ * Checkpoints are taken when asked for, or every so often by a thread of the
+ * journal's own (see checkpointEvery).  A record that was cut short by a crash,
+ * which can only be the last one written, ends its segment.
+ */
+
+public class AdvJournal implements Closeable {
+
+	private static final byte SNAPSHOT = 1;
+	private static final byte COMMAND = 2;
+	private static final byte END = 3;
+
+	/**
+	 * A game rebuilt from the journal: the id it was registered under, its game
+	 * and its state, ready for AdvSessionSnapshot.read.
+	 */
+	public record Recovered(long id, String gameDirectory, byte[] state) {}
+
+	private final Path directory;
+	private final List<Recovered> recovered;
+	private final Thread writer;
+
+	// Everything below is guarded by lock:
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition appended = lock.newCondition();
+	private final Condition durable = lock.newCondition();
+	private final Condition rolled = lock.newCondition();
+	private final Condition closing = lock.newCondition();
+	private final Map<Long, Adventure> sessions = new HashMap<>();
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+	private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+	private FileChannel channel;
+	private int segment;
+	private long nextId;
+	private long appendedBytes;
+	private long durableBytes;
+	private long batches;
+	private long records;
+	private int batchRecords;
+	private int recordStart;
+	private boolean rolling;
+	private boolean closed;
+	private IOException failure;
+	private Thread checkpointer;
+	private long checkpoints;
+	private IOException checkpointFailure; // of the last scheduled checkpoint, if it failed
+
+	/* Method: open(directory) */
+	/**
+	 * Opens the journal in a folder, creating the folder if need be, and rebuilds
+	 * the games recorded in it (see getRecovered).  New records go to a new
+	 * segment after the existing ones.
+	 *
+	 * @usage AdvJournal journal = AdvJournal.open(directory);
+	 * @param directory is the folder holding the journal's segments.
+	 * @return is the open journal.
+	 */
+	public static AdvJournal open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		return new AdvJournal(directory);
+	}
+
+	private AdvJournal(Path directory) throws IOException {
+		this.directory = directory;
+		List<Path> segments = listSegments(directory);
+		long[] maxId = { 0 };
+		recovered = replay(segments, maxId);
+		nextId = maxId[0] + 1;
+		segment = segments.isEmpty() ? 1 : segmentNumber(segments.getLast()) + 1;
+		channel = createSegment(segment);
+		writer = Thread.ofPlatform().name("adventure-journal").daemon().start(this::writeBatches);
+	}
+
+	/* Method: getRecovered() */
+	/**
+	 * Returns the games that were still being played when the journal was last
+	 * closed or the process crashed.  They are only kept until the next
+	 * checkpoint, so a caller that wants to go on with one must register a game
+	 * restored from it under its id before then.
+	 *
+	 * @usage List<AdvJournal.Recovered> games = journal.getRecovered();
+	 * @return is the unfinished games, by id.
+	 */
+	public List<Recovered> getRecovered() {
+		return recovered;
+	}
+
+	/* Method: register(session) */
+	/**
+	 * Starts journalling a game under a new id, beginning with a snapshot of it.
+	 *
+	 * @usage long id = journal.register(session);
+	 * @param session is a started game, which must not be running a command.
+	 * @return is the id the game is journalled under.
+	 */
+	public long register(Adventure session) throws IOException {
+		lock.lock();
+		try { return register(session, nextId); }
+		finally { lock.unlock(); }
+	}
+
+	/* Method: register(session, id) */
+	/**
+	 * Starts journalling a game under a given id, e.g. one it was recovered under,
+	 * beginning with a snapshot of it.
+	 *
+	 * @usage journal.register(session, id);
+	 * @param session is a started game, which must not be running a command.
+	 * @param id is the id to journal it under.
+	 * @return is the id.
+	 */
+	public long register(Adventure session, long id) throws IOException {
+		byte[] state = AdvSessionSnapshot.toBytes(session);
+		long end;
+		lock.lock();
+		try {
+			if (sessions.containsKey(id)) throw new IllegalArgumentException("Session " + id + " is already registered");
+			nextId = Math.max(nextId, id + 1);
+			sessions.put(id, session);
+			session.setJournal(this, id);
+			end = appendSnapshot(id, session.getWorld().getDirectory(), state);
+		}
+		finally { lock.unlock(); }
+		awaitDurable(end);
+		return id;
+	}
+
+	/**
+	 * Journals a command a game is about to run, returning once it is on disk.
+	 */
+	void logCommand(long id, String line) throws IOException {
+		long end;
+		lock.lock();
+		try {
+			awaitRoll();
+			startRecord(COMMAND, id);
+			putString(line);
+			end = finishRecord();
+		}
+		finally { lock.unlock(); }
+		awaitDurable(end);
+	}
+
+	/**
+	 * Journals the whole state of a game, e.g. after RESTORE, returning once it is
+	 * on disk.
+	 */
+	void logSnapshot(Adventure session, long id) throws IOException {
+		byte[] state = AdvSessionSnapshot.toBytes(session);
+		long end;
+		lock.lock();
+		try { end = appendSnapshot(id, session.getWorld().getDirectory(), state); }
+		finally { lock.unlock(); }
+		awaitDurable(end);
+	}
+
+	/**
+	 * Journals the end of a game and stops journalling it, returning once the
+	 * record is on disk.
+	 */
+	void logEnd(long id) throws IOException {
+		long end;
+		lock.lock();
+		try {
+			if (sessions.remove(id) == null) return;
+			awaitRoll();
+			startRecord(END, id);
+			end = finishRecord();
+		}
+		finally { lock.unlock(); }
+		awaitDurable(end);
+	}
+
+	/* Method: checkpoint() */
+	/**
+	 * Starts a new segment holding a snapshot of every registered game, then
+	 * deletes every older segment, including any unclaimed recovered games.
+	 * Games go on while it runs; each is snapshotted between two of its commands.
+	 *
+	 * @usage journal.checkpoint();
+	 * @return is the number of games snapshotted.
+	 */
+	public int checkpoint() throws IOException {
+		List<Map.Entry<Long, Adventure>> live;
+		int oldest;
+		lock.lock();
+		try {
+			if (closed) throw new IOException("The journal is closed");
+			rolling = true;
+			try {
+				while (durableBytes < appendedBytes && failure == null) durable.awaitUninterruptibly();
+				checkFailure();
+				oldest = segment;
+				FileChannel next = createSegment(segment + 1);
+				channel.close();
+				channel = next;
+				segment++;
+			}
+			finally {
+				rolling = false;
+				rolled.signalAll();
+			}
+			live = new ArrayList<>(sessions.entrySet());
+		}
+		finally { lock.unlock(); }
+
+		long end = 0;
+		for (Map.Entry<Long, Adventure> e : live)
+			end = Math.max(end, e.getValue().checkpoint(this, e.getKey()));
+		awaitDurable(end);
+
+		for (Path p : listSegments(directory))
+			if (segmentNumber(p) <= oldest) Files.delete(p);
+		lock.lock();
+		try { checkpoints++; }
+		finally { lock.unlock(); }
+		return live.size();
+	}
+
+	/**
+	 * Appends a snapshot of a game to the checkpoint under way.  The game's lock
+	 * must be held, so that none of its commands is journalled in between.
+	 * @return is where the record ends, or 0 if the game is no longer registered.
+	 */
+	long appendCheckpoint(Adventure session, long id) throws IOException {
+		byte[] state = AdvSessionSnapshot.toBytes(session);
+		lock.lock();
+		try { return (sessions.get(id) == session) ? appendSnapshot(id, session.getWorld().getDirectory(), state) : 0; }
+		finally { lock.unlock(); }
+	}
+
+	/* Method: checkpointEvery(interval) */
+	/**
+	 * Starts taking a checkpoint every so often, on a thread of the journal's
+	 * own, until it is closed.  A checkpoint that fails is tried again after the
+	 * next interval; if the last one failed, close throws its exception.
+	 *
+	 * @usage journal.checkpointEvery(Duration.ofMinutes(5));
+	 * @param interval is the time from the end of one checkpoint to the start of
+	 * the next.
+	 */
+	public void checkpointEvery(Duration interval) {
+		long nanos = interval.toNanos();
+		if (nanos <= 0) throw new IllegalArgumentException("The interval must be positive");
+		lock.lock();
+		try {
+			if (closed) throw new IllegalStateException("The journal is closed");
+			if (checkpointer != null) throw new IllegalStateException("Checkpoints are already scheduled");
+			checkpointer = Thread.ofPlatform().name("adventure-checkpoint").daemon().start(() -> checkpointPeriodically(nanos));
+		}
+		finally { lock.unlock(); }
+	}
+
+	/**
+	 * The checkpoint thread: waits an interval, takes a checkpoint and starts
+	 * over, until the journal is closed.
+	 */
+	private void checkpointPeriodically(long nanos) {
+		while (true) {
+			lock.lock();
+			try {
+				for (long left = nanos; left > 0 && !closed; ) {
+					try { left = closing.awaitNanos(left); }
+					catch (InterruptedException exception) { return; }
+				}
+				if (closed) return;
+			}
+			finally { lock.unlock(); }
+
+			IOException problem = null;
+			try { checkpoint(); }
+			catch (IOException exception) { problem = exception; }
+			lock.lock();
+			try {
+				if (closed) return; // it failed because the journal was closed under it
+				checkpointFailure = problem;
+			}
+			finally { lock.unlock(); }
+		}
+	}
+
+	/**
+	 * @return is the number of checkpoints taken so far.
+	 */
+	public long getCheckpointCount() {
+		lock.lock();
+		try { return checkpoints; }
+		finally { lock.unlock(); }
+	}
+
+	/**
+	 * @return is the number of batches written (and forced) so far.
+	 */
+	public long getBatchCount() {
+		lock.lock();
+		try { return batches; }
+		finally { lock.unlock(); }
+	}
+
+	/**
+	 * @return is the number of records written so far.
+	 */
+	public long getRecordCount() {
+		lock.lock();
+		try { return records; }
+		finally { lock.unlock(); }
+	}
+
+	/* Method: close() */
+	/**
+	 * Writes everything appended so far, stops the scheduled checkpoints and
+	 * closes the journal.  The games that are still registered are recovered the
+	 * next time it is opened.
+	 *
+	 * @usage journal.close();
+	 */
+	public void close() throws IOException {
+		Thread scheduled;
+		lock.lock();
+		try {
+			if (closed) return;
+			closed = true;
+			appended.signalAll();
+			closing.signalAll();
+			scheduled = checkpointer;
+		}
+		finally { lock.unlock(); }
+		try {
+			if (scheduled != null) scheduled.join();
+			writer.join();
+		}
+		catch (InterruptedException exception) { Thread.currentThread().interrupt(); }
+		channel.close();
+		checkFailure();
+		if (checkpointFailure != null) throw new IOException("The last scheduled checkpoint failed", checkpointFailure);
+	}
+
+	/**
+	 * The writer thread: writes and forces whatever has been appended since the
+	 * last batch, until the journal is closed and everything is written.
+	 */
+	private void writeBatches() {
+		while (true) {
+			long end;
+			FileChannel ch;
+			int count;
+			lock.lock();
+			try {
+				while (pending.position() == 0 && !closed) appended.awaitUninterruptibly();
+				if (pending.position() == 0) return;
+				ByteBuffer full = pending;
+				pending = writing;
+				writing = full;
+				end = appendedBytes;
+				ch = channel;
+				count = batchRecords;
+				batchRecords = 0;
+			}
+			finally { lock.unlock(); }
+
+			IOException problem = null;
+			try {
+				writing.flip();
+				while (writing.hasRemaining()) ch.write(writing);
+				ch.force(false);
+			}
+			catch (IOException exception) {
+				problem = exception;
+			}
+			writing.clear();
+
+			lock.lock();
+			try {
+				if (problem != null && failure == null) failure = problem;
+				durableBytes = end;
+				batches++;
+				records += count;
+				durable.signalAll();
+			}
+			finally { lock.unlock(); }
+		}
+	}
+
+	private void awaitDurable(long end) throws IOException {
+		lock.lock();
+		try {
+			while (durableBytes < end && failure == null) durable.awaitUninterruptibly();
+			checkFailure();
+		}
+		finally { lock.unlock(); }
+	}
+
+	private void awaitRoll() throws IOException {
+		while (rolling) rolled.awaitUninterruptibly();
+		if (closed) throw new IOException("The journal is closed");
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) throw new IOException("The journal could not be written", failure);
+	}
+
+	private long appendSnapshot(long id, String gameDirectory, byte[] state) throws IOException {
+		awaitRoll();
+		startRecord(SNAPSHOT, id);
+		putString(gameDirectory);
+		ensure(4 + state.length);
+		pending.putInt(state.length).put(state);
+		return finishRecord();
+	}
+
+	private void startRecord(byte type, long id) {
+		ensure(8 + 9);
+		recordStart = pending.position();
+		pending.position(recordStart + 8);
+		pending.put(type).putLong(id);
+	}
+
+	private long finishRecord() {
+		int length = pending.position() - recordStart - 8;
+		CRC32C crc = new CRC32C();
+		crc.update(pending.array(), recordStart + 8, length);
+		pending.putInt(recordStart, length).putInt(recordStart + 4, (int) crc.getValue());
+		appendedBytes += length + 8;
+		batchRecords++;
+		appended.signal();
+		return appendedBytes;
+	}
+
+	private void putString(String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		ensure(4 + bytes.length);
+		pending.putInt(bytes.length).put(bytes);
+	}
+
+	private void ensure(int bytes) {
+		if (pending.remaining() >= bytes) return;
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+		pending.flip();
+		pending = bigger.put(pending);
+	}
+
+	private FileChannel createSegment(int number) throws IOException {
+		Path path = directory.resolve(String.format("journal-%08d.log", number));
+		return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	private static List<Path> listSegments(Path directory) throws IOException {
+		try (var files = Files.list(directory)) {
+			return files.filter(p -> p.getFileName().toString().matches("journal-\\d{8}\\.log")).sorted().toList();
+		}
+	}
+
+	private static int segmentNumber(Path segment) {
+		String name = segment.getFileName().toString();
+		return Integer.parseInt(name.substring("journal-".length(), name.length() - ".log".length()));
+	}
+
+	/**
+	 * Rebuilds the unfinished games recorded in the given segments, replaying
+	 * each game's commands since its latest snapshot in a session whose output is
+	 * thrown away.
+	 * @param maxId is set to the highest session id seen.
+	 */
+	private static List<Recovered> replay(List<Path> segments, long[] maxId) throws IOException {
+		Map<Long, Recovered> latest = new LinkedHashMap<>();
+		Map<Long, Adventure> replaying = new HashMap<>();
+		AdvOutput discard = new AdvOutput() {
+			protected void write(CharSequence text) {}
+		};
+
+		for (Path p : segments) {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(p));
+			CRC32C crc = new CRC32C();
+			while (in.remaining() >= 8) {
+				int length = in.getInt();
+				int sum = in.getInt();
+				if (length < 9 || length > in.remaining()) break; // cut short by a crash
+				crc.reset();
+				crc.update(in.array(), in.position(), length);
+				if ((int) crc.getValue() != sum) break;
+				ByteBuffer record = in.slice(in.position(), length);
+				in.position(in.position() + length);
+
+				byte type = record.get();
+				long id = record.getLong();
+				maxId[0] = Math.max(maxId[0], id);
+				switch (type) {
+					case SNAPSHOT -> {
+						String game = getString(record);
+						byte[] state = new byte[record.getInt()];
+						record.get(state);
+						latest.put(id, new Recovered(id, game, state));
+						replaying.remove(id);
+					}
+					case COMMAND -> {
+						Recovered r = latest.get(id);
+						if (r == null) continue; // its snapshot was checkpointed away.
+						Adventure session = replaying.get(id);
+						if (session == null) {
+							session = new Adventure(new Scanner(""), discard);
+							AdvWorld world = AdvWorldCache.shared().get(r.gameDirectory());
+							if (world == null) throw new FileNotFoundException("No Rooms file for " + r.gameDirectory());
+							session.start(world);
+							AdvSessionSnapshot.read(session, ByteBuffer.wrap(r.state()));
+							replaying.put(id, session);
+						}
+						session.execute(getString(record));
+					}
+					case END -> {
+						latest.remove(id);
+						replaying.remove(id);
+					}
+					default -> throw new AdvFormatException(p.getFileName() + ": unknown record type " + type);
+				}
+			}
+		}
+
+		List<Recovered> games = new ArrayList<>();
+		for (Recovered r : latest.values()) {
+			Adventure session = replaying.get(r.id());
+			games.add((session == null) ? r : new Recovered(r.id(), r.gameDirectory(), AdvSessionSnapshot.toBytes(session)));
+		}
+		return games;
+	}
+
+	private static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * File: AdvMetrics.java
+ * ---------------------
+ * This file defines the counters and latency histograms of every session in
+ * this process.
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.*;
+
+/* Class: AdvMetrics */
+/**
+ * This class measures where the sessions of this process spend their time: how
+ * long parsing a line of input takes, how long each command takes to execute
+ * (one histogram per command name, so each direction of motion has its own), and
+ * how long loading a world takes, along with how many lines were read and how
+ * many of them were not valid commands.
+ *
+ * Reading the clock costs about as much as parsing a line, so the counts are
+ * exact but only a sample of the lines are timed: each session times about one
+ * line in getSampleInterval(), chosen at random so that a repetitive player is
+ * not always caught at the same point.  While a flight recording that enables
+ * the JFR events adventure.Command and adventure.WorldLoad is running, every
+ * line is timed and recorded as an event, e.g. with
+ *
+ *     java -XX:StartFlightRecording:filename=adventure.jfr AdventureServer Crowther
+ *
+ * The figures can be polled with snapshot(), which is cheap enough to call every
+ * second.  Measuring can be switched off with setEnabled(false), to see what it
+ * costs.
+ */
+
+public class AdvMetrics {
+
+	private static final ConcurrentHashMap<String, Timer> commands = new ConcurrentHashMap<>();
+	private static final AdvHistogram parsing = new AdvHistogram();
+	private static final AdvHistogram worldLoads = new AdvHistogram();
+	private static final LongAdder inputs = new LongAdder();
+	private static final LongAdder invalidInputs = new LongAdder();
+	private static boolean enabled = true;
+	private static int sampleInterval = 16;
+
+	private AdvMetrics() {}
+
+	/**
+	 * @return is true if sessions are being measured.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Switches measuring on or off for every session.  It is meant to be set once,
+	 * before sessions start; sessions already running may take a while to notice.
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * @return is the average number of lines between two that are timed.
+	 */
+	public static int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Sets how many lines each session reads, on average, for every one it
+	 * times; 1 times them all.
+	 */
+	public static void setSampleInterval(int lines) {
+		sampleInterval = Math.max(1, lines);
+	}
+
+	/**
+	 * @return is the number of lines a session should read before it times the
+	 * next one.
+	 */
+	static int nextSample() {
+		return (sampleInterval == 1) ? 1 : ThreadLocalRandom.current().nextInt(1, 2 * sampleInterval);
+	}
+
+	/**
+	 * @return is true if a flight recording of the command events is running, in
+	 * which case every line must be timed.
+	 */
+	static boolean isRecording() {
+		return new CommandEvent().isEnabled();
+	}
+
+	/**
+	 * @return is the timer of the command with the given name, which all the
+	 * commands of that name share.
+	 */
+	static Timer commandTimer(String name) {
+		return commands.computeIfAbsent(name, n -> new Timer());
+	}
+
+	/**
+	 * Counts one line of input.
+	 * @param valid is false if it was not a command.
+	 */
+	static void countInput(boolean valid) {
+		inputs.increment();
+		if (!valid) invalidInputs.increment();
+	}
+
+	/**
+	 * Records how long a line took to parse and execute, as a JFR event too if
+	 * one is being recorded.
+	 * @param command is the command the line parsed to, or null if it was not one.
+	 * @param parseNanos is how long parsing took.
+	 * @param executeNanos is how long the command took to execute.
+	 */
+	static void recordTimes(AdvCommand command, long parseNanos, long executeNanos) {
+		parsing.record(parseNanos);
+		if (command == null) return;
+		command.getTimer().latency.record(executeNanos);
+		CommandEvent event = new CommandEvent();
+		if (event.isEnabled()) {
+			event.command = command.getName();
+			event.nanos = executeNanos;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records that a world has been loaded, as a JFR event too if one is being
+	 * recorded.
+	 * @param gameDirectory is the game that was loaded.
+	 * @param nanos is how long it took.
+	 */
+	static void recordWorldLoad(String gameDirectory, long nanos) {
+		worldLoads.record(nanos);
+		WorldLoadEvent event = new WorldLoadEvent();
+		if (event.isEnabled()) {
+			event.game = gameDirectory;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	/* Method: snapshot() */
+	/**
+	 * Returns the figures of every session so far, since the process started.
+	 * Callers who want rates can subtract two snapshots' counts.
+	 *
+	 * @usage AdvMetrics.Snapshot s = AdvMetrics.snapshot();
+	 * @return is a copy of the figures as they are now.
+	 */
+	public static Snapshot snapshot() {
+		Map<String, CommandStats> byCommand = new TreeMap<>();
+		for (Map.Entry<String, Timer> e : commands.entrySet()) {
+			long calls = e.getValue().calls.sum();
+			if (calls > 0) byCommand.put(e.getKey(), new CommandStats(calls, e.getValue().latency.snapshot()));
+		}
+		return new Snapshot(inputs.sum(), invalidInputs.sum(), parsing.snapshot(), worldLoads.snapshot(), byCommand);
+	}
+
+	/* Class: AdvMetrics.Snapshot */
+	/**
+	 * The figures of every session at one moment.
+	 *
+	 * @param inputs is the number of lines of input parsed.
+	 * @param invalidInputs is the number of those that were not a command.
+	 * @param parsing is how long parsing the lines that were timed took.
+	 * @param worldLoads is how long loading a world took.
+	 * @param commands is the figures of each command that has been executed, by
+	 * command name.
+	 */
+	public record Snapshot(long inputs, long invalidInputs, AdvHistogram.Snapshot parsing,
+			AdvHistogram.Snapshot worldLoads, Map<String, CommandStats> commands) {
+
+		/**
+		 * @return is the fraction of the lines of input that were not a command.
+		 */
+		public double invalidRate() {
+			return (inputs == 0) ? 0 : invalidInputs / (double) inputs;
+		}
+
+		/**
+		 * @return is a table of the figures, one line per histogram.
+		 */
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			text.append(String.format("%d inputs, %d invalid (%.2f%%)%n", inputs, invalidInputs, 100 * invalidRate()));
+			text.append(String.format("%-16s %10s %10s %10s %10s %10s %10s%n",
+					"", "count", "timed", "mean us", "p50 us", "p99 us", "max us"));
+			appendRow(text, "(parse)", inputs, parsing);
+			appendRow(text, "(world load)", worldLoads.getCount(), worldLoads);
+			for (Map.Entry<String, CommandStats> e : commands.entrySet())
+				appendRow(text, e.getKey(), e.getValue().calls(), e.getValue().latency());
+			return text.toString();
+		}
+
+		private static void appendRow(StringBuilder text, String name, long count, AdvHistogram.Snapshot s) {
+			text.append(String.format("%-16s %10d %10d %10.2f %10.2f %10.2f %10.2f%n", name, count, s.getCount(),
+					s.getMean() / 1e3, s.getPercentile(0.5) / 1e3, s.getPercentile(0.99) / 1e3, s.getMax() / 1e3));
+		}
+	}
+
+	/**
+	 * The figures of one command.
+	 *
+	 * @param calls is the number of times it was executed.
+	 * @param latency is how long the executions that were timed took.
+	 */
+	public record CommandStats(long calls, AdvHistogram.Snapshot latency) {}
+
+	/**
+	 * The figures kept for each command name.
+	 */
+	static final class Timer {
+		final LongAdder calls = new LongAdder();
+		final AdvHistogram latency = new AdvHistogram();
+	}
+
+	@Name("adventure.Command")
+	@Label("Command")
+	@Category("Adventure")
+	@Description("A command executed by a session")
+	static class CommandEvent extends Event {
+		@Label("Command")
+		String command;
+
+		@Label("Execution Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+	}
+
+	@Name("adventure.WorldLoad")
+	@Label("World Load")
+	@Category("Adventure")
+	@Description("A world loaded from its game files")
+	static class WorldLoadEvent extends Event {
+		@Label("Game")
+		String game;
+
+		@Label("Load Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+	}
+}
@@ -7,15 +7,18 @@
 
 public class AdvMotionCommand extends AdvCommand {
 
-/* Constructor: AdvMotionCommand(dir) */
+/* Constructor: AdvMotionCommand(dir, dirId) */
 /**
  * Creates a new AdvMotionCommand for the specified direction.
  *
- * @usage command = new AdvMotionCommand(dir);
+ * @usage command = new AdvMotionCommand(dir, dirId);
  * @param dir The string corresponding to the direction of motion
+ * @param dirId The symbol id of that direction in its world
  */
-	public AdvMotionCommand(String dir) {
+	public AdvMotionCommand(String dir, int dirId) {
+		super(dir);
 		direction = dir;
+		directionId = dirId;
 	}
 
 /* Method: execute(adv, obj) */
@@ -27,13 +30,14 @@ public class AdvMotionCommand extends AdvCommand {
  */
 	public void execute(Adventure game, String[] modifiers) {
 		if (modifiers != null) {
-			System.out.println("Do not use a modifier with a movement command.");
+			game.getOutput().println("Do not use a modifier with a movement command.");
 			return;
 		}
-		game.executeMotionCommand(direction);
+		game.executeMotionCommand(directionId);
 	}
 
 /* Private instance variables */
 
 	private String direction;
+	private int directionId;
 }
@@ -7,6 +7,8 @@ public class AdvMotionTableEntry {
 	private final String direction;
 	private final int destinationRoom;
 	private final String keyName;
+	private int directionId = -1;
+	private int keyId = -1;
 
 /* Constructor: AdvMotionTableEntry(dir, room, key) */
 /**
@@ -50,4 +52,33 @@ public class AdvMotionTableEntry {
 	public String getKeyName() {
 		return keyName;
 	}
+
+/**
+ * Returns the symbol id of the direction, once the world this entry
+ * belongs to has been linked.
+ *
+ * @return The id of the direction of motion
+ */
+	public int getDirectionId() {
+		return directionId;
+	}
+
+/**
+ * Returns the symbol id of the object required for travel along a locked
+ * passage, or -1 if the passage is always available.
+ *
+ * @return The id of the object used as a key, or -1 if none
+ */
+	public int getKeyId() {
+		return keyId;
+	}
+
+/**
+ * Gives this entry the symbol ids of its direction and key.  This is
+ * done once, when the world the entry belongs to is linked.
+ */
+	void bind(AdvSymbolTable symbols) {
+		directionId = symbols.intern(direction);
+		keyId = (keyName == null) ? -1 : symbols.intern(keyName);
+	}
 }
@@ -6,7 +6,6 @@
  */
 
 import java.io.*;
-import java.util.Scanner;
 
 /* Class: AdvObject */
 /**
@@ -29,6 +28,22 @@ public class AdvObject  {
 	private String name;
 	private String description;
 	private int roomIndex;
+	private int roomLine; // the line of its room number in the objects file, or 0
+	private int id = -1;
+	private int index = -1;
+
+	private AdvObject() {}
+
+/* Constructor: AdvObject(name, description, roomIndex) */
+/**
+ * Creates an object from data that has already been parsed, e.g. from a
+ * compiled world snapshot.
+ */
+	AdvObject(String name, String description, int roomIndex) {
+		this.name = name;
+		this.description = description;
+		this.roomIndex = roomIndex;
+	}
 
 /* Method: getName() */
 /**
@@ -66,28 +81,88 @@ public class AdvObject  {
 		return roomIndex;
 	}
 
+/**
+ * @return is the number of the line that gives the object's room in the
+ * objects file, or 0 if the object was not read from one.
+ */
+	int getRoomLine() {
+		return roomLine;
+	}
+
+/* Method: getId() */
+/**
+ * Returns the symbol id of the object's name, once the world the object
+ * belongs to has been linked.
+ *
+ * @usage int id = obj.getId();
+ * @return The id of the object's name
+ */
+	public int getId() {
+		return id;
+	}
+
+/* Method: getIndex() */
+/**
+ * Returns the position of the object in its world's objects file, counting
+ * from 0, once the world has been linked.  Objects are numbered densely, so
+ * the index can be used to look up per-object state in arrays.
+ *
+ * @usage int i = obj.getIndex();
+ * @return The index of the object
+ */
+	public int getIndex() {
+		return index;
+	}
+
+/* Method: estimateSize() */
+/**
+ * Returns roughly how many bytes of heap this object takes.
+ *
+ * @usage long bytes = obj.estimateSize();
+ * @return The estimated size in bytes
+ */
+	long estimateSize() {
+		return 32 + AdvWorld.stringSize(name) + AdvWorld.stringSize(description);
+	}
+
+/**
+ * Gives this object its index and the symbol id of its name.  This is done
+ * once, when the world the object belongs to is linked.
+ */
+	void bind(int index, AdvSymbolTable symbols) {
+		this.index = index;
+		id = symbols.intern(name);
+	}
+
 	/**
-	 * Reads the data for this object from the Scanner scan, which must have
+	 * Reads the data for this object from the reader rd, which must have
 	 * been opened by the caller. This method returns the object if the object
 	 * initialization is successful; if there are no more objects to read,
 	 * readFromFile returns null
 	 * 
-	 * @usage AdvObject object = AdvObject.readFromFile(scan);
-	 * @param scan A Scanner open on the objects data file
+	 * @usage AdvObject object = AdvObject.readFromFile(rd);
+	 * @param rd A reader open on the objects data file
 	 * @return the object if an object is successfully read; null at end of file
+	 * @throws AdvFormatException if the object does not follow the objects file format
 	 */
-	public static AdvObject readFromFile(Scanner scan) {
-		if (!scan.hasNext() ) return null;
+	public static AdvObject readFromFile(LineNumberReader rd) throws IOException {
 		String line;
-		while (true) if (!(line = scan.nextLine()).isEmpty()) break;
+		do {
+			line = rd.readLine();
+			if (line == null) return null;
+		} while (line.isEmpty());
 
 		AdvObject obj = new AdvObject();
 		obj.name = line;
-		obj.description = scan.nextLine();
-		int roomIndex = Integer.parseInt(scan.nextLine());
-		obj.roomIndex = roomIndex - 1;
-
+		obj.description = rd.readLine();
+		line = rd.readLine();
+		if (obj.description == null || line == null)
+			throw new AdvFormatException(rd, "file ended in the middle of object " + obj.name);
+		obj.roomLine = rd.getLineNumber();
+		try { obj.roomIndex = Integer.parseInt(line.strip()) - 1; }
+		catch (NumberFormatException exception) {
+			throw new AdvFormatException(rd, "expected the room number of " + obj.name + " but found \"" + line + "\"");
+		}
 		return obj;
 	}
 }
-
@@ -0,0 +1,304 @@
+/*
+ * File: AdvObjectPlacement.java
+ * -----------------------------
+ * This file defines where each object of a world is during one game.
+ */
+
+import java.util.*;
+
+/* Class: AdvObjectPlacement */
+/**
+ * This class keeps track of where the objects of a world are: in a room or in
+ * the player's inventory.  The world itself is shared by every game and never
+ * changes, so a placement only stores how one game differs from it.  Objects the
+ * player has never moved are where the world put them, and nothing is stored
+ * for them.  Each object that has been moved gets a slot holding its location,
+ * found through a small open-addressing hash table keyed by object index.  The
+ * slots at each location are linked in the order the objects were moved there,
+ * and a second such table, keyed by location, holds the ends of each of those
+ * lists.  Nothing at all is allocated until the first object is moved.
+ *
+ * This makes every membership test, take and drop O(1) and (apart from the
+ * occasional growth of the tables) allocation free, makes listing a room or the
+ * inventory cost the objects there rather than all the objects moved, and keeps
+ * the listing order of the original game: a room lists the objects it started
+ * with (in file order) and then the objects dropped in it (in the order they
+ * were dropped), and the inventory lists objects in the order they were picked
+ * up.
+ *
+ * A location has an entry in the second table from the first time an object is
+ * moved into or out of it, so telling whether a room still holds the objects it
+ * starts with is one lookup.  LOOK shows the objects in a room with getListing:
+ * a room that has not changed shows the listing its world made once for every
+ * game; a room this game has changed has its listing made here and kept in its
+ * entry until an object is moved into or out of it again.
+ */
+
+public class AdvObjectPlacement {
+
+	/** The location of an object that the player is carrying */
+	public static final int INVENTORY = -2;
+
+	private final AdvWorld world;
+
+	// One slot per moved object, all null until the first object is moved:
+	private int[] slotObject;
+	private int[] slotLocation;
+	private int[] slotNext; // the next slot at the same location, or -1
+	private int[] slotPrev;
+	private int slotCount;
+	private int[] table; // object index -> slot + 1, or 0 for an empty entry
+
+	// One entry per location objects have been moved to, in a table of its own:
+	private int[] placeKey; // location - INVENTORY + 1, or 0 for an empty entry
+	private int[] placeFirst; // the first slot at the location, or -1
+	private int[] placeLast;
+	private String[] placeListing; // the listing of the objects there, or null until it is asked for
+	private int placeCount;
+	private int inventoryCount;
+
+	/* Constructor: AdvObjectPlacement(world) */
+	/**
+	 * Creates a placement in which every object is in its initial room.
+	 *
+	 * @param world The world whose objects are placed
+	 */
+	public AdvObjectPlacement(AdvWorld world) {
+		this.world = world;
+	}
+
+	/* Method: getLocation(obj) */
+	/**
+	 * Returns where an object is.
+	 *
+	 * @usage int where = placement.getLocation(obj);
+	 * @param obj An object of this placement's world
+	 * @return The index of the room the object is in, or INVENTORY
+	 */
+	public int getLocation(AdvObject obj) {
+		int slot = findSlot(obj.getIndex());
+		return (slot < 0) ? obj.getInitialLocation() : slotLocation[slot];
+	}
+
+	/* Method: moveTo(obj, where) */
+	/**
+	 * Moves an object to a room or into the inventory, making it the last object
+	 * listed there.
+	 *
+	 * @usage placement.moveTo(obj, where);
+	 * @param obj An object of this placement's world
+	 * @param where The index of a room, or INVENTORY
+	 */
+	public void moveTo(AdvObject obj, int where) {
+		int slot = findSlot(obj.getIndex());
+		if (slot < 0) { // its room changes, though it is in none of the lists there:
+			slot = addSlot(obj.getIndex(), obj.getInitialLocation());
+			int from = findPlace(obj.getInitialLocation());
+			if (from < 0) addPlace(obj.getInitialLocation()); else placeListing[from] = null;
+		}
+		else { // unlink it from the list of where it is:
+			int from = findPlace(slotLocation[slot]);
+			if (slotPrev[slot] < 0) placeFirst[from] = slotNext[slot]; else slotNext[slotPrev[slot]] = slotNext[slot];
+			if (slotNext[slot] < 0) placeLast[from] = slotPrev[slot]; else slotPrev[slotNext[slot]] = slotPrev[slot];
+			placeListing[from] = null;
+		}
+
+		if (slotLocation[slot] == INVENTORY) inventoryCount--;
+		if (where == INVENTORY) inventoryCount++;
+		slotLocation[slot] = where;
+		int to = findPlace(where);
+		if (to < 0) to = addPlace(where);
+		placeListing[to] = null;
+		slotPrev[slot] = placeLast[to];
+		slotNext[slot] = -1;
+		if (placeLast[to] < 0) placeFirst[to] = slot; else slotNext[placeLast[to]] = slot;
+		placeLast[to] = slot;
+	}
+
+	/* Method: getInventoryCount() */
+	/**
+	 * Returns the number of objects the player is carrying.
+	 *
+	 * @usage int n = placement.getInventoryCount();
+	 * @return The number of objects in the inventory
+	 */
+	public int getInventoryCount() {
+		return inventoryCount;
+	}
+
+	/* Method: collect(where, into) */
+	/**
+	 * Adds the objects at a location to a list, in listing order.  The list is
+	 * not cleared first, so that callers can reuse one list.
+	 *
+	 * @usage placement.collect(where, list);
+	 * @param where The index of a room, or INVENTORY
+	 * @param into The list the objects are added to
+	 */
+	public void collect(int where, List<AdvObject> into) {
+		if (where >= 0) {
+			AdvRoom room = world.getRooms().get(where);
+			for (int i = 0; i < room.getObjectCount(); i++) {
+				AdvObject obj = room.getObject(i);
+				if (findSlot(obj.getIndex()) < 0) into.add(obj);
+			}
+		}
+		int place = findPlace(where);
+		if (place < 0) return;
+		for (int s = placeFirst[place]; s >= 0; s = slotNext[s])
+			into.add(world.getObjectByIndex(slotObject[s]));
+	}
+
+	/* Method: isChanged(where) */
+	/**
+	 * Tells whether the objects at a location may differ from those it starts
+	 * with, which is the case once an object has been moved into or out of it.
+	 *
+	 * @usage if (placement.isChanged(where)) . . .
+	 * @param where The index of a room, or INVENTORY
+	 * @return True if an object has been moved into or out of the location
+	 */
+	public boolean isChanged(int where) {
+		return findPlace(where) >= 0;
+	}
+
+	/* Method: getListing(where) */
+	/**
+	 * Returns the sentence that lists the objects in a room (see
+	 * AdvRoom.listObjects).  Unless this game has changed the room, this is the
+	 * room's own listing; otherwise it is made the first time it is asked for
+	 * after the room last changed, and kept for the room until it changes again.
+	 *
+	 * @usage String text = placement.getListing(where);
+	 * @param where The index of a room
+	 * @return The listing, or "" if there are no objects in the room
+	 */
+	public String getListing(int where) {
+		int place = findPlace(where);
+		if (place < 0) return world.getRooms().get(where).getObjectListing();
+		if (placeListing[place] == null) {
+			ArrayList<AdvObject> objects = new ArrayList<>();
+			collect(where, objects);
+			placeListing[place] = AdvRoom.listObjects(objects);
+		}
+		return placeListing[place];
+	}
+
+	/* Method: getMovedCount() */
+	/**
+	 * Returns the number of objects that have been moved.
+	 *
+	 * @usage int n = placement.getMovedCount();
+	 * @return The number of objects getMovedObjects would return
+	 */
+	public int getMovedCount() {
+		return slotCount;
+	}
+
+	/* Method: getMovedObjects() */
+	/**
+	 * Returns the objects that have been moved, location by location, with those
+	 * at each location in listing order.  Together with their locations, this is
+	 * everything that distinguishes this placement from the world's initial one:
+	 * moving them in this order into a new placement recreates this one.
+	 *
+	 * @usage List<AdvObject> moved = placement.getMovedObjects();
+	 * @return A new list of the moved objects
+	 */
+	public List<AdvObject> getMovedObjects() {
+		ArrayList<AdvObject> moved = new ArrayList<>(slotCount);
+		for (int place = 0; placeKey != null && place < placeKey.length; place++) {
+			if (placeKey[place] == 0) continue;
+			for (int s = placeFirst[place]; s >= 0; s = slotNext[s])
+				moved.add(world.getObjectByIndex(slotObject[s]));
+		}
+		return moved;
+	}
+
+	private int findSlot(int objectIndex) {
+		if (table == null) return -1;
+		int mask = table.length - 1;
+		for (int h = hash(objectIndex) & mask; ; h = (h + 1) & mask) {
+			int entry = table[h];
+			if (entry == 0) return -1;
+			if (slotObject[entry - 1] == objectIndex) return entry - 1;
+		}
+	}
+
+	private int addSlot(int objectIndex, int location) {
+		if (slotObject == null) {
+			slotObject = new int[4];
+			slotLocation = new int[4];
+			slotNext = new int[4];
+			slotPrev = new int[4];
+			table = new int[8];
+		}
+		else if (slotCount == slotObject.length) {
+			slotObject = Arrays.copyOf(slotObject, slotCount * 2);
+			slotLocation = Arrays.copyOf(slotLocation, slotCount * 2);
+			slotNext = Arrays.copyOf(slotNext, slotCount * 2);
+			slotPrev = Arrays.copyOf(slotPrev, slotCount * 2);
+			table = new int[table.length * 2];
+			for (int s = 0; s < slotCount; s++) insert(s);
+		}
+		int slot = slotCount++;
+		slotObject[slot] = objectIndex;
+		slotLocation[slot] = location;
+		insert(slot);
+		return slot;
+	}
+
+	private void insert(int slot) {
+		int mask = table.length - 1;
+		int h = hash(slotObject[slot]) & mask;
+		while (table[h] != 0) h = (h + 1) & mask;
+		table[h] = slot + 1;
+	}
+
+	private int findPlace(int where) {
+		if (placeKey == null) return -1;
+		int key = where - INVENTORY + 1;
+		int mask = placeKey.length - 1;
+		for (int h = hash(key) & mask; ; h = (h + 1) & mask) {
+			if (placeKey[h] == key) return h;
+			if (placeKey[h] == 0) return -1;
+		}
+	}
+
+	private int addPlace(int where) {
+		if (placeKey == null) {
+			placeKey = new int[8];
+			placeFirst = new int[8];
+			placeLast = new int[8];
+			placeListing = new String[8];
+		}
+		else if (2 * (placeCount + 1) > placeKey.length) {
+			int[] keys = placeKey, firsts = placeFirst, lasts = placeLast;
+			String[] listings = placeListing;
+			placeKey = new int[keys.length * 2];
+			placeFirst = new int[keys.length * 2];
+			placeLast = new int[keys.length * 2];
+			placeListing = new String[keys.length * 2];
+			for (int h = 0; h < keys.length; h++)
+				if (keys[h] != 0) putPlace(keys[h], firsts[h], lasts[h], listings[h]);
+		}
+		placeCount++;
+		return putPlace(where - INVENTORY + 1, -1, -1, null);
+	}
+
+	private int putPlace(int key, int first, int last, String listing) {
+		int mask = placeKey.length - 1;
+		int h = hash(key) & mask;
+		while (placeKey[h] != 0) h = (h + 1) & mask;
+		placeKey[h] = key;
+		placeFirst[h] = first;
+		placeLast[h] = last;
+		placeListing[h] = listing;
+		return h;
+	}
+
+	private static int hash(int key) { // an object index or a location key
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
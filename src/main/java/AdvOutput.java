@@ -0,0 +1,164 @@
+/*
+ * File: AdvOutput.java
+ * --------------------
+ * This file defines where a session's output goes.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
+
+/* Class: AdvOutput */
+/**
+ * This class is the general superclass of the places a session's output can be
+ * sent.  Everything printed is collected in a buffer that is reused between
+ * commands, and is handed to the backend in one piece when the session flushes,
+ * which it does once per command and before it waits for input.  This keeps
+ * sessions that share a destination (such as System.out) from contending on it
+ * once per printed fragment.
+ *
+ * The backends are stdout (toStdout), an in-memory buffer (Memory) for tests,
+ * and any WritableByteChannel (Channel).
+ */
+public abstract class AdvOutput {
+
+	private final StringBuilder buffer = new StringBuilder(1024);
+
+	/* Method: print(text) */
+	/**
+	 * Adds text to the output.
+	 *
+	 * @usage out.print(text);
+	 * @param text The text to add
+	 */
+	public void print(String text) {
+		buffer.append(text);
+	}
+
+	/* Method: println(text) */
+	/**
+	 * Adds a line of text to the output.
+	 *
+	 * @usage out.println(text);
+	 * @param text The text of the line
+	 */
+	public void println(String text) {
+		buffer.append(text).append('\n');
+	}
+
+	/* Method: println() */
+	/**
+	 * Adds an empty line to the output.
+	 *
+	 * @usage out.println();
+	 */
+	public void println() {
+		buffer.append('\n');
+	}
+
+	/* Method: flush() */
+	/**
+	 * Sends everything printed since the last flush to the backend.
+	 *
+	 * @usage out.flush();
+	 */
+	public void flush() {
+		if (buffer.isEmpty()) return;
+		try { write(buffer); }
+		catch (IOException exception) { throw new UncheckedIOException(exception); }
+		finally { buffer.setLength(0); }
+	}
+
+	/**
+	 * Writes one flush worth of text to the backend.
+	 * @param text is the text to write; it is only valid until this method returns.
+	 */
+	protected abstract void write(CharSequence text) throws IOException;
+
+	/* Method: toStdout() */
+	/**
+	 * Returns an output that writes to System.out.
+	 *
+	 * @usage AdvOutput out = AdvOutput.toStdout();
+	 * @return A new output
+	 */
+	public static AdvOutput toStdout() {
+		return new AdvOutput() {
+			protected void write(CharSequence text) {
+				synchronized (System.out) {
+					System.out.append(text);
+					System.out.flush();
+				}
+			}
+		};
+	}
+
+	/* Class: AdvOutput.Memory */
+	/**
+	 * An output that keeps everything written to it in memory, for tests and
+	 * headless replays.
+	 */
+	public static class Memory extends AdvOutput {
+		private final StringBuilder text = new StringBuilder();
+
+		protected void write(CharSequence flushed) {
+			text.append(flushed);
+		}
+
+		/**
+		 * @return is everything flushed to this output so far.
+		 */
+		public String getText() {
+			return text.toString();
+		}
+
+		/**
+		 * Forgets everything flushed to this output so far.
+		 */
+		public void clear() {
+			text.setLength(0);
+		}
+	}
+
+	/* Class: AdvOutput.Channel */
+	/**
+	 * An output that writes UTF-8 text to a channel, such as a socket or file,
+	 * through a reusable byte buffer.
+	 */
+	public static class Channel extends AdvOutput {
+		private final WritableByteChannel channel;
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private final ByteBuffer bytes = ByteBuffer.allocateDirect(8192);
+
+		/**
+		 * @param channel is the channel the output is written to.
+		 */
+		public Channel(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		protected void write(CharSequence text) throws IOException {
+			CharBuffer chars = CharBuffer.wrap(text);
+			CoderResult result;
+			encoder.reset();
+			do {
+				result = encoder.encode(chars, bytes, true);
+				drain();
+			} while (result.isOverflow());
+			do {
+				result = encoder.flush(bytes);
+				drain();
+			} while (result.isOverflow());
+		}
+
+		private void drain() throws IOException {
+			bytes.flip();
+			while (bytes.hasRemaining()) channel.write(bytes);
+			bytes.clear();
+		}
+	}
+}
@@ -5,6 +5,7 @@
  * Adventure game.
  */
 
+import java.io.*;
 import java.util.*;
 
 /* Class: AdvRoom */
@@ -16,10 +17,17 @@ import java.util.*;
  * <li>A room number, which must be greater than zero
  * <li>Its name, which is a one-line string identifying the room
  * <li>Its description, which is a multiline array describing the room
- * <li>A list of objects contained in the room
- * <li>A flag indicating whether the room has been visited
+ * <li>A list of the objects the room starts with
  * <li>A motion table specifying the exits and where they lead </li>
  * 
+ * A room never changes once its world is linked, so one room is shared by every
+ * game of its world; what a single game changes, such as which rooms the player
+ * has visited, is kept by that game.
+ *
+ * In a very large world, a room may only know where its description is in the
+ * rooms file, and read it from there when it is first asked for (see
+ * AdvRoomFile).
+ *
  * The external format of the room data file is described in the assignment
  * handout. The comments on the methods exported by this class show how to use
  * the initialized data structure.
@@ -29,10 +37,55 @@ public class AdvRoom  {
 
 	private int index;
 	private String name;
-	private String[] description;
+	private String text; // the description, every line ending with "\n"
+	private AdvRoomFile descriptionFile; // set instead of text if the description is read lazily
+	private String listing; // the objects the room starts with, worked out when first asked for
+	private long descriptionOffset;
+	private int descriptionLength;
 	private final ArrayList<AdvObject> objects = new ArrayList<>();
-	private boolean wasVisited;
 	private ArrayList<AdvMotionTableEntry> motionTables = new ArrayList<>();
+	private AdvMotionTableEntry[][] motionIndex;
+	private boolean hasForced;
+	private int forcedDestination = NO_FORCED_DESTINATION;
+	private int forcedChainEnd = NO_FORCED_DESTINATION;
+
+	/** The forced destination of a room whose FORCED exit is missing or needs a key */
+	public static final int NO_FORCED_DESTINATION = -2;
+
+	private static final AdvMotionTableEntry[] NO_MOTIONS = {};
+
+	private AdvRoom() {}
+
+	/* Constructor: AdvRoom(index, name, description, motionTable) */
+	/**
+	 * Creates a room from data that has already been parsed, e.g. from a compiled
+	 * world snapshot.
+	 */
+	AdvRoom(int index, String name, String[] description, ArrayList<AdvMotionTableEntry> motionTable) {
+		this.index = index;
+		this.name = name;
+		this.text = joinLines(description);
+		this.motionTables = motionTable;
+	}
+
+	/* Constructor: AdvRoom(index, name, file, offset, length, motionTable) */
+	/**
+	 * Creates a room whose description stays in its rooms file until it is asked
+	 * for.
+	 *
+	 * @param file is the rooms file, which reads and caches the description.
+	 * @param offset is the byte offset of the first line of the description.
+	 * @param length is the number of bytes of the description, up to the line
+	 *            that ends it.
+	 */
+	AdvRoom(int index, String name, AdvRoomFile file, long offset, int length, ArrayList<AdvMotionTableEntry> motionTable) {
+		this.index = index;
+		this.name = name;
+		this.descriptionFile = file;
+		this.descriptionOffset = offset;
+		this.descriptionLength = length;
+		this.motionTables = motionTable;
+	}
 
 	/* Method: getRoomNumber() */
 	/**
@@ -59,68 +112,106 @@ public class AdvRoom  {
 	/* Method: getDescription() */
 	/**
 	 * Returns an array of strings that correspond to the long description of
-	 * the room (including the list of the objects in the room).
+	 * the room (including the list of the objects in the room).  The array is
+	 * made anew from getText() on every call.
 	 * 
 	 * @usage String[] description = room.getDescription();
 	 * @return An array of strings giving the long description of the room
 	 */
 	public String[] getDescription() {
-		return description;
+		return splitLines(getText());
 	}
 
-	/* Method: addObject(obj) */
+	/* Method: getText() */
 	/**
-	 * Adds an object to the list of objects in the room.
+	 * Returns the long description of the room as it is shown to the player,
+	 * every line ending with "\n".  It is kept in this form, so that showing it
+	 * is a single copy.
 	 * 
-	 * @usage room.addObject(obj);
-	 * @param obj advObject to be added
+	 * @usage String text = room.getText();
+	 * @return The text of the long description
 	 */
-	public void addObject(AdvObject obj) {
-		for (AdvObject o : objects) {
-			if (o.getName().equals(obj.getName())){
-				return;
-			}
-		}
-		objects.add(obj);
+	public String getText() {
+		if (text != null) return text;
+		return descriptionFile.getText(index, descriptionOffset, descriptionLength);
+	}
+
+	/* Method: getObjectListing() */
+	/**
+	 * Returns the sentence that lists the objects the room starts with, as
+	 * listObjects makes it.  Every game shows it while the objects in the room
+	 * are still the ones it starts with, so it is made once, the first time it
+	 * is asked for.
+	 * 
+	 * @usage String text = room.getObjectListing();
+	 * @return The listing, or "" if the room starts with no objects
+	 */
+	public String getObjectListing() {
+		String made = listing;
+		if (made == null) listing = made = listObjects(objects);
+		return made;
 	}
 
-	/* Method: removeObject(obj) */
+	/* Method: listObjects(objects) */
 	/**
-	 * Removes an object from the list of objects in the room.
+	 * Makes the sentence that tells the player which objects they see, e.g.
+	 * "\nYou see keys and lamp ripe for the taking.\n".
 	 * 
-	 * @usage room.removeObject(obj);
-	 * @param obj AdvObject to be removed
+	 * @usage String text = AdvRoom.listObjects(objects);
+	 * @param objects The objects, in the order they are listed
+	 * @return The listing, or "" if there are no objects
 	 */
-	public void removeObject(AdvObject obj) {
+	static String listObjects(List<AdvObject> objects) {
+		if (objects.isEmpty()) return "";
+		StringBuilder text = new StringBuilder("\nYou see ");
 		for (int i = 0; i < objects.size(); i++) {
-			AdvObject o = objects.get(i);
-			if (o.getName().equals(obj.getName())) {
-				objects.remove(i);
-				return;
-			}
+			if (i > 0) text.append((objects.size() == 2) ? " and " : (i == objects.size() - 1) ? ", and " : ", ");
+			text.append(objects.get(i).getName().toLowerCase());
 		}
+		return text.append(" ripe for the taking.\n").toString();
 	}
 
-	/* Method: containsObject(obj) */
 	/**
-	 * Checks whether the specified object is in the room.
-	 * 
-	 * @usage if (room.containsObject(obj)) . . .
-	 * @param obj AdvObject being tested
-	 * @return true if the object is in the room, and false otherwise
+	 * @return is the lines of a description, each followed by "\n".
+	 */
+	static String joinLines(String[] lines) {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) text.append(line).append('\n');
+		return text.toString();
+	}
+
+	/**
+	 * Splits the text of a description, every line of which ends with a newline,
+	 * into its lines.
 	 */
-	public boolean containsObject(AdvObject obj) {
-		for (AdvObject o : objects) {
-			if (o.getName().equals(obj.getName())){
-				return true;
-			}
+	static String[] splitLines(String text) {
+		ArrayList<String> lines = new ArrayList<>();
+		for (int start = 0; start < text.length(); ) {
+			int end = text.indexOf('\n', start);
+			if (end < 0) end = text.length();
+			int stop = (end > start && text.charAt(end - 1) == '\r') ? end - 1 : end;
+			lines.add(text.substring(start, stop));
+			start = end + 1;
 		}
-		return false;
+		return lines.toArray(new String[0]);
+	}
+
+	/* Method: addObject(obj) */
+	/**
+	 * Adds an object to the list of objects the room starts with.  This is done
+	 * when the world is linked; during a game, objects are moved with an
+	 * AdvObjectPlacement.
+	 * 
+	 * @usage room.addObject(obj);
+	 * @param obj advObject to be added
+	 */
+	void addObject(AdvObject obj) {
+		objects.add(obj);
 	}
 
 	/* Method: getObjectCount() */
 	/**
-	 * Returns the number of objects in the room.
+	 * Returns the number of objects the room starts with.
 	 * 
 	 * @usage int nObjects = room.getObjectCount();
 	 * @return The number of objects in the room
@@ -131,7 +222,7 @@ public class AdvRoom  {
 
 	/* Method: getObject(index) */
 	/**
-	 * Returns the specified element from the list of objects in the room.
+	 * Returns the specified element from the list of objects the room starts with.
 	 * 
 	 * @usage AdvObject obj = room.getObject(index);
 	 * @return The AdvObject at the specified index position
@@ -143,32 +234,6 @@ public class AdvRoom  {
 		return objects.get(index);
 	}
 
-	/* Method: setVisited(flag) */
-	/**
-	 * Sets the flag indicating that this room has been visited according to the
-	 * value of the parameter. Calling setVisited(true) means that the room has
-	 * been visited; calling setVisited(false) restores its initial unvisited
-	 * state.
-	 * 
-	 * @usage room.setVisited(flag);
-	 * @param flag
-	 *            The new state of the "visited" flag
-	 */
-	public void setVisited(boolean flag) {
-		wasVisited = flag;
-	}
-
-	/* Method: hasBeenVisited() */
-	/**
-	 * Returns true if the room has previously been visited.
-	 * 
-	 * @usage if (room.hasBeenVisited()) . . .
-	 * @return true if the room has been visited; false otherwise
-	 */
-	public boolean hasBeenVisited() {
-		return wasVisited;
-	}
-
 	/* Method: getMotionTable() */
 	/**
 	 * Returns the motion table associated with this room, which is an array of
@@ -186,46 +251,217 @@ public class AdvRoom  {
 		return r;
 	}
 
+	/* Method: sameAs(other) */
+	/**
+	 * Tells whether this room is the same as a room of another world, i.e. has
+	 * the same name, description and motion table.  Two descriptions that are
+	 * still in their rooms files are compared there, without decoding them.
+	 * 
+	 * @usage if (room.sameAs(other)) . . .
+	 * @param other A room of another world
+	 * @return True if the two rooms are the same
+	 */
+	boolean sameAs(AdvRoom other) {
+		if (!name.equals(other.name) || motionTables.size() != other.motionTables.size()) return false;
+		for (int i = 0; i < motionTables.size(); i++) {
+			AdvMotionTableEntry a = motionTables.get(i), b = other.motionTables.get(i);
+			if (!a.getDirection().equals(b.getDirection()) || a.getDestinationRoom() != b.getDestinationRoom()
+					|| !Objects.equals(a.getKeyName(), b.getKeyName())) return false;
+		}
+		if (descriptionFile != null && other.descriptionFile != null)
+			return descriptionLength == other.descriptionLength
+					&& descriptionFile.sameBytes(descriptionOffset, other.descriptionFile, other.descriptionOffset, descriptionLength);
+		return getText().equals(other.getText());
+	}
+
+	/* Method: estimateSize() */
+	/**
+	 * Returns roughly how many bytes of heap this room takes once its world is
+	 * linked.  A description read lazily is not counted, as it stays in the
+	 * rooms file until it is asked for.
+	 * 
+	 * @usage long bytes = room.estimateSize();
+	 * @return The estimated size in bytes
+	 */
+	long estimateSize() {
+		long size = 72 + AdvWorld.stringSize(name) + 56 + 4L * objects.size();
+		size += 56 + 4L * motionTables.size();
+		for (AdvMotionTableEntry e : motionTables)
+			size += 40 + AdvWorld.stringSize(e.getDirection()) + ((e.getKeyName() == null) ? 0 : AdvWorld.stringSize(e.getKeyName()));
+		if (motionIndex != null) {
+			size += 16 + 4L * motionIndex.length;
+			for (AdvMotionTableEntry[] candidates : motionIndex)
+				if (candidates.length > 0) size += 16 + 4L * candidates.length;
+		}
+		if (text != null) size += AdvWorld.stringSize(text);
+		if (listing != null) size += AdvWorld.stringSize(listing);
+		return size;
+	}
+
+	/* Method: getMotionCandidates(directionId) */
+	/**
+	 * Returns the motion table entries that may be taken in the given direction,
+	 * in the order they must be tried: the entries that need a key, in file order,
+	 * ending with the first entry that does not.  Entries after that one could
+	 * never be taken and are left out.  The returned array is shared and must not
+	 * be modified.
+	 * 
+	 * @usage for (AdvMotionTableEntry e : room.getMotionCandidates(dir)) . . .
+	 * @param directionId The symbol id of the direction of motion
+	 * @return The candidate entries; empty if there is no exit that way
+	 */
+	public AdvMotionTableEntry[] getMotionCandidates(int directionId) {
+		if (directionId < 0 || directionId >= motionIndex.length) return NO_MOTIONS;
+		return motionIndex[directionId];
+	}
+
+	/* Method: hasForcedMotion() */
+	/**
+	 * Returns true if the player is moved on as soon as they enter this room.
+	 * 
+	 * @usage if (room.hasForcedMotion()) . . .
+	 * @return true if the room has a FORCED exit
+	 */
+	public boolean hasForcedMotion() {
+		return hasForced;
+	}
+
+	/**
+	 * Builds the index behind getMotionCandidates.  This is done once, when the
+	 * world the room belongs to is linked and its motion table entries have their
+	 * direction ids, so that moves do not have to scan the motion table.
+	 * @param directionCount is the number of direction ids; directions have the
+	 *            lowest ids of the world's symbol table.
+	 * @param forcedId is the id of the FORCED direction, or -1 if no room has one.
+	 */
+	void indexMotionTable(int directionCount, int forcedId) {
+		ArrayList<ArrayList<AdvMotionTableEntry>> byDirection = new ArrayList<>();
+		for (int i = 0; i < directionCount; i++) byDirection.add(null);
+		boolean[] closed = new boolean[directionCount]; // directions that already have an unconditional entry
+		for (AdvMotionTableEntry e : motionTables) {
+			int dir = e.getDirectionId();
+			if (closed[dir]) continue;
+			if (byDirection.get(dir) == null) byDirection.set(dir, new ArrayList<>());
+			byDirection.get(dir).add(e);
+			if (e.getKeyName() == null) closed[dir] = true;
+		}
+
+		motionIndex = new AdvMotionTableEntry[directionCount][];
+		for (int i = 0; i < directionCount; i++)
+			motionIndex[i] = (byDirection.get(i) == null) ? NO_MOTIONS : byDirection.get(i).toArray(NO_MOTIONS);
+		hasForced = forcedId >= 0 && motionIndex[forcedId].length > 0;
+		if (hasForced && motionIndex[forcedId][0].getKeyName() == null)
+			forcedDestination = motionIndex[forcedId][0].getDestinationRoom();
+	}
+
+	/* Method: getForcedDestination() */
+	/**
+	 * Returns where the player is sent as soon as they enter this room, if that
+	 * does not depend on what they carry.
+	 * 
+	 * @usage int next = room.getForcedDestination();
+	 * @return The index of the next room (-1 if entering this room ends the game),
+	 *         or NO_FORCED_DESTINATION if the room has no FORCED exit or it needs a key
+	 */
+	public int getForcedDestination() {
+		return forcedDestination;
+	}
+
+	/* Method: getForcedChainEnd() */
+	/**
+	 * Returns where a player entering this room comes to rest after following
+	 * every FORCED exit that does not need a key.  This is worked out when the world
+	 * is linked.
+	 * 
+	 * @usage int end = room.getForcedChainEnd();
+	 * @return The index of the last room of the chain (which may have a FORCED exit
+	 *         that needs a key), -1 if the chain ends the game, or
+	 *         NO_FORCED_DESTINATION if the room has no unconditional FORCED exit
+	 */
+	public int getForcedChainEnd() {
+		return forcedChainEnd;
+	}
+
+	void setForcedChainEnd(int end) {
+		forcedChainEnd = end;
+	}
+
 	/* Method: readFromFile(rd) */
 	/**
-	 * Reads the data for this room from the Scanner scan, which must have been
+	 * Reads the data for this room from the reader rd, which must have been
 	 * opened by the caller. This method returns a room if the room
 	 * initialization is successful; if there are no more rooms to read,
-	 * readFromFile returns null.
+	 * readFromFile returns null.  Each line is read exactly once, so a rooms
+	 * file is parsed in a single pass.
 	 * 
-	 * @usage AdvRoom room = AdvRoom.readFromFile(scan);
-	 * @param scan
-	 *            A scanner open on the rooms data file
+	 * @usage AdvRoom room = AdvRoom.readFromFile(rd);
+	 * @param rd
+	 *            A reader open on the rooms data file
 	 * @return a room if successfully read; null if at end of file
+	 * @throws AdvFormatException if the room does not follow the rooms file format
 	 */
-	public static AdvRoom readFromFile(Scanner scan) {
-		if (!scan.hasNextLine()) return null;
+	public static AdvRoom readFromFile(LineNumberReader rd) throws IOException {
+		String line;
+		do {
+			line = rd.readLine();
+			if (line == null) return null;
+		} while (line.isBlank());
 
 		AdvRoom room = new AdvRoom();
-		room.description = new String[]{};
+		room.index = parseNumber(rd.getLineNumber(), line.strip(), "room number") - 1;
+		room.name = rd.readLine();
+		if (room.name == null) throw new AdvFormatException(rd, "room " + (room.index + 1) + " has no name");
+
+		StringBuilder text = new StringBuilder();
+		while (!(line = readRequired(rd, "-----")).equals("-----"))
+			text.append(line).append('\n');
+		room.text = text.toString();
+
 		room.motionTables = new ArrayList<>();
-		String line;
+		while ((line = rd.readLine()) != null && !line.isEmpty())
+			room.motionTables.add(parseMotion(rd.getLineNumber(), line, null));
+		return room;
+	}
 
-		while(!scan.hasNextInt()) {
-			scan.nextLine();
-		}
-		room.index = scan.nextInt() - 1;
-		scan.nextLine();
-		room.name = scan.nextLine();
-		while(!(line = scan.nextLine()).equals("-----")) {
-			String[] newDesc = new String[room.description.length+1];
-            System.arraycopy(room.description, 0, newDesc, 0, room.description.length);
-			room.description = newDesc;
-			room.description[room.description.length-1] = line;
+	/**
+	 * Parses one motion table line of the form "DIRECTION room[/KEY]".
+	 * @param lineNumber is the number of the line, for error messages.
+	 * @param words is the direction and key names seen so far, each mapped to
+	 *            itself, so that the rooms of a large world share one copy of
+	 *            each; null to keep the copies.
+	 */
+	static AdvMotionTableEntry parseMotion(int lineNumber, String line, Map<String, String> words) throws AdvFormatException {
+		int dirEnd = 0;
+		while (dirEnd < line.length() && !Character.isWhitespace(line.charAt(dirEnd))) dirEnd++;
+		int destStart = dirEnd;
+		while (destStart < line.length() && Character.isWhitespace(line.charAt(destStart))) destStart++;
+		int destEnd = destStart;
+		while (destEnd < line.length() && !Character.isWhitespace(line.charAt(destEnd))) destEnd++;
+		if (dirEnd == 0 || destStart == destEnd)
+			throw new AdvFormatException(lineNumber, "expected a direction and a room number but found \"" + line + "\"");
+
+		int slash = line.indexOf('/', destStart);
+		if (slash < 0 || slash > destEnd) slash = destEnd;
+		int id = parseNumber(lineNumber, line.substring(destStart, slash), "destination room") - 1;
+		String key = (slash < destEnd) ? line.substring(slash + 1, destEnd) : null;
+		String direction = line.substring(0, dirEnd);
+		if (words != null) {
+			direction = words.computeIfAbsent(direction, word -> word);
+			if (key != null) key = words.computeIfAbsent(key, word -> word);
 		}
-		while(scan.hasNextLine() && !(line = scan.nextLine()).isEmpty()){
-			Scanner s = new Scanner(line);
-			String dir = s.next();
-			String[] idAndKey = s.next().split("/", 2);
-			int id = Integer.parseInt(idAndKey[0]) - 1;
-			String key = (idAndKey.length > 1) ? idAndKey[1] : null;
-			room.motionTables.add(new AdvMotionTableEntry(dir, id, key));
+		return new AdvMotionTableEntry(direction, id, key);
+	}
+
+	private static String readRequired(LineNumberReader rd, String expected) throws IOException {
+		String line = rd.readLine();
+		if (line == null) throw new AdvFormatException(rd, "file ended before \"" + expected + "\"");
+		return line;
+	}
+
+	static int parseNumber(int lineNumber, String s, String what) throws AdvFormatException {
+		try { return Integer.parseInt(s); }
+		catch (NumberFormatException exception) {
+			throw new AdvFormatException(lineNumber, "expected a " + what + " but found \"" + s + "\"");
 		}
-		return room;
 	}
 }
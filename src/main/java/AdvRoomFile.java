@@ -0,0 +1,411 @@
+/*
+ * File: AdvRoomFile.java
+ * ----------------------
+ * This file defines a rooms file that is read in place, through a memory map,
+ * so that very large worlds do not have to hold every room description on the
+ * heap.
+ */
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* Class: AdvRoomFile */
+/**
+ * A game only ever shows its players the descriptions of the rooms they walk
+ * into, which in a world of millions of rooms is a tiny fraction of them.  This
+ * class maps a ...Rooms.txt file into memory and parses it without decoding the
+ * descriptions: each room only records the byte offset and length of its
+ * description, and the rooms share one copy of each direction and key name.  The
+ * description is decoded the first time it is asked for and kept in a bounded
+ * cache of the rooms asked for most recently, so that the descriptions on the
+ * heap are those of the rooms being played in.  The pages of the file itself are
+ * the operating system's to keep or drop.
+ *
+ * Whether a world is read this way is set by the adventure.lazyRooms system
+ * property: "true", "false", or "auto" (the default), which reads lazily any
+ * rooms file of LAZY_THRESHOLD bytes or more.  The cache holds the descriptions
+ * of adventure.descriptionCache rooms (4096 by default).
+ *
+ * Lines end with "\n" or "\r\n".  A rooms file must not change while a world
+ * read from it is in use: a new version has to be written to another file and
+ * renamed over it, which leaves the old version mapped until it is unused (see
+ * AdvWorldWatcher).
+ *
+ * Large rooms files are parsed in chunks of about CHUNK_BYTES on the common
+ * fork/join pool, whether lazily or not (see readRoomsEagerly).  Each chunk but
+ * the first starts after the empty line that ends the motion table following a
+ * "-----" line.  That guess can be wrong (a room could be named "-----"), but a
+ * wrong guess leaves a room cut in two, which fails to parse; a file with a chunk
+ * that fails to parse is parsed again from the start, in one piece, so that the
+ * error reported names the right line.
+ */
+
+public class AdvRoomFile {
+
+	/** The size from which a rooms file is read lazily, unless told otherwise */
+	public static final long LAZY_THRESHOLD = 32L << 20;
+
+	private static final int SEGMENT_BITS = 30; // a MappedByteBuffer holds at most 2 GB
+	private static final int STRIPES = 16;
+	private static final long CHUNK_BYTES = 4L << 20;
+	private static final byte[] END_OF_DESCRIPTION = "-----".getBytes(StandardCharsets.US_ASCII);
+
+	private final File file;
+	private final long size;
+	private final MappedByteBuffer[] segments;
+	private final Stripe[] cache = new Stripe[STRIPES];
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private AdvRoomFile(File file, int capacity) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			size = channel.size();
+			segments = new MappedByteBuffer[(int) ((size >>> SEGMENT_BITS) + 1)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_BITS, size - start));
+			}
+		}
+		for (int i = 0; i < STRIPES; i++)
+			cache[i] = new Stripe(Math.max(1, (capacity + STRIPES - 1) / STRIPES));
+	}
+
+	/* Method: isLazy(roomsFile) */
+	/**
+	 * Tells whether the descriptions of a rooms file should be read lazily,
+	 * according to the adventure.lazyRooms system property.
+	 *
+	 * @usage if (AdvRoomFile.isLazy(roomsFile)) . . .
+	 * @param roomsFile is the ...Rooms.txt file of a game.
+	 * @return is true if it should be read with readRooms.
+	 */
+	public static boolean isLazy(File roomsFile) {
+		return switch (System.getProperty("adventure.lazyRooms", "auto")) {
+			case "true" -> true;
+			case "false" -> false;
+			default -> roomsFile.length() >= LAZY_THRESHOLD;
+		};
+	}
+
+	/* Method: readRooms(roomsFile, world) */
+	/**
+	 * Maps a rooms file and adds its rooms to a world, leaving their descriptions
+	 * in the file.  The rooms are checked like AdvRoom.readFromFile checks them.
+	 *
+	 * @usage AdvRoomFile file = AdvRoomFile.readRooms(roomsFile, world);
+	 * @param roomsFile is the ...Rooms.txt file of a game.
+	 * @param world is the world to add the rooms to.
+	 * @return is the mapped file, which the rooms read their descriptions from.
+	 * @throws AdvFormatException if the file does not follow the rooms file format.
+	 */
+	static AdvRoomFile readRooms(File roomsFile, AdvWorld world) throws IOException {
+		AdvRoomFile file = new AdvRoomFile(roomsFile, Integer.getInteger("adventure.descriptionCache", 4096));
+		List<AdvRoom> rooms = file.parseInChunks(file::parse);
+		if (rooms == null) rooms = file.parse(0, file.size);
+		for (AdvRoom r : rooms) world.addRoom(r);
+		return file;
+	}
+
+	/* Method: readRoomsEagerly(roomsFile) */
+	/**
+	 * Parses a large rooms file in chunks, in parallel, decoding every
+	 * description like AdvRoom.readFromFile does.
+	 *
+	 * @usage List<AdvRoom> rooms = AdvRoomFile.readRoomsEagerly(roomsFile);
+	 * @param roomsFile is the ...Rooms.txt file of a game.
+	 * @return is the rooms, in file order, or null if the file is too small to be
+	 * worth splitting or is badly formatted, in which case it should be read with
+	 * AdvRoom.readFromFile, which reports the error.
+	 */
+	static List<AdvRoom> readRoomsEagerly(File roomsFile) throws IOException {
+		if (roomsFile.length() < 2 * CHUNK_BYTES) return null;
+		AdvRoomFile file = new AdvRoomFile(roomsFile, 1);
+		return file.parseInChunks((from, to) -> {
+			ArrayList<AdvRoom> rooms = new ArrayList<>();
+			LineNumberReader rd = new LineNumberReader(new StringReader(file.decode(from, to)));
+			AdvRoom r;
+			while ((r = AdvRoom.readFromFile(rd)) != null)
+				rooms.add(r);
+			return rooms;
+		});
+	}
+
+	/**
+	 * Parses the rooms between two offsets, leaving their descriptions in the
+	 * file.  Line numbers are counted from the first offset.
+	 */
+	private List<AdvRoom> parse(long from, long to) throws AdvFormatException {
+		ArrayList<AdvRoom> rooms = new ArrayList<>();
+		HashMap<String, String> words = new HashMap<>();
+		long pos = from;
+		int lineNumber = 0;
+		while (true) {
+			String line;
+			do {
+				if (pos >= to) return rooms;
+				long end = indexOfNewline(pos);
+				line = decode(pos, end);
+				lineNumber++;
+				pos = end + 1;
+			} while (line.isBlank());
+			int index = AdvRoom.parseNumber(lineNumber, line.strip(), "room number") - 1;
+
+			if (pos >= to) throw new AdvFormatException(lineNumber, "room " + (index + 1) + " has no name");
+			long end = indexOfNewline(pos);
+			String name = decode(pos, end);
+			lineNumber++;
+			pos = end + 1;
+
+			long descriptionStart = pos;
+			while (true) {
+				if (pos >= to) throw new AdvFormatException(lineNumber, "file ended before \"-----\"");
+				end = indexOfNewline(pos);
+				lineNumber++;
+				if (isEndOfDescription(pos, end)) break;
+				pos = end + 1;
+			}
+			long descriptionLength = pos - descriptionStart;
+			if (descriptionLength > Integer.MAX_VALUE)
+				throw new AdvFormatException(lineNumber, "the description of room " + (index + 1) + " is too long");
+			pos = end + 1;
+
+			ArrayList<AdvMotionTableEntry> motionTable = new ArrayList<>();
+			while (pos < to) {
+				end = indexOfNewline(pos);
+				line = decode(pos, end);
+				lineNumber++;
+				pos = end + 1;
+				if (line.isEmpty()) break;
+				motionTable.add(AdvRoom.parseMotion(lineNumber, line, words));
+			}
+			motionTable.trimToSize();
+			rooms.add(new AdvRoom(index, name, this, descriptionStart, (int) descriptionLength, motionTable));
+		}
+	}
+
+	/**
+	 * Parses the file in chunks on the fork/join pool.
+	 * @return is the rooms of every chunk, in file order, or null if the file is
+	 * only one chunk or a chunk is badly formatted.
+	 */
+	private List<AdvRoom> parseInChunks(ChunkParser parser) {
+		long[] splits = findSplits();
+		if (splits.length <= 2) return null;
+		ArrayList<Chunk> chunks = new ArrayList<>();
+		for (int i = 0; i + 1 < splits.length; i++) chunks.add(new Chunk(parser, splits[i], splits[i + 1]));
+		ForkJoinTask.invokeAll(chunks);
+		int count = 0;
+		for (Chunk c : chunks) {
+			if (c.rooms == null) return null;
+			count += c.rooms.size();
+		}
+		ArrayList<AdvRoom> rooms = new ArrayList<>(count);
+		for (Chunk c : chunks) rooms.addAll(c.rooms);
+		return rooms;
+	}
+
+	/**
+	 * @return is the offsets the file is split into chunks at, starting with 0
+	 * and ending with its size.
+	 */
+	private long[] findSplits() {
+		ArrayList<Long> splits = new ArrayList<>();
+		splits.add(0L);
+		for (long pos = roomAfter(CHUNK_BYTES); pos < size; pos = roomAfter(pos + CHUNK_BYTES))
+			splits.add(pos);
+		splits.add(size);
+		return splits.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * @return is the offset of the first line after the motion table that follows
+	 * the first "-----" line after pos, which should start a room, or the size of
+	 * the file if there is none.
+	 */
+	private long roomAfter(long pos) {
+		if (pos >= size) return size;
+		pos = indexOfNewline(pos) + 1;
+		while (pos < size) {
+			long end = indexOfNewline(pos);
+			boolean found = isEndOfDescription(pos, end);
+			pos = end + 1;
+			if (found) break;
+		}
+		while (pos < size) {
+			long end = indexOfNewline(pos);
+			boolean empty = end == pos || (end == pos + 1 && byteAt(pos) == '\r');
+			pos = end + 1;
+			if (empty) return Math.min(pos, size);
+		}
+		return size;
+	}
+
+	/* Method: getText(roomIndex, offset, length) */
+	/**
+	 * Returns a room's description, from the cache or decoded from the file.
+	 *
+	 * @usage String text = file.getText(roomIndex, offset, length);
+	 * @param roomIndex is the index of the room, which the cache is keyed by.
+	 * @param offset is the byte offset of the first line of the description.
+	 * @param length is the number of bytes of the description.
+	 * @return is the text of the description, every line ending with "\n".
+	 */
+	String getText(int roomIndex, long offset, int length) {
+		Stripe stripe = cache[roomIndex & (STRIPES - 1)];
+		String description;
+		stripe.lock.lock();
+		try { description = stripe.get(roomIndex); }
+		finally { stripe.lock.unlock(); }
+		if (description != null) {
+			hits.increment();
+			return description;
+		}
+
+		// Decode outside the lock; two sessions entering the same room at once may
+		// both decode it, which is cheaper than making one wait for the other.
+		misses.increment();
+		description = decode(offset, offset + length);
+		if (description.indexOf('\r') >= 0) description = description.replace("\r\n", "\n");
+		stripe.lock.lock();
+		try { stripe.put(roomIndex, description); }
+		finally { stripe.lock.unlock(); }
+		return description;
+	}
+
+	/**
+	 * @return is the number of descriptions found in the cache and the number
+	 * decoded from the file.
+	 */
+	public long[] getCacheCounts() {
+		return new long[] { hits.sum(), misses.sum() };
+	}
+
+	/**
+	 * @return is the number of descriptions in the cache now.
+	 */
+	public int getCachedCount() {
+		int count = 0;
+		for (Stripe stripe : cache) {
+			stripe.lock.lock();
+			try { count += stripe.size(); }
+			finally { stripe.lock.unlock(); }
+		}
+		return count;
+	}
+
+	/**
+	 * @return is the rooms file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return is true if length bytes from offset on in this file are the same as
+	 * those from otherOffset on in another rooms file.
+	 */
+	boolean sameBytes(long offset, AdvRoomFile other, long otherOffset, int length) {
+		for (int i = 0; i < length; i++)
+			if (byteAt(offset + i) != other.byteAt(otherOffset + i)) return false;
+		return true;
+	}
+
+	private byte byteAt(long pos) {
+		return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & ((1 << SEGMENT_BITS) - 1)));
+	}
+
+	/**
+	 * @return is the position of the first newline at or after from, or the size
+	 * of the file if there is none.
+	 */
+	private long indexOfNewline(long from) {
+		while (from < size) {
+			MappedByteBuffer segment = segments[(int) (from >>> SEGMENT_BITS)];
+			long base = from & -(1L << SEGMENT_BITS);
+			for (int i = (int) (from - base), limit = segment.limit(); i < limit; i++)
+				if (segment.get(i) == '\n') return base + i;
+			from = base + segment.limit();
+		}
+		return size;
+	}
+
+	private boolean isEndOfDescription(long start, long end) {
+		if (end > start && byteAt(end - 1) == '\r') end--;
+		if (end - start != END_OF_DESCRIPTION.length) return false;
+		for (int i = 0; i < END_OF_DESCRIPTION.length; i++)
+			if (byteAt(start + i) != END_OF_DESCRIPTION[i]) return false;
+		return true;
+	}
+
+	/**
+	 * Decodes the bytes from start up to end, dropping a "\r" at the end.
+	 */
+	private String decode(long start, long end) {
+		if (end > start && byteAt(end - 1) == '\r') end--;
+		byte[] bytes = new byte[(int) (end - start)];
+		for (int done = 0; done < bytes.length; ) {
+			long pos = start + done;
+			MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+			int at = (int) (pos & ((1 << SEGMENT_BITS) - 1));
+			int n = Math.min(bytes.length - done, segment.limit() - at);
+			segment.get(at, bytes, done, n);
+			done += n;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private interface ChunkParser {
+		List<AdvRoom> parse(long from, long to) throws IOException;
+	}
+
+	/**
+	 * One chunk of the file, whose rooms are left null if it is badly formatted.
+	 */
+	@SuppressWarnings("serial") // fork/join tasks are never serialized
+	private static final class Chunk extends RecursiveAction {
+		private final ChunkParser parser;
+		private final long from, to;
+		List<AdvRoom> rooms;
+
+		Chunk(ChunkParser parser, long from, long to) {
+			this.parser = parser;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			try { rooms = parser.parse(from, to); }
+			catch (IOException badlyFormatted) { rooms = null; }
+		}
+	}
+
+	/**
+	 * One stripe of the cache: the descriptions of some of the rooms, least
+	 * recently used first, dropping the oldest once it is full.  A ReentrantLock
+	 * guards it rather than synchronized, so that virtual threads waiting for it
+	 * do not hold on to their carrier threads.
+	 */
+	private static final class Stripe extends LinkedHashMap<Integer, String> {
+		private static final long serialVersionUID = 1L;
+		final ReentrantLock lock = new ReentrantLock();
+		private final int capacity;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+			return size() > capacity;
+		}
+	}
+}
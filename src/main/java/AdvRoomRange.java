@@ -0,0 +1,43 @@
+/*
+ * File: AdvRoomRange.java
+ * -----------------------
+ * This file defines a loop over the rooms of a world that runs on the
+ * fork/join pool.
+ */
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/* Class: AdvRoomRange */
+/**
+ * Runs a body for each index of a range, splitting the range in halves across
+ * the fork/join pool down to LEAF indexes.  The bodies run in no particular
+ * order, so each must only change what belongs to its own index.  invoke() runs
+ * the loop in the current fork/join pool, or in the common pool if it is called
+ * from outside one.
+ */
+
+@SuppressWarnings("serial") // fork/join tasks are never serialized
+final class AdvRoomRange extends RecursiveAction {
+
+	/** The fewest indexes a task is split into */
+	static final int LEAF = 4096;
+
+	private final int from, to;
+	private final IntConsumer body;
+
+	AdvRoomRange(int from, int to, IntConsumer body) {
+		this.from = from;
+		this.to = to;
+		this.body = body;
+	}
+
+	protected void compute() {
+		if (to - from <= LEAF) {
+			for (int i = from; i < to; i++) body.accept(i);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		invokeAll(new AdvRoomRange(from, middle, body), new AdvRoomRange(middle, to, body));
+	}
+}
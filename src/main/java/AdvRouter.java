@@ -0,0 +1,401 @@
+/*
+ * File: AdvRouter.java
+ * --------------------
+ * This file defines the shortest routes between the rooms of a world, for the
+ * HINT and GOTO commands.
+ */
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/* Class: AdvRouter */
+/**
+ * This class finds the fewest moves that take a player from one room to
+ * another, moving the way the game moves them: each direction takes the first
+ * exit the player has the key for (or that needs none), and FORCED exits are
+ * followed on arrival, including the ones that need a key.
+ *
+ * Routes are found by searching from both ends at once, a breadth-first layer
+ * at a time from whichever end has the fewer rooms to expand, until the two
+ * searches meet.  In a world whose rooms have b exits each, a route of d moves
+ * then costs about 2 * b^(d/2) rooms rather than b^d.  Large worlds are only a
+ * dozen or so moves across, so a search from one end looks at much of the world
+ * for every route, while one from both ends looks at a few thousand rooms even
+ * in a world of millions.
+ *
+ * The data worked out once per world is every move a player could make,
+ * whatever they carry, both by the room it starts from and by the room where it
+ * comes to rest, since searching backwards needs the moves that enter each room.
+ * The moves of each room are worked out on the common fork/join pool.  Most
+ * moves lead to the same room whatever the player carries; the others are
+ * marked, and a query checks them against what the player carries, so that
+ * routes only use the exits the player has the keys for.  With the moves in two
+ * flat arrays, a query only looks at the rooms themselves for the marked moves,
+ * which keeps it to a few cache misses per room in worlds too big for the cache.
+ * The arrays take about 16 bytes per exit.
+ */
+
+public class AdvRouter {
+
+	private static final long KEYED = 1L << 31; // marks a move whose room depends on what the player carries
+	private static final int DIRECTION_MASK = 0x7FFFFFFF;
+
+	private final List<AdvRoom> rooms;
+	private final int directionCount;
+	private final int forcedId;
+	private final boolean fromBothEnds;
+	private final int[] leavingStart;
+	private final long[] leaving;  // the moves of each room: where they may come to rest << 32 | KEYED? | direction
+	private final int[] enteringStart;
+	private final long[] entering; // the moves that may come to rest in each room: from << 32 | KEYED? | direction
+	private final Map<String, Integer> firstNamed = new HashMap<>();
+	private final int[] nextNamed; // the next room with the same name, or -1
+
+	private AdvRouter(AdvWorld world, boolean fromBothEnds) {
+		rooms = world.getRooms();
+		int n = rooms.size();
+		forcedId = world.getForcedId();
+		directionCount = directionCountOf(world);
+		this.fromBothEnds = fromBothEnds;
+
+		nextNamed = new int[n];
+		for (int r = n - 1; r >= 0; r--) {
+			Integer next = firstNamed.put(rooms.get(r).getName().toUpperCase(), r);
+			nextNamed[r] = (next == null) ? -1 : next;
+		}
+
+		// The moves out of every room, worked out in parallel, then laid out both ways:
+		long[][] moves = new long[n][];
+		new AdvRoomRange(0, n, r -> moves[r] = movesFrom(r)).invoke();
+		leavingStart = new int[n + 1];
+		enteringStart = new int[n + 1];
+		for (int r = 0; r < n; r++) {
+			leavingStart[r + 1] = leavingStart[r] + moves[r].length;
+			for (long m : moves[r]) enteringStart[(int) (m >>> 32) + 1]++;
+		}
+		for (int r = 0; r < n; r++) enteringStart[r + 1] += enteringStart[r];
+		leaving = new long[leavingStart[n]];
+		entering = new long[enteringStart[n]];
+		int[] fill = Arrays.copyOf(enteringStart, n);
+		for (int r = 0; r < n; r++) {
+			System.arraycopy(moves[r], 0, leaving, leavingStart[r], moves[r].length);
+			for (long m : moves[r]) entering[fill[(int) (m >>> 32)]++] = ((long) r << 32) | (m & 0xFFFFFFFFL);
+			moves[r] = null;
+		}
+	}
+
+	/* Method: build(world) */
+	/**
+	 * Works out the routing data of a world.  This is done once per world, when
+	 * the first route is asked for (see AdvWorld.getRouter).
+	 *
+	 * @usage AdvRouter router = AdvRouter.build(world);
+	 * @param world is a linked world.
+	 * @return is the router of that world.
+	 */
+	static AdvRouter build(AdvWorld world) {
+		return new AdvRouter(world, true);
+	}
+
+	/**
+	 * Works out a router that only searches forwards from the start, which is
+	 * what the usual one is checked and measured against.
+	 */
+	static AdvRouter buildOneEnded(AdvWorld world) {
+		return new AdvRouter(world, false);
+	}
+
+	private static int directionCountOf(AdvWorld world) {
+		// Directions have the lowest symbol ids, so the highest one used by an exit bounds them:
+		int count = 0;
+		for (AdvRoom r : world.getRooms())
+			for (AdvMotionTableEntry e : r.getMotionTable())
+				count = Math.max(count, e.getDirectionId() + 1);
+		return count;
+	}
+
+	/* Method: findRooms(name) */
+	/**
+	 * Finds the rooms with a given name, ignoring case.
+	 *
+	 * @usage int[] targets = router.findRooms(name);
+	 * @param name is the name of a room.
+	 * @return is the indexes of the rooms with that name, in file order; empty if
+	 * there are none.
+	 */
+	public int[] findRooms(String name) {
+		Integer first = firstNamed.get(name.toUpperCase());
+		if (first == null) return new int[0];
+		int count = 0;
+		for (int r = first; r >= 0; r = nextNamed[r]) count++;
+		int[] found = new int[count];
+		count = 0;
+		for (int r = first; r >= 0; r = nextNamed[r]) found[count++] = r;
+		return found;
+	}
+
+	/**
+	 * @return is roughly how many bytes of heap the routing data takes.
+	 */
+	long estimateSize() {
+		return 4L * (leavingStart.length + enteringStart.length + nextNamed.length)
+				+ 8L * (leaving.length + entering.length) + 48L * firstNamed.size();
+	}
+
+	/* Method: findRoute(start, targets, carrying) */
+	/**
+	 * Finds the fewest moves from a room to any of the given rooms.  A route ends
+	 * where the player comes to rest, so a room the player can only pass through
+	 * on a FORCED exit is never reached.
+	 *
+	 * @usage int[] route = router.findRoute(start, targets, carrying);
+	 * @param start is the index of the room the player is in.
+	 * @param targets is the indexes of the rooms to go to.
+	 * @param carrying tells whether the player carries the key with the given
+	 *            symbol id.
+	 * @return is the direction ids of the moves, in order (empty if the player is
+	 * in one of the targets already), or null if none of them can be reached.
+	 */
+	public int[] findRoute(int start, int[] targets, IntPredicate carrying) {
+		for (int t : targets) if (t == start) return new int[0];
+		Search from = new Search(), to = new Search();
+		from.add(start, -1, -1);
+		for (int t : targets) if (to.find(t) < 0) to.add(t, -1, -1);
+
+		while (from.hasLayer() && to.hasLayer()) {
+			// Expand the whole of the smaller layer: the shortest route is the
+			// shortest through the rooms where the searches first meet.
+			boolean forward = !fromBothEnds || from.layerSize() <= to.layerSize();
+			Search near = forward ? from : to, far = forward ? to : from;
+			int[] starts = forward ? leavingStart : enteringStart;
+			long[] moves = forward ? leaving : entering;
+			int best = Integer.MAX_VALUE, meetNear = -1, meetFar = -1;
+			for (int slot = near.nextLayer(), end = near.layerEnd; slot < end; slot++) {
+				int room = near.room[slot];
+				for (int i = starts[room]; i < starts[room + 1]; i++) {
+					int other = (int) (moves[i] >>> 32), dir = (int) moves[i] & DIRECTION_MASK;
+					if (near.find(other) >= 0) continue;
+					if ((moves[i] & KEYED) != 0) {
+						int mover = forward ? room : other, rest = forward ? other : room;
+						if (move(rooms.get(mover), dir, carrying) != rest) continue;
+					}
+					int added = near.add(other, slot, dir);
+					int met = far.find(other);
+					if (met >= 0 && near.depth[added] + far.depth[met] < best) {
+						best = near.depth[added] + far.depth[met];
+						meetNear = added;
+						meetFar = met;
+					}
+				}
+			}
+			if (meetNear >= 0) return forward ? join(from, meetNear, to, meetFar) : join(from, meetFar, to, meetNear);
+		}
+		return null;
+	}
+
+	/**
+	 * @return is the moves from the start to the room in slot inFrom of the
+	 * forward search, and then on from that room, which is in slot inTo of the
+	 * backward search, to a target.
+	 */
+	private static int[] join(Search from, int inFrom, Search to, int inTo) {
+		int[] moves = new int[from.depth[inFrom] + to.depth[inTo]];
+		int i = from.depth[inFrom];
+		for (int s = inFrom; from.link[s] >= 0; s = from.link[s]) moves[--i] = from.direction[s];
+		i = from.depth[inFrom];
+		for (int s = inTo; to.link[s] >= 0; s = to.link[s]) moves[i++] = to.direction[s];
+		return moves;
+	}
+
+	/**
+	 * Moves the player from a room the way Adventure.executeMotionCommand does.
+	 * @return is where they come to rest, or -1 if the move wins the game or
+	 * there is no exit that way.
+	 */
+	private int move(AdvRoom from, int dir, IntPredicate carrying) {
+		AdvMotionTableEntry e = exit(from, dir, carrying);
+		if (e == null) return -1;
+		int destination = e.getDestinationRoom();
+		for (int keyedSteps = 0; ; ) {
+			if (destination < 0) return -1;
+			AdvRoom room = rooms.get(destination);
+			if (!room.hasForcedMotion()) return destination;
+			if (room.getForcedDestination() != AdvRoom.NO_FORCED_DESTINATION) {
+				destination = room.getForcedDestination();
+				continue;
+			}
+			if (++keyedSteps > rooms.size()) return destination;
+			e = exit(room, forcedId, carrying);
+			if (e == null) return destination;
+			destination = e.getDestinationRoom();
+		}
+	}
+
+	private static AdvMotionTableEntry exit(AdvRoom room, int dir, IntPredicate carrying) {
+		for (AdvMotionTableEntry e : room.getMotionCandidates(dir))
+			if (e.getKeyName() == null || carrying.test(e.getKeyId())) return e;
+		return null;
+	}
+
+	/**
+	 * @return is every move a player could make from room r, whatever they carry,
+	 * each as the room where it comes to rest << 32 | its direction, marked KEYED
+	 * if the room depends on what they carry.
+	 */
+	private long[] movesFrom(int r) {
+		AdvRoom room = rooms.get(r);
+		LongList moves = new LongList();
+		LongList pending = null; // the worklist and visited rooms of addLandings, made once per room
+		Set<Integer> seen = null;
+		for (int dir = 0; dir < directionCount; dir++) {
+			if (dir == forcedId) continue; // never a move of the player's own
+			AdvMotionTableEntry[] candidates = room.getMotionCandidates(dir);
+			if (candidates.length == 0) continue;
+			if (candidates.length == 1 && candidates[0].getKeyName() == null) {
+				int rest = keylessRest(candidates[0].getDestinationRoom());
+				if (rest != AdvRoom.NO_FORCED_DESTINATION) {
+					if (rest >= 0) moves.add(((long) rest << 32) | dir);
+					continue;
+				}
+			}
+			if (pending == null) {
+				pending = new LongList();
+				seen = new HashSet<>();
+			}
+			long keyedDir = KEYED | dir;
+			// Last on the worklist is taken first, so the candidates go on it backwards:
+			for (int i = candidates.length - 1; i >= 0; i--)
+				if (candidates[i].getDestinationRoom() >= 0) pending.add(candidates[i].getDestinationRoom());
+			seen.clear();
+			addLandings(pending, seen, landing -> moves.add(((long) landing << 32) | keyedDir));
+		}
+		return moves.toArray();
+	}
+
+	/**
+	 * @return is where a player entering room r comes to rest (-1 if they win the
+	 * game), or NO_FORCED_DESTINATION if that depends on what they carry.
+	 */
+	private int keylessRest(int r) {
+		if (r < 0 || !rooms.get(r).hasForcedMotion()) return r;
+		r = rooms.get(r).getForcedChainEnd();
+		if (r == AdvRoom.NO_FORCED_DESTINATION) return r;
+		return (r < 0 || !rooms.get(r).hasForcedMotion()) ? r : AdvRoom.NO_FORCED_DESTINATION;
+	}
+
+	/**
+	 * Passes on every room where a player entering one of the rooms on a worklist
+	 * might come to rest, depending on the keys they carry, and perhaps some where
+	 * they cannot, each once, in the order a depth-first walk of the FORCED exits
+	 * reaches them.  The worklist is used up; keyed FORCED chains can be as long
+	 * as the world, so they are followed with it rather than by recursion.
+	 * @param pending is the rooms still to be entered, the last one next.
+	 * @param seen is the rooms passed on so far.
+	 */
+	private void addLandings(LongList pending, Set<Integer> seen, IntConsumer rest) {
+		while (pending.size > 0) {
+			int r = (int) pending.values[--pending.size];
+			if (rooms.get(r).getForcedChainEnd() != AdvRoom.NO_FORCED_DESTINATION)
+				r = rooms.get(r).getForcedChainEnd();
+			if (r < 0 || !seen.add(r)) continue;
+			AdvRoom room = rooms.get(r);
+			rest.accept(r); // without the keys to go on, or at the end of a loop
+			if (!room.hasForcedMotion()) continue;
+			AdvMotionTableEntry[] forced = room.getMotionCandidates(forcedId);
+			for (int i = forced.length - 1; i >= 0; i--)
+				if (forced[i].getDestinationRoom() >= 0) pending.add(forced[i].getDestinationRoom());
+		}
+	}
+
+	private static final class LongList {
+		long[] values = new long[8];
+		int size;
+
+		void add(long value) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * The rooms one end of a query has reached so far, in the order it reached
+	 * them, which is breadth-first order, with how many moves away each is and the
+	 * move that links it to the room it was reached from.  Everything is sized by
+	 * the rooms reached, not by the world, so that short queries in large worlds
+	 * stay cheap.
+	 */
+	private static final class Search {
+		int[] room = new int[64], depth = new int[64], link = new int[64], direction = new int[64];
+		int layerEnd; // the rooms in the slots before this one have been expanded
+		private int count;
+		private int[] table = new int[128]; // open addressing: room -> slot + 1
+
+		int find(int r) {
+			int mask = table.length - 1;
+			for (int i = hash(r) & mask; ; i = (i + 1) & mask) {
+				if (table[i] == 0) return -1;
+				if (room[table[i] - 1] == r) return table[i] - 1;
+			}
+		}
+
+		/**
+		 * Records that room r was reached from the room in slot linkSlot by a move
+		 * in direction dir (-1 for the rooms a search starts from).
+		 * @return is its slot.
+		 */
+		int add(int r, int linkSlot, int dir) {
+			if (count == room.length) grow();
+			int slot = count++;
+			room[slot] = r;
+			depth[slot] = (linkSlot < 0) ? 0 : depth[linkSlot] + 1;
+			link[slot] = linkSlot;
+			direction[slot] = dir;
+			insert(r, slot);
+			return slot;
+		}
+
+		boolean hasLayer() {
+			return layerEnd < count;
+		}
+
+		int layerSize() {
+			return count - layerEnd;
+		}
+
+		/**
+		 * Starts expanding the rooms reached since the last layer was.
+		 * @return is the slot of the first of them.
+		 */
+		int nextLayer() {
+			int first = layerEnd;
+			layerEnd = count;
+			return first;
+		}
+
+		private void grow() {
+			int size = room.length * 2;
+			room = Arrays.copyOf(room, size);
+			depth = Arrays.copyOf(depth, size);
+			link = Arrays.copyOf(link, size);
+			direction = Arrays.copyOf(direction, size);
+			table = new int[size * 2];
+			for (int s = 0; s < count; s++) insert(room[s], s);
+		}
+
+		private void insert(int r, int slot) {
+			int mask = table.length - 1;
+			int i = hash(r) & mask;
+			while (table[i] != 0) i = (i + 1) & mask;
+			table[i] = slot + 1;
+		}
+
+		private static int hash(int r) {
+			return r * 0x9E3779B9 >>> 7;
+		}
+	}
+}
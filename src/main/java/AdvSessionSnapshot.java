@@ -0,0 +1,169 @@
+/*
+ * File: AdvSessionSnapshot.java
+ * -----------------------------
+ * This file defines the binary form of one player's game in progress.
+ */
+
+import java.nio.*;
+import java.util.*;
+
+/* Class: AdvSessionSnapshot */
+/**
+ * A world is shared and never changes, so all there is to save of a game is the
+ * room the player is in, the rooms they have visited and the objects they have
+ * moved.  This class writes that to a compact binary snapshot and reads it back,
+ * for the SAVE and RESTORE commands and for servers that checkpoint idle games.
+ *
+ * The layout is a header (magic number, format version and the fingerprint of
+ * the world the game was played in) followed by the current room index, the
+ * visited rooms as a bit set (a byte count and the bytes, in BitSet.toByteArray
+ * order) and the moved objects in the order of their last move, each as its
+ * object index and location.  Apart from the header, numbers are unsigned
+ * varints, 7 bits to a byte; locations are stored plus 2 so that INVENTORY is 0.
+ * A game that has only entered the first room takes 13 bytes.
+ */
+
+public class AdvSessionSnapshot {
+
+	private static final int MAGIC = 0x41445653; // "ADVS"
+	private static final int VERSION = 1;
+
+	/* Method: toBytes(session) */
+	/**
+	 * Returns a snapshot of a game in progress.
+	 *
+	 * @usage byte[] state = AdvSessionSnapshot.toBytes(session);
+	 * @param session is a started game.
+	 * @return is the snapshot, exactly as long as it needs to be.
+	 */
+	public static byte[] toBytes(Adventure session) {
+		ByteBuffer out = ByteBuffer.allocate(maxSize(session));
+		write(session, out);
+		return Arrays.copyOf(out.array(), out.position());
+	}
+
+	/* Method: write(session, out) */
+	/**
+	 * Writes a snapshot of a game in progress at the position of a buffer, which
+	 * is advanced past it.  A buffer with maxSize(session) bytes remaining is
+	 * always big enough, and so is one with maxSize(world).
+	 *
+	 * @usage AdvSessionSnapshot.write(session, out);
+	 * @param session is a started game.
+	 * @param out is the buffer the snapshot is written to.
+	 * @throws BufferOverflowException if the snapshot does not fit.
+	 */
+	public static void write(Adventure session, ByteBuffer out) {
+		AdvObjectPlacement placement = session.getPlacement();
+		out.putInt(MAGIC);
+		out.put((byte) VERSION);
+		out.putInt(session.getWorld().getFingerprint());
+		putVarint(out, session.getRoomIndex());
+
+		byte[] visited = session.getVisited().toByteArray();
+		putVarint(out, visited.length);
+		out.put(visited);
+
+		List<AdvObject> moved = placement.getMovedObjects();
+		putVarint(out, moved.size());
+		for (AdvObject obj : moved) {
+			putVarint(out, obj.getIndex());
+			putVarint(out, placement.getLocation(obj) - AdvObjectPlacement.INVENTORY);
+		}
+	}
+
+	/* Method: read(session, in) */
+	/**
+	 * Puts a game back into the state recorded in a snapshot, read from the
+	 * position of a buffer.  The snapshot is checked in full before the game is
+	 * changed, so a bad one leaves the game as it was.
+	 *
+	 * @usage AdvSessionSnapshot.read(session, in);
+	 * @param session is a started game of the world the snapshot was taken in.
+	 * @param in is the buffer the snapshot is read from.
+	 * @throws AdvFormatException if the buffer does not hold a snapshot of a game
+	 * of this session's world.
+	 */
+	public static void read(Adventure session, ByteBuffer in) throws AdvFormatException {
+		AdvWorld world = session.getWorld();
+		int roomCount = world.getRooms().size();
+		try {
+			if (in.getInt() != MAGIC) throw new AdvFormatException("not a saved game");
+			if (in.get() != VERSION) throw new AdvFormatException("saved by a different version of the game");
+			if (in.getInt() != world.getFingerprint())
+				throw new AdvFormatException("saved in a different game");
+
+			int room = getVarint(in);
+			if (room >= roomCount) throw new AdvFormatException("no room " + (room + 1));
+
+			int visitedBytes = getVarint(in);
+			if (visitedBytes > (roomCount + 7) / 8) throw new AdvFormatException("too many visited rooms");
+			BitSet visited = BitSet.valueOf(in.slice(in.position(), visitedBytes));
+			in.position(in.position() + visitedBytes);
+
+			AdvObjectPlacement placement = new AdvObjectPlacement(world);
+			int movedCount = getVarint(in);
+			if (movedCount > world.getObjectCount()) throw new AdvFormatException("too many moved objects");
+			for (int i = 0; i < movedCount; i++) {
+				int index = getVarint(in);
+				int where = getVarint(in) + AdvObjectPlacement.INVENTORY;
+				if (index >= world.getObjectCount()) throw new AdvFormatException("no object " + index);
+				if (where >= roomCount || where == -1) throw new AdvFormatException("no room " + (where + 1));
+				placement.moveTo(world.getObjectByIndex(index), where);
+			}
+
+			session.restore(room, visited, placement);
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException exception) {
+			throw new AdvFormatException("the saved game is cut short");
+		}
+	}
+
+	/* Method: maxSize(world) */
+	/**
+	 * Returns the most bytes a snapshot of a game of the given world can take.
+	 *
+	 * @usage int size = AdvSessionSnapshot.maxSize(world);
+	 * @param world is a linked world.
+	 * @return is the size of the largest possible snapshot.
+	 */
+	public static int maxSize(AdvWorld world) {
+		return 4 + 1 + 4 + 5 + 5 + (world.getRooms().size() + 7) / 8 + 5 + 10 * world.getObjectCount();
+	}
+
+	/* Method: maxSize(session) */
+	/**
+	 * Returns the most bytes a snapshot of a game in its current state can take,
+	 * which grows with the rooms visited and the objects moved rather than with
+	 * the size of the world.
+	 *
+	 * @usage int size = AdvSessionSnapshot.maxSize(session);
+	 * @param session is a started game.
+	 * @return is a size that the game's snapshot fits in.
+	 */
+	public static int maxSize(Adventure session) {
+		int visitedBytes = (session.getVisited().length() + 7) / 8;
+		return 4 + 1 + 4 + 5 + 5 + visitedBytes + 5 + 10 * session.getPlacement().getMovedCount();
+	}
+
+	private static void putVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer in) throws AdvFormatException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				if (value < 0) break;
+				return value;
+			}
+		}
+		throw new AdvFormatException("a number is out of range");
+	}
+}
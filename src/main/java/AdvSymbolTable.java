@@ -0,0 +1,76 @@
+/*
+ * File: AdvSymbolTable.java
+ * -------------------------
+ * This file defines the table that turns the words of a game into
+ * small integers.
+ */
+
+import java.util.*;
+
+/* Class: AdvSymbolTable */
+/**
+ * This class gives every word of a game's vocabulary (commands, directions,
+ * object names and their synonyms) a dense id, starting from 0, in the order
+ * the words are first interned.  Once a world is loaded, everything after the
+ * first lookup of a typed word is done with ids, so commands cost one hash
+ * lookup per word instead of one per map they pass through.
+ */
+
+public class AdvSymbolTable {
+
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private final ArrayList<String> names = new ArrayList<>();
+
+/* Method: intern(word) */
+/**
+ * Returns the id of a word, giving it the next free id if it is new.
+ *
+ * @usage int id = symbols.intern(word);
+ * @param word The word to look up
+ * @return The id of the word
+ */
+	public int intern(String word) {
+		Integer id = ids.get(word);
+		if (id != null) return id;
+		ids.put(word, names.size());
+		names.add(word);
+		return names.size() - 1;
+	}
+
+/* Method: lookup(word) */
+/**
+ * Returns the id of a word without adding it.
+ *
+ * @usage int id = symbols.lookup(word);
+ * @param word The word to look up, or null
+ * @return The id of the word, or -1 if the word is not in the table
+ */
+	public int lookup(String word) {
+		Integer id = (word == null) ? null : ids.get(word);
+		return (id == null) ? -1 : id;
+	}
+
+/* Method: getName(id) */
+/**
+ * Returns the word with the given id.
+ *
+ * @usage String word = symbols.getName(id);
+ * @param id The id of the word
+ * @return The word
+ */
+	public String getName(int id) {
+		return names.get(id);
+	}
+
+/* Method: size() */
+/**
+ * Returns the number of words in the table, which is one more than the
+ * largest id.
+ *
+ * @usage int n = symbols.size();
+ * @return The number of words
+ */
+	public int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * File: AdvWordTrie.java
+ * ----------------------
+ * This file defines the trie that finds the word a player meant from an
+ * abbreviation or a misspelling.
+ */
+
+import java.util.*;
+
+/* Class: AdvWordTrie */
+/**
+ * This class holds every word a player can type, each with the symbol id of the
+ * word it stands for, in a trie that is built once when a world is linked and
+ * never changed.  Besides exact lookups, it resolves
+ *
+ *   - a unique prefix, e.g. INV for INVENTORY: every node knows whether all the
+ *     words below it stand for the same word, so this costs one step per letter;
+ *   - a misspelling, by walking the trie with a row of edit distances per node,
+ *     only as deep as the row stays within the bound, so that the few branches a
+ *     word could be close to are visited rather than the whole vocabulary.
+ *
+ * Edits are inserted, deleted or changed letters and swapped neighbours.  Short
+ * words are not corrected at all and longer ones by up to MAX_EDITS, as every
+ * two-letter word is one edit from dozens of others; a word more than one edit
+ * off must have its first letter right, which is where misspellings are rarest.
+ * A prefix or misspelling that could stand for more than one word stands for
+ * none.
+ *
+ * The nodes are kept in parallel arrays, with the children of each node next to
+ * each other in order of their letters, so that a vocabulary of 100,000 words
+ * takes a few million bytes in a handful of objects.
+ */
+
+public class AdvWordTrie {
+
+	/** The most edits a misspelt word is corrected by */
+	public static final int MAX_EDITS = 2;
+
+	private static final int AMBIGUOUS = -2;
+
+	private final char[] letter;   // the letter on the edge into each node
+	private final int[] firstChild; // the index of its first child
+	private final int[] childCount;
+	private final int[] word;      // the id of the word ending at the node, or -1
+	private final int[] only;      // the id every word below it stands for, or AMBIGUOUS
+	private final int depth;       // the length of the longest word
+	private int allocated; // nodes handed out so far, while the trie is built
+
+	/* Constructor: AdvWordTrie(words) */
+	/**
+	 * Builds a trie of the given words.
+	 *
+	 * @param words maps every word that can be typed to the symbol id of the word
+	 * it stands for.
+	 */
+	public AdvWordTrie(Map<String, Integer> words) {
+		String[] sorted = words.keySet().toArray(new String[0]);
+		Arrays.sort(sorted);
+		int[] ids = new int[sorted.length];
+		int nodes = 1, maxLength = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			ids[i] = words.get(sorted[i]);
+			// Each word needs a node for every letter after those it shares with the one before it:
+			nodes += sorted[i].length() - ((i == 0) ? 0 : sharedLength(sorted[i - 1], sorted[i]));
+			maxLength = Math.max(maxLength, sorted[i].length());
+		}
+		letter = new char[nodes];
+		firstChild = new int[nodes];
+		childCount = new int[nodes];
+		word = new int[nodes];
+		only = new int[nodes];
+		depth = maxLength;
+		allocated = 1;
+		build(0, sorted, ids, 0, sorted.length, 0);
+	}
+
+	/**
+	 * Fills in a node from the sorted words that start with its prefix, and the
+	 * nodes below it, with the children of each node put next to each other.
+	 * @param node is the node's index.
+	 * @param from is the first of the words.
+	 * @param to is one past the last.
+	 * @param at is the length of the prefix.
+	 */
+	private void build(int node, String[] sorted, int[] ids, int from, int to, int at) {
+		word[node] = -1;
+		if (from < to && sorted[from].length() == at) word[node] = ids[from++];
+		int children = 0;
+		for (int i = from; i < to; children++) {
+			char c = sorted[i].charAt(at);
+			while (i < to && sorted[i].charAt(at) == c) i++;
+		}
+		firstChild[node] = allocated;
+		childCount[node] = children;
+		allocated += children;
+		int id = word[node];
+		for (int i = from, child = firstChild[node]; i < to; child++) {
+			int start = i;
+			char c = sorted[i].charAt(at);
+			while (i < to && sorted[i].charAt(at) == c) i++;
+			letter[child] = c;
+			build(child, sorted, ids, start, i, at + 1);
+			if (id == -1) id = only[child];
+			else if (id != only[child]) id = AMBIGUOUS;
+		}
+		only[node] = (id == -1) ? AMBIGUOUS : id;
+	}
+
+	private static int sharedLength(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < n && a.charAt(i) == b.charAt(i)) i++;
+		return i;
+	}
+
+	/* Method: find(word) */
+	/**
+	 * Looks a typed word up, as it is, then as a unique prefix, then as a unique
+	 * misspelling (see findClosest).
+	 *
+	 * @usage int id = trie.find(word);
+	 * @param typed is the word as typed (in upper case).
+	 * @return is the symbol id of the word it stands for, or -1 if there is none.
+	 */
+	public int find(String typed) {
+		int node = 0;
+		for (int i = 0; i < typed.length() && node >= 0; i++)
+			node = child(node, typed.charAt(i));
+		if (node > 0) {
+			if (word[node] >= 0) return word[node];
+			if (only[node] >= 0) return only[node];
+		}
+		return findClosest(typed);
+	}
+
+	/* Method: findPrefix(prefix) */
+	/**
+	 * Looks up the word that every word starting with a prefix stands for.
+	 *
+	 * @usage int id = trie.findPrefix(prefix);
+	 * @param prefix is the start of a word (in upper case).
+	 * @return is the symbol id of the word, or -1 if there are no such words or
+	 * they stand for different words.
+	 */
+	public int findPrefix(String prefix) {
+		int node = 0;
+		for (int i = 0; i < prefix.length() && node >= 0; i++)
+			node = child(node, prefix.charAt(i));
+		return (node > 0 && only[node] >= 0) ? only[node] : -1;
+	}
+
+	/**
+	 * @return is the child of a node on an edge with the given letter, or -1.
+	 */
+	private int child(int node, char c) {
+		int lo = firstChild[node], hi = lo + childCount[node] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (letter[mid] < c) lo = mid + 1;
+			else if (letter[mid] > c) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/* Method: findClosest(typed) */
+	/**
+	 * Finds the word closest to a misspelt one, if it is within maxEdits of it
+	 * (and starts with the same letter, if it is more than one edit off) and no
+	 * other word is as close.
+	 *
+	 * @usage int id = trie.findClosest(typed);
+	 * @param typed is the word as typed (in upper case).
+	 * @return is the symbol id of the word it stands for, or -1 if there is none.
+	 */
+	public int findClosest(String typed) {
+		int most = maxEdits(typed.length());
+		char[] letters = typed.toCharArray();
+		// Most misspellings are one edit off, and looking only that far visits a
+		// fraction of the nodes, so that is tried first.  Words further off are
+		// only looked for among those with the same first letter:
+		for (int bound = 1; bound <= most; bound++) {
+			Search search = new Search(letters, Math.min(depth, letters.length + bound) + 1, bound);
+			if (bound == 1) {
+				int first = firstChild[0];
+				for (int child = first; child < first + childCount[0]; child++)
+					search.visit(child, 1);
+			}
+			else {
+				int child = child(0, letters[0]);
+				if (child >= 0) search.visit(child, 1);
+			}
+			if (search.found != -1) return (search.found >= 0) ? search.found : -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return is the most edits a word of the given length is corrected by.
+	 */
+	public static int maxEdits(int length) {
+		return (length < 4) ? 0 : (length < 8) ? 1 : MAX_EDITS;
+	}
+
+	/**
+	 * One walk of the trie for the words closest to a typed one.  Row d holds
+	 * the edit distances between the first d letters of a path and every prefix
+	 * of the typed word, though only those within the bound of the diagonal are
+	 * worked out: the others cannot be within the bound either.
+	 */
+	private final class Search {
+		final char[] typed;
+		final int[][] rows;
+		final char[] path;
+		int bound; // the distance of the closest word found so far, or the most allowed
+		int found = -1; // the id it stands for, or AMBIGUOUS if there are several
+
+		Search(char[] typed, int depth, int bound) {
+			this.typed = typed;
+			this.rows = new int[depth][typed.length + 1];
+			this.path = new char[depth];
+			this.bound = bound;
+			for (int i = 0; i <= typed.length; i++) rows[0][i] = i;
+		}
+
+		void visit(int node, int d) {
+			if (d >= rows.length) return;
+			char c = letter[node];
+			path[d] = c;
+			int[] row = rows[d], above = rows[d - 1], twoAbove = (d > 1) ? rows[d - 2] : null;
+			int n = typed.length;
+			int lo = Math.max(1, d - bound), hi = Math.min(n, d + bound);
+			row[0] = d;
+			row[lo - 1] = (lo == 1) ? d : bound + 1;
+			if (hi < n) row[hi + 1] = bound + 1;
+			int least = bound + 1;
+			for (int i = lo; i <= hi; i++) {
+				char t = typed[i - 1];
+				int cost = Math.min(above[i - 1] + ((t == c) ? 0 : 1), Math.min(above[i], row[i - 1]) + 1);
+				if (twoAbove != null && i > 1 && t == path[d - 1] && typed[i - 2] == c)
+					cost = Math.min(cost, twoAbove[i - 2] + 1); // swapped neighbours
+				row[i] = cost;
+				least = Math.min(least, cost);
+			}
+			if (least > bound) return;
+			if (word[node] >= 0 && hi == n && row[n] <= bound) {
+				if (row[n] < bound || found == -1) {
+					bound = row[n];
+					found = word[node];
+				}
+				else if (found != word[node]) found = AMBIGUOUS;
+			}
+			int first = firstChild[node];
+			for (int child = first; child < first + childCount[node]; child++)
+				visit(child, d + 1);
+		}
+	}
+
+	/**
+	 * @return is the number of nodes in the trie.
+	 */
+	public int getNodeCount() {
+		return letter.length;
+	}
+
+	/**
+	 * @return is roughly how many bytes of heap the trie takes.
+	 */
+	public long estimateSize() {
+		return 18L * letter.length + 5 * 16;
+	}
+}
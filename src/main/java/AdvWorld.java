@@ -0,0 +1,638 @@
+/*
+ * File: AdvWorld.java
+ * -------------------
+ * This file defines the parsed contents of one game: its rooms, objects,
+ * commands and synonyms.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* Class: AdvWorld */
+/**
+ * This class holds everything that is read from a game's ...Rooms.txt,
+ * ...Objects.txt and ...Synonyms.txt files.  A world is filled in by one of the
+ * loaders (the text files or a compiled snapshot) and then linked, which places
+ * the objects in their rooms and builds the command and synonym maps.
+ *
+ * Once linked, a world is never changed again, so a single world can be shared
+ * by any number of games played at the same time (see AdvWorldCache).  Each game
+ * keeps only what it changes itself: where the player is, which rooms they have
+ * visited, and which objects they have moved (see AdvObjectPlacement).  When the
+ * game files change, a new world is loaded, and the old one only records that it
+ * has been replaced, so that its games can move on (see AdvWorldDiff).
+ */
+
+public class AdvWorld {
+
+	private String directory;
+	private AdvRoomFile roomFile; // set if the room descriptions are read lazily
+	private final ArrayList<AdvRoom> rooms = new ArrayList<>();
+	private final Map<String, AdvObject> objects = new LinkedHashMap<>();
+	private final Map<String, AdvCommand> commands = new HashMap<>();
+	private final Map<String, String> synonyms = new HashMap<>();
+
+	// Filled in by link(), all indexed by symbol id:
+	private final AdvSymbolTable symbols = new AdvSymbolTable();
+	private int[] canonical;
+	private AdvCommand[] commandById;
+	private AdvObject[] objectById;
+	private AdvObject[] objectByIndex;
+	private String[][] aliasesById;
+	private AdvWordTrie trie; // every word that can be typed, for abbreviations and misspellings
+	private int forcedId;
+	private int fingerprint;
+	private volatile AdvRouter router; // worked out when the first route is asked for
+	private final ReentrantLock routerLock = new ReentrantLock();
+	private volatile AdvWorldDiff replacement; // set once a newer version of the game is loaded
+	private volatile long heapSize = -1; // worked out the first time it is asked for
+	private final AtomicInteger sessions = new AtomicInteger();
+
+	/** True if worlds get the GOTO command, for testing (the adventure.goto system property) */
+	static final boolean ALLOW_GOTO = Boolean.getBoolean("adventure.goto");
+
+	/** True if words must be typed in full and spelt right (the adventure.exactWords system property) */
+	static final boolean EXACT_WORDS = Boolean.getBoolean("adventure.exactWords");
+
+	// Read-only views handed out to callers:
+	private final List<AdvRoom> roomView = Collections.unmodifiableList(rooms);
+	private final Map<String, AdvObject> objectView = Collections.unmodifiableMap(objects);
+	private final Map<String, AdvCommand> commandView = Collections.unmodifiableMap(commands);
+	private final Map<String, String> synonymView = Collections.unmodifiableMap(synonyms);
+
+	/* Method: load(gameDirectory) */
+	/**
+	 * Loads a game, preferring its compiled snapshot and falling back to the text
+	 * files if there is no snapshot or it is older than the text files.  A game
+	 * whose room descriptions are to be read lazily (see AdvRoomFile) is always
+	 * read from its text files, as the snapshot holds every description.
+	 *
+	 * @usage AdvWorld world = AdvWorld.load(gameDirectory);
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @return the linked world, or null if the game has no Rooms file.
+	 * @throws AdvFormatException if one of the text files is badly formatted.
+	 */
+	public static AdvWorld load(String gameDirectory) throws IOException {
+		if (AdvRoomFile.isLazy(new File(gameDirectory + "Rooms.txt"))) return readFromText(gameDirectory, true);
+		AdvWorld world = AdvWorldSnapshot.read(gameDirectory);
+		return (world != null) ? world : readFromText(gameDirectory);
+	}
+
+	/* Method: readFromText(gameDirectory) */
+	/**
+	 * Parses a game from its text files, reading the room descriptions lazily if
+	 * AdvRoomFile.isLazy says so.
+	 *
+	 * @usage AdvWorld world = AdvWorld.readFromText(gameDirectory);
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @return the linked world, or null if the game has no Rooms file.
+	 * @throws AdvFormatException if one of the files is badly formatted.
+	 */
+	public static AdvWorld readFromText(String gameDirectory) throws IOException {
+		return readFromText(gameDirectory, AdvRoomFile.isLazy(new File(gameDirectory + "Rooms.txt")));
+	}
+
+	/* Method: readFromText(gameDirectory, lazyDescriptions) */
+	/**
+	 * Parses a game from its text files.  The objects and synonyms files are
+	 * parsed on the fork/join pool while the rooms file is, itself in parallel
+	 * chunks if it is large (see AdvRoomFile); the parts only meet when the world
+	 * is linked, once all three have been read.  Errors are reported for the
+	 * rooms file first, then the objects file, then the synonyms file.
+	 *
+	 * @usage AdvWorld world = AdvWorld.readFromText(gameDirectory, lazyDescriptions);
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @param lazyDescriptions is true to leave the room descriptions in the mapped
+	 * rooms file until they are needed (see AdvRoomFile).
+	 * @return the linked world, or null if the game has no Rooms file.
+	 * @throws AdvFormatException if one of the files is badly formatted.
+	 */
+	public static AdvWorld readFromText(String gameDirectory, boolean lazyDescriptions) throws IOException {
+		AdvWorld world = new AdvWorld();
+		world.setDirectory(gameDirectory);
+		File roomsFile = new File(gameDirectory + "Rooms.txt");
+		if (!roomsFile.isFile()) return null;
+
+		File objectsFile = new File(gameDirectory + "Objects.txt");
+		ForkJoinTask<IOException> objects = readInBackground(objectsFile, world::readObjects);
+		// not having synonyms is not necessarily game-breaking, so no need to throw an error.
+		ForkJoinTask<IOException> synonyms = readInBackground(new File(gameDirectory + "Synonyms.txt"), world::readSynonyms);
+
+		try {
+			if (lazyDescriptions) world.roomFile = AdvRoomFile.readRooms(roomsFile, world);
+			else {
+				List<AdvRoom> rooms = AdvRoomFile.readRoomsEagerly(roomsFile);
+				if (rooms != null) world.rooms.addAll(rooms);
+				else try (LineNumberReader rd = open(roomsFile)) { world.readRooms(rd); }
+			}
+		}
+		catch (AdvFormatException exception) { throw new AdvFormatException(roomsFile.getName(), exception); }
+
+		IOException failure = objects.join();
+		if (failure != null) throw failure;
+		// The objects are read before the number of rooms is known, so their rooms are checked now:
+		try { world.checkObjectRooms(); }
+		catch (AdvFormatException exception) { throw new AdvFormatException(objectsFile.getName(), exception); }
+		failure = synonyms.join();
+		if (failure != null) throw failure;
+		world.link();
+		return world;
+	}
+
+	private interface Reading {
+		void read(LineNumberReader rd) throws IOException;
+	}
+
+	/**
+	 * Starts reading a file on the fork/join pool, if it exists.
+	 * @return is the task, whose result is the error it ran into, or null.
+	 */
+	private static ForkJoinTask<IOException> readInBackground(File file, Reading reading) {
+		return ForkJoinTask.adapt(() -> {
+			if (!file.isFile()) return null;
+			try (LineNumberReader rd = open(file)) {
+				reading.read(rd);
+				return null;
+			}
+			catch (AdvFormatException exception) { return new AdvFormatException(file.getName(), exception); }
+			catch (IOException exception) { return exception; }
+		}).fork();
+	}
+
+	private static LineNumberReader open(File file) throws IOException {
+		return new LineNumberReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Fills the rooms list dependent on a properly formatted txt file.
+	 * @param rd is a reader open on the ...Rooms.txt file.
+	 */
+	void readRooms(LineNumberReader rd) throws IOException {
+		AdvRoom r;
+		while ((r = AdvRoom.readFromFile(rd)) != null)
+			addRoom(r);
+	}
+
+	/**
+	 * Fills the objects map, dependent on a properly formatted txt file.
+	 * @param rd is a reader open on the ...Objects.txt file.
+	 */
+	void readObjects(LineNumberReader rd) throws IOException {
+		AdvObject obj;
+		while ((obj = AdvObject.readFromFile(rd)) != null)
+			addObject(obj);
+	}
+
+	/**
+	 * Synonyms are different ways to key into rooms via direction keywords, items via
+	 * item name keywords, ect.  This function fills a map with the synonyms given in
+	 * the game's Synonyms file, one "ALIAS=WORD" per line up to the first empty line.
+	 * @param rd is a reader open on the ...Synonyms.txt file.
+	 */
+	void readSynonyms(LineNumberReader rd) throws IOException {
+		String line;
+		while ((line = rd.readLine()) != null && !line.isEmpty()) {
+			int equals = line.indexOf('=');
+			if (equals < 0) throw new AdvFormatException(rd, "expected ALIAS=WORD but found \"" + line + "\"");
+			addSynonym(line.substring(0, equals), line.substring(equals + 1));
+		}
+	}
+
+	void addRoom(AdvRoom room) {
+		rooms.add(room);
+	}
+
+	void addObject(AdvObject obj) {
+		objects.put(obj.getName(), obj);
+	}
+
+	void addSynonym(String alias, String word) {
+		synonyms.put(alias, word);
+	}
+
+	/**
+	 * Checks that every object starts in a room of this world, giving the line
+	 * of its room number if it was read from an objects file.
+	 */
+	private void checkObjectRooms() throws AdvFormatException {
+		for (AdvObject obj : objects.values()) {
+			int where = obj.getInitialLocation();
+			if (where >= 0 && where < rooms.size()) continue;
+			String problem = "object " + obj.getName() + " is in room " + (where + 1) + ", which does not exist";
+			throw (obj.getRoomLine() > 0) ? new AdvFormatException(obj.getRoomLine(), problem) : new AdvFormatException(problem);
+		}
+	}
+
+	/**
+	 * Checks that every exit leads to a room of this world, or to room 0, which
+	 * ends the game.
+	 */
+	private void checkDestinations() throws AdvFormatException {
+		for (AdvRoom room : rooms) {
+			for (AdvMotionTableEntry e : room.getMotionTable()) {
+				int to = e.getDestinationRoom();
+				if (to < -1 || to >= rooms.size())
+					throw new AdvFormatException("room " + (room.getRoomIndex() + 1) + ": " + e.getDirection() +
+							" leads to room " + (to + 1) + ", which does not exist");
+			}
+		}
+	}
+
+	/**
+	 * Finishes a world once all of its parts have been read: every word is given a
+	 * symbol id, objects are placed in their initial rooms, a command is made for
+	 * every built-in verb and every direction used in a motion table, and every
+	 * command and object name is mapped to itself so that the synonyms alone can be
+	 * used when checking input.  The words that can be typed go into an AdvWordTrie,
+	 * for the abbreviations and misspellings resolve accepts.  Before any of that,
+	 * every exit and every object is checked to lead to or start in a room that
+	 * exists.
+	 */
+	void link() throws AdvFormatException {
+		checkDestinations();
+		checkObjectRooms();
+		// Directions get the lowest ids, so that rooms can index their exits by id,
+		// then come the keys, each in the order the rooms first use them:
+		int blocks = (rooms.size() + AdvRoomRange.LEAF - 1) / AdvRoomRange.LEAF;
+		MotionWords[] words = new MotionWords[blocks];
+		new AdvRoomRange(0, blocks, b -> words[b] = new MotionWords(b * AdvRoomRange.LEAF)).invoke();
+		for (MotionWords w : words)
+			for (String direction : w.directions) symbols.intern(direction);
+		int directionCount = symbols.size();
+		forcedId = symbols.lookup("FORCED");
+		for (MotionWords w : words)
+			for (String key : w.keys) symbols.intern(key);
+
+		commands.put("QUIT", AdvCommand.QUIT);
+		commands.put("HELP", AdvCommand.HELP);
+		commands.put("INVENTORY", AdvCommand.INVENTORY);
+		commands.put("LOOK", AdvCommand.LOOK);
+		commands.put("TAKE", AdvCommand.TAKE);
+		commands.put("DROP", AdvCommand.DROP);
+		commands.put("SAVE", AdvCommand.SAVE);
+		commands.put("RESTORE", AdvCommand.RESTORE);
+		commands.put("HINT", AdvCommand.HINT);
+		if (ALLOW_GOTO) commands.put("GOTO", AdvCommand.GOTO);
+		for (int id = 0; id < directionCount; id++) // allow for custom directions:
+			if (!commands.containsKey(symbols.getName(id)))
+				commands.put(symbols.getName(id), new AdvMotionCommand(symbols.getName(id), id));
+		// Every word of the motion tables has its id, so binding them only reads the
+		// symbol table, and the rooms can be bound in parallel:
+		new AdvRoomRange(0, rooms.size(), r -> {
+			AdvRoom room = rooms.get(r);
+			for (AdvMotionTableEntry e : room.getMotionTable())
+				e.bind(symbols);
+			room.indexMotionTable(directionCount, forcedId);
+		}).invoke();
+		linkForcedChains();
+
+		objectByIndex = objects.values().toArray(new AdvObject[0]);
+		for (int i = 0; i < objectByIndex.length; i++) {
+			objectByIndex[i].bind(i, symbols);
+			rooms.get(objectByIndex[i].getInitialLocation()).addObject(objectByIndex[i]);
+		}
+
+		// Names given in the Synonyms file win over the names themselves:
+		for (String command : commands.keySet())
+			synonyms.putIfAbsent(command, command);
+		for (String obj : objects.keySet())
+			synonyms.putIfAbsent(obj, obj);
+
+		for (Map.Entry<String, String> e : synonyms.entrySet()) {
+			symbols.intern(e.getKey());
+			symbols.intern(e.getValue());
+		}
+		canonical = new int[symbols.size()];
+		Arrays.fill(canonical, -1);
+		HashMap<String, Integer> typeable = new HashMap<>(synonyms.size() * 2);
+		for (Map.Entry<String, String> e : synonyms.entrySet()) {
+			int word = symbols.lookup(e.getValue());
+			canonical[symbols.lookup(e.getKey())] = word;
+			typeable.put(e.getKey(), word);
+		}
+		if (!EXACT_WORDS) trie = new AdvWordTrie(typeable);
+		commandById = new AdvCommand[symbols.size()];
+		for (Map.Entry<String, AdvCommand> e : commands.entrySet())
+			commandById[symbols.intern(e.getKey())] = e.getValue();
+		objectById = new AdvObject[symbols.size()];
+		for (AdvObject obj : objects.values())
+			objectById[obj.getId()] = obj;
+
+		// The reverse of the synonyms, so that HELP does not have to search them:
+		ArrayList<ArrayList<String>> aliases = new ArrayList<>(symbols.size());
+		for (int i = 0; i < symbols.size(); i++) aliases.add(null);
+		for (Map.Entry<String, String> e : synonyms.entrySet()) {
+			int word = symbols.lookup(e.getValue());
+			if (aliases.get(word) == null) aliases.set(word, new ArrayList<>());
+			aliases.get(word).add(e.getKey().toLowerCase());
+		}
+		aliasesById = new String[symbols.size()][];
+		for (int i = 0; i < aliasesById.length; i++) {
+			if (aliases.get(i) == null) continue;
+			aliasesById[i] = aliases.get(i).toArray(new String[0]);
+			Arrays.sort(aliasesById[i]);
+		}
+
+		// Saved games record this, so that they are not restored into another game:
+		fingerprint = rooms.size();
+		for (AdvRoom r : rooms)
+			fingerprint = 31 * fingerprint + Objects.hashCode(r.getName());
+		for (AdvObject obj : objectByIndex)
+			fingerprint = 31 * (31 * fingerprint + obj.getName().hashCode()) + obj.getInitialLocation();
+	}
+
+	/**
+	 * The directions and key names used by one block of rooms, each in the order
+	 * they are first used.
+	 */
+	private final class MotionWords {
+		final LinkedHashSet<String> directions = new LinkedHashSet<>();
+		final LinkedHashSet<String> keys = new LinkedHashSet<>();
+
+		MotionWords(int first) {
+			for (int r = first; r < Math.min(first + AdvRoomRange.LEAF, rooms.size()); r++) {
+				for (AdvMotionTableEntry e : rooms.get(r).getMotionTable()) {
+					directions.add(e.getDirection());
+					if (e.getKeyName() != null) keys.add(e.getKeyName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out where each chain of unconditional FORCED exits ends, and rejects
+	 * worlds in which such a chain goes round in a circle, as a player entering it
+	 * could never stop moving.  Chains are followed with a loop rather than
+	 * recursion, so that very long ones cannot overflow the stack.
+	 */
+	private void linkForcedChains() throws AdvFormatException {
+		final int unseen = 0, onPath = 1, done = 2;
+		byte[] state = new byte[rooms.size()];
+		int[] path = new int[rooms.size()];
+
+		for (int start = 0; start < rooms.size(); start++) {
+			int length = 0;
+			int r = start;
+			while (r >= 0 && r < rooms.size() && state[r] == unseen &&
+					rooms.get(r).getForcedDestination() != AdvRoom.NO_FORCED_DESTINATION) {
+				state[r] = onPath;
+				path[length++] = r;
+				r = rooms.get(r).getForcedDestination();
+			}
+			if (r >= 0 && r < rooms.size() && state[r] == onPath) {
+				StringBuilder cycle = new StringBuilder();
+				int i = length - 1;
+				while (path[i] != r) i--;
+				for (; i < length; i++) cycle.append(path[i] + 1).append(" -> ");
+				throw new AdvFormatException("FORCED exits go round in a circle: " + cycle + (r + 1));
+			}
+
+			// r is where the chain comes to rest, or a room whose chain is already known:
+			int end = r;
+			if (r >= 0 && r < rooms.size() && rooms.get(r).getForcedChainEnd() != AdvRoom.NO_FORCED_DESTINATION)
+				end = rooms.get(r).getForcedChainEnd();
+			for (int i = 0; i < length; i++) {
+				rooms.get(path[i]).setForcedChainEnd(end);
+				state[path[i]] = done;
+			}
+		}
+	}
+
+	/* Method: resolve(word) */
+	/**
+	 * Looks a word the player typed up in the synonyms.  A word that is not there
+	 * stands for the word it is a unique abbreviation of, or failing that the one
+	 * it is a unique misspelling of (see AdvWordTrie), unless the
+	 * adventure.exactWords system property is set.
+	 *
+	 * @usage int id = world.resolve(word);
+	 * @param word is the word as typed (in upper case).
+	 * @return is the symbol id of the word it stands for, or -1 if the word is unknown.
+	 */
+	public int resolve(String word) {
+		int id = symbols.lookup(word);
+		if (id >= 0 && canonical[id] >= 0) return canonical[id];
+		return (trie == null) ? -1 : trie.find(word);
+	}
+
+	/**
+	 * @param id is a symbol id, or -1.
+	 * @return is the command with that name, or null if there is none.
+	 */
+	public AdvCommand getCommand(int id) {
+		return (id < 0) ? null : commandById[id];
+	}
+
+	/**
+	 * @param id is a symbol id, or -1.
+	 * @return is the object with that name, or null if there is none.
+	 */
+	public AdvObject getObject(int id) {
+		return (id < 0) ? null : objectById[id];
+	}
+
+	/**
+	 * @param index is the index of an object, from 0 to getObjectCount() - 1.
+	 * @return is the object with that index.
+	 */
+	public AdvObject getObjectByIndex(int index) {
+		return objectByIndex[index];
+	}
+
+	/**
+	 * @return is the number of objects in this world.
+	 */
+	public int getObjectCount() {
+		return objectByIndex.length;
+	}
+
+	/* Method: getAliases(word) */
+	/**
+	 * Finds every word that the synonyms map to the given word.
+	 *
+	 * @usage String[] aliases = world.getAliases(word);
+	 * @param word is a canonical word, in upper case.
+	 * @return is the words that stand for it (including itself, if it is a command
+	 * or object name), in lower case and sorted, or null if there are none.  The
+	 * array is shared and must not be modified.
+	 */
+	public String[] getAliases(String word) {
+		int id = symbols.lookup(word);
+		return (id < 0) ? null : aliasesById[id];
+	}
+
+	/**
+	 * @return is the symbol id of the FORCED direction, or -1 if no room has one.
+	 */
+	public int getForcedId() {
+		return forcedId;
+	}
+
+	/**
+	 * Records the game the world was loaded from.
+	 */
+	void setDirectory(String gameDirectory) {
+		directory = gameDirectory;
+	}
+
+	/**
+	 * @return is the path prefix of the game files this world was loaded from, or
+	 * null if it was not loaded from a game.
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return is the mapped rooms file the room descriptions are read from, or
+	 * null if they were all read when the world was loaded.
+	 */
+	public AdvRoomFile getRoomFile() {
+		return roomFile;
+	}
+
+	/**
+	 * @return is a hash of this world's rooms and objects, which tells the saved
+	 * games of different worlds apart.
+	 */
+	public int getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Returns the router of this world, working out its routing data the first
+	 * time it is asked for.  Sessions asking for it at the same time wait for
+	 * that one computation.
+	 *
+	 * @usage AdvRouter router = world.getRouter();
+	 * @return is the router.
+	 */
+	public AdvRouter getRouter() {
+		AdvRouter r = router;
+		if (r != null) return r;
+		routerLock.lock();
+		try {
+			if (router == null) router = AdvRouter.build(this);
+			return router;
+		}
+		finally {
+			routerLock.unlock();
+		}
+	}
+
+	/**
+	 * @return is the changes to the newer version of this world that replaced
+	 * it, or null if it has not been replaced (see AdvWorldCache.reload).
+	 */
+	public AdvWorldDiff getReplacement() {
+		return replacement;
+	}
+
+	/**
+	 * @return is the newest version of this world, which is this world itself
+	 * unless it has been replaced.  Since every version leads to the next, a
+	 * caller keeping a world for a while should keep the newest one.
+	 */
+	public AdvWorld getNewest() {
+		AdvWorld newest = this;
+		for (AdvWorldDiff diff; (diff = newest.replacement) != null; ) newest = diff.getTo();
+		return newest;
+	}
+
+	/**
+	 * Records that a newer version of this world has replaced it.
+	 */
+	void setReplacement(AdvWorldDiff diff) {
+		replacement = diff;
+	}
+
+	/**
+	 * @return is the number of sessions playing this world now.
+	 */
+	public int getSessionCount() {
+		return sessions.get();
+	}
+
+	/**
+	 * Counts a session that starts playing this world, or stops (by -1).
+	 */
+	void addSessions(int delta) {
+		sessions.addAndGet(delta);
+	}
+
+	/* Method: estimateSize() */
+	/**
+	 * Returns roughly how many bytes of heap this world takes, which is what
+	 * AdvWorldCache budgets by.  Its routing data counts once it has been worked
+	 * out; room descriptions read lazily do not (see AdvRoomFile).  The rooms are
+	 * only counted the first time, on the fork/join pool.
+	 *
+	 * @usage long bytes = world.estimateSize();
+	 * @return is the estimated size in bytes.
+	 */
+	public long estimateSize() {
+		long size = heapSize;
+		if (size < 0) {
+			LongAdder roomBytes = new LongAdder();
+			new AdvRoomRange(0, rooms.size(), r -> roomBytes.add(rooms.get(r).estimateSize())).invoke();
+			size = roomBytes.sum() + 4L * rooms.size();
+			for (AdvObject obj : objects.values()) size += 48 + obj.estimateSize();
+			for (String alias : synonyms.keySet()) size += 40 + stringSize(alias);
+			size += 72L * commands.size();
+			for (int id = 0; id < symbols.size(); id++) size += 64 + stringSize(symbols.getName(id));
+			if (trie != null) size += trie.estimateSize();
+			heapSize = size;
+		}
+		AdvRouter r = router;
+		return (r == null) ? size : size + r.estimateSize();
+	}
+
+	/**
+	 * @return is roughly how many bytes of heap a string takes, if its characters
+	 * are all Latin-1.
+	 */
+	static long stringSize(String s) {
+		return 24 + ((16 + s.length() + 7) & ~7);
+	}
+
+	/**
+	 * @return is the table of every word used by this world.
+	 */
+	public AdvSymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * @return is the rooms of this world, in file order, as a read-only list.
+	 */
+	public List<AdvRoom> getRooms() {
+		return roomView;
+	}
+
+	/**
+	 * @return is the objects of this world keyed by name, in file order, as a read-only map.
+	 */
+	public Map<String, AdvObject> getObjects() {
+		return objectView;
+	}
+
+	/**
+	 * @return is every command of this world keyed by its canonical name, as a read-only map.
+	 */
+	public Map<String, AdvCommand> getCommands() {
+		return commandView;
+	}
+
+	/**
+	 * @return is every word the player may use, mapped to its canonical name, as a
+	 * read-only map.
+	 */
+	public Map<String, String> getSynonyms() {
+		return synonymView;
+	}
+}
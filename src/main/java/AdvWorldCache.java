@@ -0,0 +1,388 @@
+/*
+ * File: AdvWorldCache.java
+ * ------------------------
+ * This file defines the worlds shared by every game played in this process.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* Class: AdvWorldCache */
+/**
+ * This class keeps the worlds that have been loaded, keyed by game directory, so
+ * that all the games of one world share a single read-only copy of it instead of
+ * each parsing its own.  A world is loaded the first time it is asked for;
+ * sessions asking for it at the same time wait for that one load, which is
+ * measured (see AdvMetrics), while those asking for other worlds do not.
+ *
+ * Each world is kept with the modification times of the files it was read from,
+ * and is loaded again when it is asked for after they have changed.  It can also
+ * be loaded again on purpose, e.g. by an AdvWorldWatcher.  Either way, the new
+ * version goes into the cache and the old one is marked as replaced by it; the
+ * games playing the old one move onto the new one before their next command.
+ * Worlds are read and compared without a lock; only the swap takes one.
+ *
+ * The cache holds on to worlds up to a budget of heap, by AdvWorld.estimateSize.
+ * Once a load takes it over the budget, the worlds nobody is playing are evicted,
+ * least recently asked for first, until it is within the budget again or only
+ * worlds being played are left.  The shared cache's budget is set by the
+ * adventure.worldCacheMB system property, and is a quarter of the heap by
+ * default.  How often worlds were found in the cache, loaded, and evicted is
+ * counted.
+ */
+
+public class AdvWorldCache {
+
+	private static final AdvWorldCache SHARED =
+			new AdvWorldCache(Long.getLong("adventure.worldCacheMB", Runtime.getRuntime().maxMemory() >> 22) << 20);
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, FutureTask<Entry>> loading = new ConcurrentHashMap<>(); // by get
+	private final ReentrantLock lock = new ReentrantLock(); // held while a world is swapped in or worlds are evicted
+	private final long budget;
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong reads = new AtomicLong(); // numbers the loads in the order they read the files
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/* Constructor: AdvWorldCache() */
+	/**
+	 * Creates a cache that keeps every world it loads.
+	 */
+	public AdvWorldCache() {
+		this(Long.MAX_VALUE);
+	}
+
+	/* Constructor: AdvWorldCache(budget) */
+	/**
+	 * Creates a cache that evicts the worlds nobody plays once it holds more than
+	 * a given number of bytes of them.
+	 *
+	 * @param budget is the most bytes of worlds to keep, by AdvWorld.estimateSize.
+	 */
+	public AdvWorldCache(long budget) {
+		this.budget = budget;
+	}
+
+	/* Method: shared() */
+	/**
+	 * Returns the cache used by the sessions of this process.
+	 *
+	 * @usage AdvWorldCache cache = AdvWorldCache.shared();
+	 * @return The shared cache
+	 */
+	public static AdvWorldCache shared() {
+		return SHARED;
+	}
+
+	/* Method: get(gameDirectory) */
+	/**
+	 * Returns the world of a game, loading it with AdvWorld.load if it is not in
+	 * the cache yet or its files have changed since it was.  If the changed files
+	 * cannot be read, the version in the cache is returned, and the files are not
+	 * read again until they change again.
+	 *
+	 * @usage AdvWorld world = cache.get(gameDirectory);
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @return the linked world, or null if the game has no Rooms file.
+	 * @throws AdvFormatException if one of the text files is badly formatted.
+	 */
+	public AdvWorld get(String gameDirectory) throws IOException {
+		Stamp stamp = Stamp.of(gameDirectory);
+		Entry entry = entries.get(gameDirectory);
+		if (entry == null) entry = load(gameDirectory, stamp);
+		else if (!entry.stamp.equals(stamp)) entry = refresh(gameDirectory, stamp);
+		else hits.increment();
+		if (entry == null) return null;
+		entry.lastUsed = clock.incrementAndGet();
+		return entry.world;
+	}
+
+	/**
+	 * Loads a game that is not in the cache, or waits for another session that
+	 * is loading it.
+	 * @return is its entry, or null if it has no Rooms file.
+	 */
+	private Entry load(String gameDirectory, Stamp stamp) throws IOException {
+		return loadOnce(gameDirectory, () -> {
+			Entry cached = entries.get(gameDirectory); // loaded since it was looked for
+			if (cached != null) {
+				hits.increment();
+				return cached;
+			}
+			misses.increment();
+			long sequence = reads.incrementAndGet();
+			long start = System.nanoTime();
+			AdvWorld world;
+			try {
+				world = AdvWorld.load(gameDirectory);
+			}
+			finally {
+				AdvMetrics.recordWorldLoad(gameDirectory, System.nanoTime() - start);
+			}
+			if (world == null) return null;
+			Entry entry = new Entry(world, stamp, sequence);
+			entry.lastUsed = clock.incrementAndGet();
+			cached = entries.putIfAbsent(gameDirectory, entry); // unless a reload got there first
+			if (cached != null) return cached;
+			evict(entry);
+			return entry;
+		});
+	}
+
+	/**
+	 * Loads a game whose files have changed since it was cached, unless another
+	 * session just did, or waits for another session that is loading it.
+	 * @return is its entry.
+	 */
+	private Entry refresh(String gameDirectory, Stamp stamp) throws IOException {
+		return loadOnce(gameDirectory, () -> {
+			Entry entry = entries.get(gameDirectory);
+			if (entry != null && entry.stamp.equals(stamp)) {
+				hits.increment();
+				return entry;
+			}
+			misses.increment();
+			try {
+				replace(gameDirectory, stamp);
+			}
+			catch (IOException | RuntimeException exception) {
+				if (entry == null) throw exception;
+			}
+			return entries.get(gameDirectory);
+		});
+	}
+
+	/**
+	 * Runs a load of a game for get, unless another session is running one
+	 * already, in which case this one waits for it and gets the same result.
+	 * Sessions asking for other games do not wait.
+	 * @param load is the load, which returns the game's entry.
+	 * @return is the entry that load returned.
+	 */
+	private Entry loadOnce(String gameDirectory, Callable<Entry> load) throws IOException {
+		FutureTask<Entry> task = new FutureTask<>(load);
+		FutureTask<Entry> running = loading.putIfAbsent(gameDirectory, task);
+		if (running == null) {
+			try {
+				task.run();
+			}
+			finally {
+				loading.remove(gameDirectory, task);
+			}
+			running = task;
+		}
+		else hits.increment(); // the load being waited for counts the miss
+		try {
+			return running.get();
+		}
+		catch (ExecutionException exception) {
+			Throwable cause = exception.getCause();
+			if (cause instanceof IOException io) throw io;
+			if (cause instanceof RuntimeException runtime) throw runtime;
+			throw (Error) cause;
+		}
+		catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for " + gameDirectory + " to load");
+		}
+	}
+
+	/* Method: reload(gameDirectory) */
+	/**
+	 * Loads a game again with AdvWorld.load and, if it has changed, swaps the new
+	 * version into the cache and marks the old one as replaced by it.  The load
+	 * and the comparison happen on the calling thread without a lock, so no game
+	 * waits for either; the lock is only held for the swap.  A game that is not
+	 * in the cache is just loaded into it.
+	 *
+	 * @usage AdvWorldDiff diff = cache.reload(gameDirectory);
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @return is the changes from the cached version, or null if there was none,
+	 * or if another load that read the files later has swapped its version in.
+	 * @throws AdvFormatException if one of the text files is badly formatted, in
+	 * which case the cached version is kept.
+	 * @throws FileNotFoundException if the game no longer has a Rooms file.
+	 */
+	public AdvWorldDiff reload(String gameDirectory) throws IOException {
+		return replace(gameDirectory, Stamp.of(gameDirectory));
+	}
+
+	/**
+	 * Loads a game and swaps it in for the cached version, if it differs from it.
+	 * If the game cannot be loaded, the cached version is kept as if it had been
+	 * read from the files as they are now, so that they are not read again until
+	 * they change again.  Should another load swap in a version while this one
+	 * compares against the one before, this one compares again against that,
+	 * unless that was read from the files later, in which case this one is
+	 * dropped.
+	 * @return is the changes from the cached version, or null if there was none.
+	 */
+	private AdvWorldDiff replace(String gameDirectory, Stamp stamp) throws IOException {
+		Entry old = entries.get(gameDirectory);
+		long sequence = reads.incrementAndGet();
+		long start = System.nanoTime();
+		AdvWorld fresh;
+		try {
+			fresh = AdvWorld.load(gameDirectory);
+			if (fresh == null) throw new FileNotFoundException(gameDirectory + "Rooms.txt");
+		}
+		catch (IOException | RuntimeException exception) {
+			if (old != null) entries.replace(gameDirectory, old, old.restamped(stamp, sequence));
+			throw exception;
+		}
+		finally {
+			AdvMetrics.recordWorldLoad(gameDirectory, System.nanoTime() - start);
+		}
+
+		Entry loaded = new Entry(fresh, stamp, sequence);
+		while (true) {
+			AdvWorldDiff diff = (old == null) ? null : AdvWorldDiff.between(old.world, fresh);
+			Entry entry = (diff != null && diff.isEmpty()) ? old.restamped(stamp, sequence) : loaded; // keep the one being played
+			entry.lastUsed = clock.incrementAndGet();
+			boolean swapped = false;
+			lock.lock();
+			try {
+				Entry current = entries.get(gameDirectory);
+				if (current != null && current.sequence > sequence) return null; // read later than this one
+				if (current == old) {
+					entries.put(gameDirectory, entry);
+					if (diff != null && !diff.isEmpty()) old.world.setReplacement(diff);
+					swapped = true;
+				}
+				else old = current;
+			}
+			finally {
+				lock.unlock();
+			}
+			if (swapped) {
+				evict(entry);
+				return diff;
+			}
+		}
+	}
+
+	/**
+	 * Evicts the worlds nobody plays, least recently asked for first, while the
+	 * cache is over its budget.
+	 * @param keep is the entry just loaded, which is about to be played.
+	 */
+	private void evict(Entry keep) {
+		if (budget == Long.MAX_VALUE) return;
+		lock.lock();
+		try {
+			long used = getUsedBytes();
+			while (used > budget) {
+				Map.Entry<String, Entry> oldest = null;
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					Entry candidate = e.getValue();
+					if (candidate != keep && candidate.world.getSessionCount() == 0
+							&& (oldest == null || candidate.lastUsed < oldest.getValue().lastUsed)) oldest = e;
+				}
+				if (oldest == null) return; // everything left is being played
+				if (entries.remove(oldest.getKey(), oldest.getValue())) {
+					used -= oldest.getValue().world.estimateSize();
+					evictions.increment();
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/* Method: clear() */
+	/**
+	 * Forgets every cached world, so that the next game of each is loaded again.
+	 * Games already being played keep the world they have.
+	 *
+	 * @usage cache.clear();
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return is the number of worlds in the cache.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return is the most bytes of worlds the cache keeps, by AdvWorld.estimateSize.
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return is the bytes of the worlds in the cache now, by AdvWorld.estimateSize.
+	 */
+	public long getUsedBytes() {
+		long used = 0;
+		for (Entry e : entries.values()) used += e.world.estimateSize();
+		return used;
+	}
+
+	/**
+	 * @return is the number of times a world was asked for and found in the
+	 * cache, was not and had to be loaded, and was evicted.
+	 */
+	public long[] getCounts() {
+		return new long[] { hits.sum(), misses.sum(), evictions.sum() };
+	}
+
+	/**
+	 * @return is a one-line summary of what the cache holds and its counts.
+	 */
+	public String toString() {
+		long[] counts = getCounts();
+		String limit = (budget == Long.MAX_VALUE) ? "no limit" : (budget >> 20) + " MB";
+		return String.format("World cache: %d world(s), %d MB of %s; %d hits, %d misses, %d evictions",
+				size(), getUsedBytes() >> 20, limit, counts[0], counts[1], counts[2]);
+	}
+
+	/**
+	 * A cached world, and the modification times of the files it was read from.
+	 */
+	private static final class Entry {
+		final AdvWorld world;
+		final Stamp stamp;
+		final long sequence; // the number of the load that last read its files
+		volatile long lastUsed;
+
+		Entry(AdvWorld world, Stamp stamp, long sequence) {
+			this.world = world;
+			this.stamp = stamp;
+			this.sequence = sequence;
+			world.estimateSize(); // worked out now, on the loading thread
+		}
+
+		/**
+		 * @return is an entry for the same world, read again by a later load from
+		 * files with other modification times.
+		 */
+		Entry restamped(Stamp newer, long laterSequence) {
+			Entry entry = new Entry(world, newer, laterSequence);
+			entry.lastUsed = lastUsed;
+			return entry;
+		}
+	}
+
+	/**
+	 * The modification times of a game's files, 0 for those it does not have.
+	 */
+	private record Stamp(long rooms, long objects, long synonyms) {
+		static Stamp of(String gameDirectory) {
+			return new Stamp(new File(gameDirectory + "Rooms.txt").lastModified(),
+					new File(gameDirectory + "Objects.txt").lastModified(),
+					new File(gameDirectory + "Synonyms.txt").lastModified());
+		}
+	}
+}
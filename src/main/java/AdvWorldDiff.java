@@ -0,0 +1,141 @@
+/*
+ * File: AdvWorldDiff.java
+ * -----------------------
+ * This file defines the changes between two versions of a game's world.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Class: AdvWorldDiff */
+/**
+ * This class describes how a newer version of a world, loaded after its game
+ * files changed, differs from the version before it, and is what the games of
+ * the old version need to move onto the new one (see Adventure).
+ *
+ * Rooms are matched by number, since that is how the files refer to them: a
+ * room is changed if its name, description or motion table is.  Objects are
+ * matched by name, and are changed if their description or initial room is.
+ * The rooms are compared on the fork/join pool, which for a world whose
+ * descriptions are read lazily compares the bytes of its rooms files.
+ */
+
+public class AdvWorldDiff {
+
+	private final AdvWorld from;
+	private final AdvWorld to;
+	private final int[] objectMap; // old object index -> new object index, or -1
+	private int roomsChanged, roomsAdded, roomsRemoved;
+	private int objectsChanged, objectsAdded, objectsRemoved;
+	private int synonymsChanged;
+
+	private AdvWorldDiff(AdvWorld from, AdvWorld to) {
+		this.from = from;
+		this.to = to;
+		objectMap = new int[from.getObjectCount()];
+	}
+
+	/* Method: between(from, to) */
+	/**
+	 * Compares two versions of a world.
+	 *
+	 * @usage AdvWorldDiff diff = AdvWorldDiff.between(old, fresh);
+	 * @param from is the older version.
+	 * @param to is the newer version.
+	 * @return is the changes from one to the other.
+	 */
+	public static AdvWorldDiff between(AdvWorld from, AdvWorld to) {
+		AdvWorldDiff diff = new AdvWorldDiff(from, to);
+		List<AdvRoom> oldRooms = from.getRooms(), newRooms = to.getRooms();
+		int common = Math.min(oldRooms.size(), newRooms.size());
+		LongAdder changed = new LongAdder();
+		new AdvRoomRange(0, common, i -> {
+			if (!oldRooms.get(i).sameAs(newRooms.get(i))) changed.increment();
+		}).invoke();
+		diff.roomsChanged = changed.intValue();
+		diff.roomsAdded = newRooms.size() - common;
+		diff.roomsRemoved = oldRooms.size() - common;
+
+		Map<String, AdvObject> newObjects = to.getObjects();
+		for (AdvObject obj : from.getObjects().values()) {
+			AdvObject match = newObjects.get(obj.getName());
+			diff.objectMap[obj.getIndex()] = (match == null) ? -1 : match.getIndex();
+			if (match == null) diff.objectsRemoved++;
+			else if (!obj.getDescription().equals(match.getDescription())
+					|| obj.getInitialLocation() != match.getInitialLocation()) diff.objectsChanged++;
+		}
+		diff.objectsAdded = newObjects.size() - (from.getObjectCount() - diff.objectsRemoved);
+
+		Map<String, String> oldSynonyms = from.getSynonyms(), newSynonyms = to.getSynonyms();
+		for (Map.Entry<String, String> e : oldSynonyms.entrySet())
+			if (!e.getValue().equals(newSynonyms.get(e.getKey()))) diff.synonymsChanged++;
+		for (String alias : newSynonyms.keySet())
+			if (!oldSynonyms.containsKey(alias)) diff.synonymsChanged++;
+		return diff;
+	}
+
+	/**
+	 * @return is the older version of the world.
+	 */
+	public AdvWorld getFrom() {
+		return from;
+	}
+
+	/**
+	 * @return is the newer version of the world.
+	 */
+	public AdvWorld getTo() {
+		return to;
+	}
+
+	/* Method: mapObject(index) */
+	/**
+	 * Finds an object of the older version in the newer one.
+	 *
+	 * @usage int newIndex = diff.mapObject(obj.getIndex());
+	 * @param index is the index of an object of the older version.
+	 * @return is the index of the object of the same name in the newer version,
+	 * or -1 if it has none.
+	 */
+	public int mapObject(int index) {
+		return objectMap[index];
+	}
+
+	/**
+	 * @return is true if the two versions are the same.
+	 */
+	public boolean isEmpty() {
+		return roomsChanged + roomsAdded + roomsRemoved + objectsChanged + objectsAdded + objectsRemoved
+				+ synonymsChanged == 0;
+	}
+
+	/**
+	 * @return is the number of rooms changed, added and removed.
+	 */
+	public int[] getRoomCounts() {
+		return new int[] { roomsChanged, roomsAdded, roomsRemoved };
+	}
+
+	/**
+	 * @return is the number of objects changed, added and removed.
+	 */
+	public int[] getObjectCounts() {
+		return new int[] { objectsChanged, objectsAdded, objectsRemoved };
+	}
+
+	/**
+	 * @return is the number of words whose synonym was changed, added or removed.
+	 */
+	public int getSynonymCount() {
+		return synonymsChanged;
+	}
+
+	/**
+	 * @return is a one-line summary of the changes.
+	 */
+	public String toString() {
+		if (isEmpty()) return "no changes";
+		return String.format("%d rooms changed, %d added, %d removed; %d objects changed, %d added, %d removed; %d synonyms changed",
+				roomsChanged, roomsAdded, roomsRemoved, objectsChanged, objectsAdded, objectsRemoved, synonymsChanged);
+	}
+}
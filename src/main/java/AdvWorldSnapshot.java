@@ -0,0 +1,207 @@
+/*
+ * File: AdvWorldSnapshot.java
+ * ---------------------------
+ * This file defines the compiled, binary form of a game's world files.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/* Class: AdvWorldSnapshot */
+/**
+ * Parsing the text files of a game on every start is slow, so a game can be
+ * compiled into a single ...World.bin file next to its text files.  The snapshot
+ * records the size and modification time of each text file it was compiled from;
+ * if any of them has changed since, the snapshot is stale and is ignored.
+ *
+ * The layout is a header (magic number, format version and the stamps of the
+ * three text files) followed by the rooms with their motion tables, the objects
+ * and the synonyms.  Numbers are big-endian ints and strings are an int byte
+ * count followed by UTF-8 bytes, with a count of -1 standing for null.
+ *
+ * To compile games, run this class with the games' path prefixes as arguments,
+ * e.g. "java AdvWorldSnapshot Small Crowther".
+ */
+
+public class AdvWorldSnapshot {
+
+	private static final int MAGIC = 0x41445657; // "ADVW"
+	private static final int VERSION = 1;
+	private static final String[] SOURCES = { "Rooms.txt", "Objects.txt", "Synonyms.txt" };
+
+	public static void main(String[] args) throws IOException {
+		for (String gameDirectory : args) {
+			AdvWorld world = AdvWorld.readFromText(gameDirectory);
+			if (world == null) {
+				System.out.println(gameDirectory + " did not have a Rooms file!");
+				continue;
+			}
+			write(world, gameDirectory);
+			System.out.println("Compiled " + getPath(gameDirectory));
+		}
+	}
+
+	/**
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @return is where the snapshot of that game lives.
+	 */
+	public static Path getPath(String gameDirectory) {
+		return Path.of(gameDirectory + "World.bin");
+	}
+
+	/* Method: write(world, gameDirectory) */
+	/**
+	 * Writes a snapshot of a world that was just read from the text files of the
+	 * given game.
+	 *
+	 * @usage AdvWorldSnapshot.write(world, gameDirectory);
+	 * @param world is the world read from the game's text files.
+	 * @param gameDirectory is the path prefix of the game's files.
+	 */
+	public static void write(AdvWorld world, String gameDirectory) throws IOException {
+		Path tmp = Path.of(gameDirectory + "World.bin.tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (long stamp : getStamps(gameDirectory))
+				out.writeLong(stamp);
+
+			out.writeInt(world.getRooms().size());
+			for (AdvRoom r : world.getRooms()) {
+				out.writeInt(r.getRoomIndex());
+				writeString(out, r.getName());
+				out.writeInt(r.getDescription().length);
+				for (String line : r.getDescription())
+					writeString(out, line);
+				AdvMotionTableEntry[] motionTable = r.getMotionTable();
+				out.writeInt(motionTable.length);
+				for (AdvMotionTableEntry e : motionTable) {
+					writeString(out, e.getDirection());
+					out.writeInt(e.getDestinationRoom());
+					writeString(out, e.getKeyName());
+				}
+			}
+
+			out.writeInt(world.getObjects().size());
+			for (AdvObject obj : world.getObjects().values()) {
+				writeString(out, obj.getName());
+				writeString(out, obj.getDescription());
+				out.writeInt(obj.getInitialLocation());
+			}
+
+			out.writeInt(world.getSynonyms().size());
+			for (Map.Entry<String, String> e : world.getSynonyms().entrySet()) {
+				writeString(out, e.getKey());
+				writeString(out, e.getValue());
+			}
+		}
+		Files.move(tmp, getPath(gameDirectory), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/* Method: read(gameDirectory) */
+	/**
+	 * Reads the snapshot of a game through a memory-mapped file.
+	 *
+	 * @usage AdvWorld world = AdvWorldSnapshot.read(gameDirectory);
+	 * @param gameDirectory is the path prefix of the game's files.
+	 * @return the linked world, or null if there is no usable, up-to-date snapshot.
+	 */
+	public static AdvWorld read(String gameDirectory) {
+		Path path = getPath(gameDirectory);
+		if (!Files.isRegularFile(path)) return null;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+			for (long stamp : getStamps(gameDirectory))
+				if (in.getLong() != stamp) return null; // stale
+
+			AdvWorld world = new AdvWorld();
+			world.setDirectory(gameDirectory);
+			int roomCount = readCount(in, 16); // the smallest room is 4 ints
+			for (int i = 0; i < roomCount; i++) {
+				int index = in.getInt();
+				String name = readString(in);
+				String[] description = new String[readCount(in, 4)];
+				for (int j = 0; j < description.length; j++)
+					description[j] = readString(in);
+				int entryCount = readCount(in, 12);
+				ArrayList<AdvMotionTableEntry> motionTable = new ArrayList<>(entryCount);
+				for (int j = 0; j < entryCount; j++)
+					motionTable.add(new AdvMotionTableEntry(readString(in), in.getInt(), readString(in)));
+				world.addRoom(new AdvRoom(index, name, description, motionTable));
+			}
+
+			int objectCount = readCount(in, 12);
+			for (int i = 0; i < objectCount; i++) {
+				AdvObject obj = new AdvObject(readString(in), readString(in), in.getInt());
+				if (obj.getInitialLocation() < 0 || obj.getInitialLocation() >= roomCount)
+					throw new AdvFormatException("object " + obj.getName() + " is in a room that does not exist");
+				world.addObject(obj);
+			}
+
+			int synonymCount = readCount(in, 8);
+			for (int i = 0; i < synonymCount; i++)
+				world.addSynonym(readString(in), readString(in));
+
+			world.link();
+			return world;
+		}
+		catch (IOException | RuntimeException exception) {
+			// A broken snapshot is no worse than a missing one; the text files still work.
+			// Its counts are checked before anything is allocated for them, and whatever
+			// else is wrong with it surfaces as a runtime exception, at the latest in link.
+			return null;
+		}
+	}
+
+	/**
+	 * @return is the size and modification time of each of the game's text files,
+	 * with -1 for files that do not exist.
+	 */
+	private static long[] getStamps(String gameDirectory) {
+		long[] stamps = new long[SOURCES.length * 2];
+		for (int i = 0; i < SOURCES.length; i++) {
+			File f = new File(gameDirectory + SOURCES[i]);
+			boolean exists = f.isFile();
+			stamps[2 * i] = exists ? f.length() : -1;
+			stamps[2 * i + 1] = exists ? f.lastModified() : -1;
+		}
+		return stamps;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) { out.writeInt(-1); return; }
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads the number of items that follow, checking that the rest of the
+	 * snapshot is long enough to hold that many.
+	 * @param in is the snapshot, positioned at the count.
+	 * @param smallest is the fewest bytes an item takes.
+	 * @return is the count.
+	 */
+	private static int readCount(ByteBuffer in, int smallest) throws AdvFormatException {
+		int count = in.getInt();
+		if (count < 0 || (long) count * smallest > in.remaining())
+			throw new AdvFormatException("count " + count + " at byte " + (in.position() - 4) + " is out of range");
+		return count;
+	}
+
+	private static String readString(ByteBuffer in) throws AdvFormatException {
+		int length = in.getInt();
+		if (length < -1 || length > in.remaining())
+			throw new AdvFormatException("string length " + length + " at byte " + (in.position() - 4) + " is out of range");
+		if (length < 0) return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * File: AdvWorldWatcher.java
+ * --------------------------
+ * This file defines a watcher that reloads a game whenever its files change.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/* Class: AdvWorldWatcher */
+/**
+ * This class watches the folder of a game for changes to its Rooms, Objects and
+ * Synonyms files, and reloads the game into an AdvWorldCache when they change,
+ * on a thread of its own.  Games being played carry on with the version they
+ * have while the new one is read; once it has been swapped in, each game moves
+ * onto it before its next command (see AdvWorldCache.reload).  A version that
+ * fails to load is reported and the one being played is kept.
+ *
+ * Editors write a file in several steps, so the game is only reloaded once its
+ * folder has been quiet for QUIET_MILLIS.  A file should still be replaced in
+ * one step, by writing the new version elsewhere and renaming it over the old
+ * one, which is also the only safe way to change a rooms file whose
+ * descriptions are read lazily (see AdvRoomFile).
+ */
+
+public class AdvWorldWatcher implements Closeable {
+
+	/** How long a game's folder must be quiet before the game is reloaded */
+	public static final long QUIET_MILLIS = 200;
+
+	private final AdvWorldCache cache;
+	private final String gameDirectory;
+	private final Set<Path> files = new HashSet<>();
+	private final WatchService service;
+	private final Consumer<Reload> listener;
+	private final Thread watcher;
+
+	/* Constructor: AdvWorldWatcher(cache, gameDirectory, listener) */
+	/**
+	 * Starts watching a game's files.
+	 *
+	 * @param cache is the cache the game is reloaded into.
+	 * @param gameDirectory is the path prefix of the game's files, e.g. "Crowther".
+	 * @param listener is told of every reload, on the watching thread.
+	 */
+	public AdvWorldWatcher(AdvWorldCache cache, String gameDirectory, Consumer<Reload> listener) throws IOException {
+		this.cache = cache;
+		this.gameDirectory = gameDirectory;
+		this.listener = listener;
+		Path folder = null;
+		for (String kind : new String[] { "Rooms", "Objects", "Synonyms" }) {
+			Path file = Path.of(gameDirectory + kind + ".txt").toAbsolutePath();
+			folder = file.getParent();
+			files.add(file.getFileName());
+		}
+		service = folder.getFileSystem().newWatchService();
+		folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		watcher = Thread.ofPlatform().daemon().name("adventure-watcher").start(this::watch);
+	}
+
+	/**
+	 * Stops watching.  A reload under way is finished first.
+	 */
+	public void close() throws IOException {
+		service.close();
+		try { watcher.join(); }
+		catch (InterruptedException exception) { Thread.currentThread().interrupt(); }
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				if (!isChange(service.take())) continue;
+				for (WatchKey key; (key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null; )
+					isChange(key);
+				reload();
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException exception) {
+			// The watcher has been closed.
+		}
+	}
+
+	/**
+	 * @return is true if the events of a key include a change to one of the
+	 * game's files, or may have, if some were lost.
+	 */
+	private boolean isChange(WatchKey key) {
+		boolean ours = false;
+		for (WatchEvent<?> event : key.pollEvents())
+			ours |= event.kind() == StandardWatchEventKinds.OVERFLOW || files.contains(event.context());
+		key.reset();
+		return ours;
+	}
+
+	private void reload() {
+		long start = System.nanoTime();
+		AdvWorldDiff diff = null;
+		Exception failure = null;
+		try { diff = cache.reload(gameDirectory); }
+		catch (IOException | RuntimeException exception) { failure = exception; }
+		listener.accept(new Reload(gameDirectory, diff, failure, System.nanoTime() - start));
+	}
+
+	/* Class: AdvWorldWatcher.Reload */
+	/**
+	 * What one reload of a game did.
+	 *
+	 * @param game is the path prefix of the game's files.
+	 * @param diff is the changes from the version before, or null if there was no
+	 * version before or the reload failed.
+	 * @param failure is why the reload failed, or null if it did not.
+	 * @param nanos is how long reading, comparing and swapping in the new version
+	 * took.
+	 */
+	public record Reload(String game, AdvWorldDiff diff, Exception failure, long nanos) {
+
+		/**
+		 * @return is a one-line report of the reload.
+		 */
+		public String toString() {
+			if (failure != null) return "Could not reload " + game + ", keeping the version being played: " + failure.getMessage();
+			String changes = (diff == null) ? "loaded" : (diff.isEmpty() ? "unchanged" : diff.toString());
+			return String.format("Reloaded %s in %.1f ms: %s", game, nanos / 1e6, changes);
+		}
+	}
+}
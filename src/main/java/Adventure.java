@@ -5,7 +5,10 @@
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 /* Class: Adventure */
 /**
@@ -15,29 +18,143 @@ import java.util.*;
 public class Adventure {
 
 	// Use this scanner for any console input
-	private static Scanner scan = new Scanner(System.in);
-	private static boolean runGame = true;
-	private static final ArrayList<AdvRoom> rooms = new ArrayList<>();
-	private static final Map<String, AdvObject> objects = new HashMap<>();
-	private static final Map<String, AdvCommand> commands = new HashMap<>();
-	private static final Map<String, String> synonyms = new HashMap<>();
-	private static AdvRoom currentRoom;
-	private static final ArrayList<AdvObject> inventory = new ArrayList<>();
+	private static Scanner consoleScanner = new Scanner(System.in);
 	private static final boolean RUN_TEST = false;
 	private static final boolean ALLOW_CUSTOM_GAMES = false;
 
-	public Adventure() {
-		assert !rooms.isEmpty() : "There are no rooms to explore in this adventure!";
-		currentRoom = rooms.getFirst();
-		currentRoom.setVisited(true);
-		executeLookCommand();
+	// Where SAVE and RESTORE keep saved games, as NAME.sav files:
+	private static final Path SAVE_DIRECTORY = Path.of(System.getProperty("adventure.saves", "."));
+	private static final String DEFAULT_SAVE_NAME = "ADVENTURE";
+	// Separates the commands of a line that holds several, as in "take keys; out":
+	public static final char COMMAND_SEPARATOR = ';';
+
+	// Everything below belongs to a single player's session:
+	private final Scanner scan;
+	private final AdvOutput out;
+	private boolean runGame = true;
+	private AdvWorld world;
+	private AdvWorld counted; // the world this session counts as playing until its game ends
+	private List<AdvRoom> rooms = List.of();
+	private AdvRoom currentRoom;
+	private AdvObjectPlacement placement;
+	private final BitSet visited = new BitSet(); // by room index
+	private final ArrayList<AdvObject> listed = new ArrayList<>(); // reused by LOOK and INVENTORY
+	private final ReentrantLock lock = new ReentrantLock(); // held while a command runs
+	private AdvJournal journal;
+	private long journalId;
+	private int untilSample = AdvMetrics.nextSample(); // lines until the next one is timed
+	private Iterator<String> pending; // the rest of the batch being run, if any
+
+	/**
+	 * Creates a new session that reads its commands from the given input and writes
+	 * everything it has to say to the given output.  Nothing is loaded until the
+	 * session is played.
+	 * @param in is the source of this player's input, starting with the game name.
+	 * @param out is where this player's output is written.
+	 */
+	public Adventure(Scanner in, AdvOutput out) {
+		this.scan = in;
+		this.out = out;
 	}
 
 	/**
 	 * This method is used only to test the program
 	 */
 	public static void setScanner(Scanner theScanner) {
-		scan = theScanner;
+		consoleScanner = theScanner;
+	}
+
+	/**
+	 * Starts a session on its own virtual thread, so that a single process can host
+	 * as many players as it has memory for.
+	 * @param in is the source of this player's input, starting with the game name.
+	 * @param out is where this player's output is written.
+	 * @return is the (already started) thread the session runs on.
+	 */
+	public static Thread startSession(Scanner in, AdvOutput out) {
+		return Thread.ofVirtual().start(new Adventure(in, out)::play);
+	}
+
+	/**
+	 * @return is the output every message of this session must be written to.
+	 */
+	public AdvOutput getOutput() {
+		return out;
+	}
+
+	/**
+	 * @return is the world this session plays, or null if it has not started yet.
+	 */
+	AdvWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * @return is the index of the room the player is in.
+	 */
+	int getRoomIndex() {
+		return currentRoom.getRoomIndex();
+	}
+
+	/**
+	 * @return is the indices of the rooms the player has visited; not to be changed.
+	 */
+	BitSet getVisited() {
+		return visited;
+	}
+
+	/**
+	 * @return is where this session's objects are.
+	 */
+	AdvObjectPlacement getPlacement() {
+		return placement;
+	}
+
+	/**
+	 * Makes this session journal its commands (see AdvJournal.register).
+	 */
+	void setJournal(AdvJournal journal, long id) {
+		this.journal = journal;
+		this.journalId = id;
+	}
+
+	/**
+	 * Journals a snapshot of this session for a checkpoint, from another thread,
+	 * between two of its commands: the command it is running, if any, finishes
+	 * first, and the next one waits until the snapshot is in the journal.  Every
+	 * command before the snapshot in the journal is then one it includes.
+	 * @return is where the snapshot ends in the journal, or 0 if the game is over.
+	 */
+	long checkpoint(AdvJournal journal, long id) throws IOException {
+		lock.lock();
+		try { return runGame ? journal.appendCheckpoint(this, id) : 0; }
+		finally { lock.unlock(); }
+	}
+
+	/**
+	 * Puts this session back into a saved state (see AdvSessionSnapshot).
+	 * @param roomIndex is the index of the room the player is in.
+	 * @param visited is the indices of the rooms the player has visited.
+	 * @param placement is where the objects are.
+	 */
+	void restore(int roomIndex, BitSet visited, AdvObjectPlacement placement) {
+		currentRoom = rooms.get(roomIndex);
+		this.visited.clear();
+		this.visited.or(visited);
+		this.placement = placement;
+		runGame = true;
+	}
+
+	/**
+	 * Reads the next line of input, first sending everything printed so far to the
+	 * player so that they can see what they are answering.  While a batch is being
+	 * run, its next command is the answer instead (see executeBatch).
+	 * @return is the line read.
+	 */
+	private String readLine() {
+		if (pending != null && pending.hasNext()) return pending.next();
+		out.flush();
+		return scan.nextLine();
 	}
 
 	/**
@@ -72,13 +189,13 @@ public class Adventure {
 	 * @param gameListDirectory is the directory of the games folder to be given back to the caller.
 	 * @return is a list of names for games found in that directory.
 	 */
-	private static String[] chooseGameDirectory(String[] gameListDirectory)  {
-		System.out.println("Enter 'default' for default games list or 'custom' to load a custom game.");
-		String input = scan.nextLine();
+	private String[] chooseGameDirectory(String[] gameListDirectory)  {
+		out.println("Enter 'default' for default games list or 'custom' to load a custom game.");
+		String input = readLine();
 		boolean correctEntry = input.equals("default") || input.equals("custom");
 		while(!correctEntry) {
-			System.out.println("Please enter either 'default' or 'custom'.");
-			input = scan.nextLine();
+			out.println("Please enter either 'default' or 'custom'.");
+			input = readLine();
 			correctEntry = input.equals("default") || input.equals("custom");
 		}
 		String[] names;
@@ -87,13 +204,13 @@ public class Adventure {
 			return getGameOptions(gameListDirectory[0]);
 		}
 		else {
-			System.out.println("Please enter the directory to your custom game folder.");
-			input = scan.nextLine();
+			out.println("Please enter the directory to your custom game folder.");
+			input = readLine();
 			names = getGameOptions(input);
 			while (names == null) {
-				System.out.println("No game files were found at that directory.  " +
+				out.println("No game files were found at that directory.  " +
 						"Please enter another path or 'default' for a list of default game options.");
-				input = scan.nextLine();
+				input = readLine();
 				if (input.equals("default")) {
 					gameListDirectory[0] = "src/main/resources";
 					return getGameOptions(gameListDirectory[0]);
@@ -110,22 +227,22 @@ public class Adventure {
 	 * games or a custom directory to a custom game somewhere on the user's system.
 	 * @return is the directory of the chosen game.
 	 */
-	private static String chooseGame() {
+	private String chooseGame() {
 		String input = "";
 		String[]directory = new String[1];
 		boolean choseGame = false;
 
 		while(!choseGame) { // Try to allow the user to mess up a lot.
 			String[] names = chooseGameDirectory(directory);
-			System.out.println("Game options:");
+			out.println("Game options:");
 			for (String name : names) {
-				System.out.println(name);
+				out.println(name);
 			}
-			System.out.println("input 'back' to go back to selecting a game directory.");
-			System.out.println("input 'quit' to quit program.");
+			out.println("input 'back' to go back to selecting a game directory.");
+			out.println("input 'quit' to quit program.");
 
 			while(!choseGame) {
-				input = scan.nextLine();
+				input = readLine();
 
 				if (input.equals("back")) break;
 				if (input.equals("quit")) return null;
@@ -136,159 +253,326 @@ public class Adventure {
 						break;
 					}
 				}
-				if (!choseGame) { System.out.println("input not recognised"); }
+				if (!choseGame) { out.println("input not recognised"); }
 			}
 		}
 		return directory[0] + "/" + input;
 	}
 
 	/**
-	 * Fills the rooms map with rooms and keys to those rooms, dependent on a
-	 * properly formatted txt file.
-	 * @param gameDirectory is the directory that contains the ...Rooms.txt file.
+	 * Sets up all the data structures for a new adventure.
 	 */
-	private static void getRooms(String gameDirectory) {
-		rooms.clear();
+	private void setup() {
+		runGame = true;
 
-		Scanner s;
-		File roomsFile = new File(gameDirectory + "Rooms.txt");
+		String gameDirectory;
 
-		try { s = new Scanner(roomsFile); }
-		catch(FileNotFoundException exception) {
-			System.out.println("Game did not have a Rooms file!");
-			return;
-		}
+		while (rooms.isEmpty()) {
+			if (ALLOW_CUSTOM_GAMES) {
+				if (RUN_TEST) gameDirectory = "src/main/resources/Crowther";
+				else gameDirectory = chooseGame();
+				if (gameDirectory == null) return;
+			}
+			else { // unit tests:
+				gameDirectory = readLine();
+			}
 
-		while (s.hasNextLine()) {
-			AdvRoom r = AdvRoom.readFromFile(s);
-			if (r == null) continue;
+			AdvWorld world = null;
+			try {
+				world = AdvWorldCache.shared().get(gameDirectory);
+				if (world == null) out.println("Game did not have a Rooms file!");
+			}
+			catch (IOException exception) {
+				out.println("The game files could not be read: " + exception.getMessage());
+			}
+
+			if (world == null) rooms = List.of();
+			else attach(world);
 
-			rooms.add(r);
-			for (AdvMotionTableEntry e : r.getMotionTable()) // allow for custom directions:
-				commands.put(e.getDirection(), new AdvMotionCommand(e.getDirection()));
+			if (rooms.isEmpty())
+				out.println("The game has no rooms!  Please select a different game.");
 		}
 	}
 
 	/**
-	 * Fills the rooms map with objects, dependent on a properly formatted txt file.
-	 * @param gameDirectory is the directory that contains the ...Objects.txt file.
+	 * Makes the given world, or the newest version of it, the one this session
+	 * plays.
+	 */
+	private void attach(AdvWorld world) {
+		this.world = world.getNewest();
+		rooms = this.world.getRooms();
+		placement = new AdvObjectPlacement(this.world);
+		visited.clear();
+		runGame = true;
+		countAsPlaying(this.world);
+	}
+
+	/**
+	 * Makes this session count as playing a world, and no longer the one it
+	 * played before, so that a world nobody plays can be evicted from the cache
+	 * (see AdvWorldCache).
+	 * @param next is the world, or null once the game is over.
 	 */
-	private static void getObjects(String gameDirectory) {
-		Scanner s;
-		File objsFile = new File(gameDirectory + "Objects.txt");
+	private void countAsPlaying(AdvWorld next) {
+		if (next == counted) return;
+		if (next != null) next.addSessions(1);
+		if (counted != null) counted.addSessions(-1);
+		counted = next;
+	}
 
-		try { s = new Scanner(objsFile); }
-		catch(FileNotFoundException exception) { return; }
+	/**
+	 * Runs the adventure program
+	 */
+	public static void main(String[] args) {
+		Adventure adventure = new Adventure(consoleScanner, AdvOutput.toStdout());
+		adventure.play();
+	}
 
-		while (s.hasNextLine()) {
-			AdvObject obj = AdvObject.readFromFile(s);
-			if (obj == null) continue;
+	/**
+	 * Loads the game chosen by the player and plays it until they win or quit.
+	 */
+	public void play() {
+		try {
+			setup();
+			if (rooms.isEmpty()) return;
 
-			objects.put(obj.getName(), obj);
-			rooms.get(obj.getInitialLocation()).addObject(obj);
+			enterFirstRoom();
+			run();
+		}
+		finally {
+			countAsPlaying(null);
+			out.flush();
 		}
 	}
 
+	/* Method: play(world) */
 	/**
-	 * There are a number of commands that must be manually set, and this is that list.
-	 * Movement commands are game-specific, and set via the ...Rooms.txt file of the
-	 * given game.
+	 * Plays an already loaded world until the player wins or quits, or their
+	 * input ends.  Unlike play(), the game is not chosen from the input.
+	 *
+	 * @param world is the world to play.
 	 */
-	private static void setCommandMap() {
-		commands.put("QUIT", AdvCommand.QUIT);
-		commands.put("HELP", AdvCommand.HELP);
-		commands.put("INVENTORY", AdvCommand.INVENTORY);
-		commands.put("LOOK", AdvCommand.LOOK);
-		commands.put("TAKE", AdvCommand.TAKE);
-		commands.put("DROP", AdvCommand.DROP);
-		// move commands are set in the setRooms() function.
+	public void play(AdvWorld world) {
+		try {
+			attach(world);
+			enterFirstRoom();
+			run();
+		}
+		finally {
+			countAsPlaying(null);
+			out.flush();
+		}
 	}
 
+	/* Method: start(world) */
 	/**
-	 * Synonyms are different ways to key into rooms via direction keywords, items via
-	 * item name keywords, ect.  This function fills a map with various synonyms to these
-	 * keywords, allowing them to be used to call the same commands.
-	 * @param gameDirectory is the directory that contains the ...Synonyms.txt file.
+	 * Starts a game of an already loaded world without reading anything from this
+	 * session's input.  This is for callers that feed the session its commands
+	 * themselves through execute.
+	 *
+	 * @param world is the world to play.
 	 */
-	private static void getSynonyms(String gameDirectory) {
-		Scanner s;
-		File objsFile = new File(gameDirectory + "Synonyms.txt");
-		try { s = new Scanner(objsFile); }
-		catch(FileNotFoundException exception) {
-			// not having synonyms is not necessarily game-breaking, so no need to throw an error.
-			return;
-		}
+	public void start(AdvWorld world) {
+		attach(world);
+		enterFirstRoom();
+		out.flush();
+	}
 
-		// Map the command ids to themselves, so we can just use the synonyms map when checking input:
-		for (Map.Entry<String, AdvCommand> entry : commands.entrySet())
-			synonyms.put(entry.getKey(), entry.getKey());
-		for (Map.Entry<String, AdvObject> obj : objects.entrySet())
-			synonyms.put(obj.getKey(), obj.getKey());
+	private void enterFirstRoom() {
+		currentRoom = rooms.getFirst();
+		visited.set(currentRoom.getRoomIndex());
+		executeLookCommand();
+	}
 
-		String line;
-		// Finally we can fill the synonyms list:
-		while(s.hasNextLine() && !(line = s.nextLine()).isEmpty()) {
-			String[] parts = line.split("=", 2);
-			synonyms.put(parts[0], parts[1]);
+	/* Method: execute(line) */
+	/**
+	 * Runs one line of player input as a command, echoing it like the game does,
+	 * and flushes the command's output.
+	 *
+	 * @param line is the line the player typed.
+	 * @return is true if the game is still going on afterwards.
+	 */
+	public boolean execute(String line) {
+		lock.lock();
+		try {
+			runCommand(line);
+			out.flush();
+			return runGame;
+		}
+		finally {
+			lock.unlock();
 		}
 	}
 
+	/* Method: executeBatch(commands) */
 	/**
-	 * Sets up all the data structures for a new adventure.
+	 * Runs several commands one after the other, as if the player had typed each
+	 * on a line of its own, and flushes their output together, in one piece.  The
+	 * session is locked once for the whole batch, rather than once per command,
+	 * and a command that asks a question (like QUIT) takes the next command of the
+	 * batch as its answer.  The commands after the one that ends the game are not
+	 * run.
+	 *
+	 * @usage boolean going = game.executeBatch(List.of("take keys", "out", "down"));
+	 * @param commands is the lines the player would have typed.
+	 * @return is true if the game is still going on afterwards.
 	 */
-	private static void setup() {
-		runGame = true;
-		inventory.clear();
-		commands.clear();
-		rooms.clear();
-		objects.clear();
-		synonyms.clear();
+	public boolean executeBatch(List<String> commands) {
+		lock.lock();
+		try {
+			pending = commands.iterator();
+			while (runGame && pending.hasNext())
+				runCommand(pending.next());
+			out.flush();
+			return runGame;
+		}
+		finally {
+			pending = null;
+			lock.unlock();
+		}
+	}
 
-		String gameDirectory;
+	/* Method: executeBatch(line) */
+	/**
+	 * Runs a line of input that may hold several commands separated by
+	 * COMMAND_SEPARATOR, e.g. "take keys; out; down" (see executeBatch(commands)).
+	 *
+	 * @usage boolean going = game.executeBatch(line);
+	 * @param line is the line the player typed.
+	 * @return is true if the game is still going on afterwards.
+	 */
+	public boolean executeBatch(String line) {
+		return executeBatch(splitCommands(line));
+	}
 
-		while (rooms.isEmpty()) {
-			if (ALLOW_CUSTOM_GAMES) {
-				if (RUN_TEST) gameDirectory = "src/main/resources/Crowther";
-				else gameDirectory = chooseGame();
-				if (gameDirectory == null) return;
-			}
-			else { // unit tests:
-				gameDirectory = scan.nextLine();
-			}
+	/* Method: splitCommands(line) */
+	/**
+	 * Splits a line of input into the commands it holds, trimmed, leaving out the
+	 * empty ones.  A line without COMMAND_SEPARATOR, or with nothing else, is a
+	 * single command.
+	 *
+	 * @usage List<String> commands = Adventure.splitCommands(line);
+	 * @param line is the line the player typed.
+	 * @return is the commands in the line.
+	 */
+	public static List<String> splitCommands(String line) {
+		int end = line.indexOf(COMMAND_SEPARATOR);
+		if (end < 0) return List.of(line);
+		ArrayList<String> commands = new ArrayList<>();
+		for (int start = 0; start <= line.length(); end = line.indexOf(COMMAND_SEPARATOR, start)) {
+			if (end < 0) end = line.length();
+			String command = line.substring(start, end).trim();
+			if (!command.isEmpty()) commands.add(command);
+			start = end + 1;
+		}
+		return commands.isEmpty() ? List.of(line) : commands;
+	}
 
-			setCommandMap();
-			getRooms(gameDirectory);
-			getObjects(gameDirectory);
-			getSynonyms(gameDirectory);
+	/**
+	 * Runs one line of player input as a command, echoing it like the game does;
+	 * the lock must be held.
+	 */
+	private void runCommand(String line) {
+		String input = line.trim().toUpperCase();
+		out.println(input);
+		if (world.getReplacement() != null) moveToNewestWorld();
+		boolean measured = AdvMetrics.isEnabled();
+		boolean timed = measured && (--untilSample <= 0 || AdvMetrics.isRecording());
+		long start = timed ? System.nanoTime() : 0;
+		AdvCommand.Info commandInfo = parseCommand(input);
+		AdvCommand command = commandInfo.command;
+		long parsed = timed ? System.nanoTime() : 0;
+		if (measured) {
+			AdvMetrics.countInput(command != null);
+			if (command != null) command.getTimer().calls.increment();
+		}
 
-			if (rooms.isEmpty())
-				System.out.println("The game has no rooms!  Please select a different game.");
+		if (command == null)
+			out.println("invalid input");
+		else if (journal == null)
+			command.execute(this, commandInfo.modifiers);
+		else
+			executeJournalled(input, command, commandInfo.modifiers);
+		if (timed) {
+			AdvMetrics.recordTimes(command, parsed - start, System.nanoTime() - parsed);
+			untilSample = AdvMetrics.nextSample();
 		}
+		if (!runGame) countAsPlaying(null);
 	}
 
 	/**
-	 * Runs the adventure program
+	 * Moves this session onto the newest version of its world, once the game
+	 * files have changed (see AdvWorldCache.reload).  The player stays in the
+	 * room with the same number and keeps the rooms they have visited, and every
+	 * object that still exists stays where they left it.  A player whose room is
+	 * gone starts again from the first room, and an object left in a room that is
+	 * gone goes back to where the new version puts it.  A journalled session
+	 * journals its new state, as its commands so far were played on the old
+	 * version.
 	 */
-	public static void main(String[] args) {
-		setup();
-		Adventure adventure = new Adventure();
-		adventure.run();
+	private void moveToNewestWorld() {
+		boolean lost = false;
+		for (AdvWorldDiff diff; (diff = world.getReplacement()) != null; ) {
+			AdvWorld next = diff.getTo();
+			int roomCount = next.getRooms().size();
+			AdvObjectPlacement moved = new AdvObjectPlacement(next);
+			for (AdvObject obj : placement.getMovedObjects()) {
+				int index = diff.mapObject(obj.getIndex());
+				int where = placement.getLocation(obj);
+				if (index >= 0 && where < roomCount) moved.moveTo(next.getObjectByIndex(index), where);
+			}
+			int here = currentRoom.getRoomIndex();
+			world = next;
+			rooms = next.getRooms();
+			placement = moved;
+			if (visited.length() > roomCount) visited.clear(roomCount, visited.length());
+			lost |= here >= roomCount;
+			currentRoom = rooms.get(here < roomCount ? here : 0);
+		}
+		countAsPlaying(world);
+		if (lost) {
+			out.println("The cave shifts around you.");
+			enterFirstRoom();
+		}
+		if (journal != null) {
+			try { journal.logSnapshot(this, journalId); }
+			catch (IOException exception) { throw new UncheckedIOException(exception); }
+		}
 	}
 
 	/**
-	 * Prompts the user for an input and converts the input into a command info if it is valid.
-	 * @return is the converted command info.
+	 * Runs a command of a journalled session, writing it to the journal first.
+	 * Commands that read more input or files are not replayable, so their effect
+	 * is journalled instead (see AdvJournal).
 	 */
-	private AdvCommand.Info getCommand() {
-		String input = scan.nextLine().trim().toUpperCase();
-		System.out.println(input);
+	private void executeJournalled(String input, AdvCommand command, String[] modifiers) {
+		try {
+			boolean replayable = command != AdvCommand.QUIT && command != AdvCommand.SAVE && command != AdvCommand.RESTORE;
+			if (replayable) journal.logCommand(journalId, input);
+			command.execute(this, modifiers);
+			if (!runGame) journal.logEnd(journalId);
+			else if (command == AdvCommand.RESTORE) journal.logSnapshot(this, journalId);
+		}
+		catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	/* Method: parseCommand(input) */
+	/**
+	 * Converts a line of input into a command info if it is valid.
+	 *
+	 * @param input is the line typed by the player, trimmed and in upper case.
+	 * @return is the converted command info; its command is null if the input is not valid.
+	 */
+	public AdvCommand.Info parseCommand(String input) {
 		String[] commandParts = input.split(" ", 64);
 		AdvCommand.Info info = new AdvCommand.Info();
 
-		if (!synonyms.containsKey(commandParts[0])) return info;
+		int word = world.resolve(commandParts[0]);
+		if (word < 0) return info;
 
-		String commandKey = synonyms.get(commandParts[0]);
-		info.command = commands.get(commandKey);
+		info.command = world.getCommand(word);
 
 		if (commandParts.length > 1)
 			// modifiers allow for more information to be stored in a command.
@@ -300,77 +584,79 @@ public class Adventure {
 	}
 
 	/**
-	 * Runs the text adventure.
+	 * Runs the text adventure.  A line may hold several commands (see
+	 * executeBatch).
 	 */
 	private void run() {
-		while (runGame) {
-			int roomIndex = currentRoom.getRoomIndex();
-
-			while (runGame && roomIndex == currentRoom.getRoomIndex()) {
-				AdvCommand.Info commandInfo = getCommand();
-
-				if (commandInfo.command == null)
-					System.out.println("invalid input");
-				else
-					// roomIndex will not match if the command is a valid move command, breaking the while loop.
-					commandInfo.command.execute(this, commandInfo.modifiers);
-			}
-		}
+		while (runGame)
+			executeBatch(readLine());
 	}
 
+	/* Method: executeMotionCommand(direction) */
 	/**
-	 * Helper function that will recursively call the motion command if there is a
-	 * 'Forced' direction in the current room.  Some forced directions will still need
-	 * a key, so it is necessary to run the motion command checks each time.
+	 * Executes a motion command given the name of its direction.
+	 *
+	 * @param direction
+	 *            The string indicating the direction of motion
 	 */
-	private void checkForced() {
-		for (AdvMotionTableEntry mt : currentRoom.getMotionTable()) {
-			if (mt.getDirection().equals("FORCED")) {
-				// Look will not be caught unless checked here if there are 2+ forced directions in a row.
-				if (!currentRoom.hasBeenVisited()) executeLookCommand();
-				executeMotionCommand("FORCED");
-				break;
-			}
-		}
+	public void executeMotionCommand(String direction) {
+		executeMotionCommand(world.getSymbols().lookup(direction));
 	}
 
-	/* Method: executeMotionCommand(direction) */
+	/* Method: executeMotionCommand(directionId) */
 	/**
 	 * Executes a motion command. This method is called from the
 	 * AdvMotionCommand class to move to a new room.
 	 *
-	 * @param direction
-	 *            The string indicating the direction of motion
+	 * @param directionId
+	 *            The symbol id of the direction of motion
 	 */
-	public void executeMotionCommand(String direction) {
-		for (AdvMotionTableEntry mt : currentRoom.getMotionTable()) {
-			boolean moveTo = false;
-
-			// skip directions not desired by input.
-			if (!mt.getDirection().equals(direction)) continue;
-			else if (mt.getKeyName() == null) moveTo = true;
-			else // Key needed:
-				for (AdvObject o : inventory)
-					if (o.getName().equals(mt.getKeyName())) {
-						moveTo = true;
-						System.out.println(o.getName() + " used.");
-						break;
-					}
-
-			if (moveTo) {
-				// A room index of -1 indicates the game is beaten:
-				if (mt.getDestinationRoom() == -1) { runGame = false; return; }
-				currentRoom = rooms.get(mt.getDestinationRoom());
-
-				// Print room description:
-				if (currentRoom.hasBeenVisited()) System.out.println(currentRoom.getName());
-				else { executeLookCommand(); currentRoom.setVisited(true); }
+	public void executeMotionCommand(int directionId) {
+		AdvMotionTableEntry mt = findExit(directionId);
+		if (mt == null) { out.println("Invalid direction."); return; }
+		int destination = mt.getDestinationRoom();
+
+		// Follow any FORCED exits until the player comes to rest.  Unconditional ones were
+		// resolved when the world was linked, which also rejected cycles of them, so only
+		// FORCED exits that need a key have to be looked up (and could go round in circles).
+		for (int keyedSteps = 0; ; ) {
+			// A room index of -1 indicates the game is beaten:
+			if (destination == -1) { runGame = false; return; }
+			currentRoom = rooms.get(destination);
+
+			// Print room description:
+			if (visited.get(destination)) out.println(currentRoom.getName());
+			else { executeLookCommand(); visited.set(destination); }
+
+			if (!currentRoom.hasForcedMotion()) return;
+			if (currentRoom.getForcedDestination() != AdvRoom.NO_FORCED_DESTINATION) {
+				destination = currentRoom.getForcedDestination();
+				continue;
+			}
+			if (++keyedSteps > rooms.size()) return; // going round in circles.
+			mt = findExit(world.getForcedId());
+			if (mt == null) { out.println("Invalid direction."); return; }
+			destination = mt.getDestinationRoom();
+		}
+	}
 
-				checkForced(); // if there is a forced direction inside the new room, take it.
-				return;
+	/**
+	 * Finds the exit of the current room the player takes in the given direction,
+	 * announcing the key used if it needs one.
+	 * @param directionId is the symbol id of the direction of motion.
+	 * @return is the motion table entry taken, or null if there is no way to go.
+	 */
+	private AdvMotionTableEntry findExit(int directionId) {
+		for (AdvMotionTableEntry mt : currentRoom.getMotionCandidates(directionId)) {
+			if (mt.getKeyName() == null) return mt;
+
+			AdvObject key = world.getObject(mt.getKeyId());
+			if (key != null && placement.getLocation(key) == AdvObjectPlacement.INVENTORY) { // Key needed:
+				out.println(key.getName() + " used.");
+				return mt;
 			}
 		}
-		System.out.println("Invalid direction.");
+		return null;
 	}
 
 	/**
@@ -379,14 +665,14 @@ public class Adventure {
 	 * the program should continue as usual.
 	 */
 	public void executeQuitCommand() {
-		System.out.println("Confirm quit by entering 'y', 'quit', or 'q' again.");
-		String line = scan.nextLine();
+		out.println("Confirm quit by entering 'y', 'quit', or 'q' again.");
+		String line = readLine();
 		if (line.equals("quit") || line.equals("q")|| line.equals("y")) {
-			System.out.println("Thank you for playing!");
+			out.println("Thank you for playing!");
 			runGame = false;
 		}
 		else {
-			System.out.println("Quit aborted.");
+			out.println("Quit aborted.");
 		}
 	}
 
@@ -398,64 +684,165 @@ public class Adventure {
 	public void executeHelpCommand(String[] modifiers) {
 		// Generic help list:
 		if (modifiers == null) {
-			System.out.println("Commands:");
-			System.out.println("LOOK: Gives a description of the current room and any visible objects inside it.");
-			System.out.println("INVENTORY: Gives a description of each item in your inventory.");
-			System.out.println("TAKE [item name]: Places a visible object in your inventory.");
-			System.out.println("DROP [item name]: drops the corresponding item from your inventory into the room.");
-			System.out.println("NORTH, SOUTH, EAST, WEST, IN, OUT: Move to the room in the given direction.");
-			System.out.println("HELP [command/item name]: Lists all synonyms for the given command/item.");
+			out.println("Commands:");
+			out.println("LOOK: Gives a description of the current room and any visible objects inside it.");
+			out.println("INVENTORY: Gives a description of each item in your inventory.");
+			out.println("TAKE [item name]: Places a visible object in your inventory.");
+			out.println("DROP [item name]: drops the corresponding item from your inventory into the room.");
+			out.println("NORTH, SOUTH, EAST, WEST, IN, OUT: Move to the room in the given direction.");
+			out.println("HELP [command/item name]: Lists all synonyms for the given command/item.");
+			out.println("SAVE [name], RESTORE [name]: Saves the game, or goes back to a saved game.");
+			out.println("HINT [room or item name]: Tells you the shortest way to a room or an item.");
 		}
 		else { // Give synonyms for modifier input:
 			if (modifiers.length > 1) {
-				System.out.println("Please ask about one word at a time.");
+				out.println("Please ask about one word at a time.");
 				return;
 			}
 			String name = modifiers[0];
-			String[] set = synonyms.keySet().toArray(new String[0]);
-			ArrayList<String> syn = new ArrayList<>();
-			for (String k : set)
-				if (synonyms.get(k).equals(name)) syn.add(k.toLowerCase());
+			String[] syn = world.getAliases(name);
 
-			if (syn.isEmpty()) System.out.println("There are no synonyms for " + name + ".");
+			if (syn == null) out.println("There are no synonyms for " + name + ".");
 			else {
-				System.out.print("Synonyms: ");
-				for (int i = 0; i < syn.size() - 1; i++)
-					System.out.print(syn.get(i) + ", ");
-				System.out.println(syn.getLast() + ".");
+				out.print("Synonyms: ");
+				for (int i = 0; i < syn.length - 1; i++)
+					out.print(syn[i] + ", ");
+				out.println(syn[syn.length - 1] + ".");
 			}
 		}
 	}
 
-	/* Method: executeLookCommand() */
+	/* Method: executeSaveCommand(modifiers) */
 	/**
-	 * Implements the LOOK command. This method should give the full description
-	 * of the room and its contents.
+	 * Implements the SAVE command, which writes the game to a file that RESTORE
+	 * can read back.
+	 *
+	 * @param modifiers is the name to save the game under, or null for the default.
 	 */
-	public void executeLookCommand() {
-		for (String s : currentRoom.getDescription())
-			System.out.println(s);
+	public void executeSaveCommand(String[] modifiers) {
+		Path file = getSaveFile(modifiers);
+		if (file == null) return;
+		try {
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.write(tmp, AdvSessionSnapshot.toBytes(this));
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			out.println("Game saved as " + saveName(modifiers).toLowerCase() + ".");
+		}
+		catch (IOException exception) {
+			out.println("The game could not be saved: " + exception.getMessage());
+		}
+	}
 
-		if (currentRoom.getObjectCount() == 0) return;
+	/* Method: executeRestoreCommand(modifiers) */
+	/**
+	 * Implements the RESTORE command, which goes back to a game written by SAVE.
+	 *
+	 * @param modifiers is the name the game was saved under, or null for the default.
+	 */
+	public void executeRestoreCommand(String[] modifiers) {
+		Path file = getSaveFile(modifiers);
+		if (file == null) return;
+		if (!Files.isRegularFile(file)) {
+			out.println("There is no saved game called " + saveName(modifiers).toLowerCase() + ".");
+			return;
+		}
+		try {
+			AdvSessionSnapshot.read(this, ByteBuffer.wrap(Files.readAllBytes(file)));
+		}
+		catch (IOException exception) {
+			out.println("The game could not be restored: " + exception.getMessage());
+			return;
+		}
+		out.println("Game restored.");
+		executeLookCommand();
+	}
 
-		// Give a name/description of each object found in the room:
-		System.out.print("\nYou see ");
-		if (currentRoom.getObjectCount() == 1) {
-			System.out.print(currentRoom.getObject((0)).getName().toLowerCase());
+	/* Method: executeHintCommand(modifiers, walk) */
+	/**
+	 * Implements the HINT command, which tells the player the fewest moves that
+	 * take them to a room (by name) or to an object, with what they carry now.
+	 * With walk set, it implements the GOTO command instead, which makes those
+	 * moves.
+	 *
+	 * @param modifiers is the name of the room or object.
+	 * @param walk is true to make the moves rather than list them.
+	 */
+	public void executeHintCommand(String[] modifiers, boolean walk) {
+		if (modifiers == null) {
+			out.println("Please say which room or item you want to get to.");
+			return;
 		}
-		else if (currentRoom.getObjectCount() == 2) {
-			System.out.print(currentRoom.getObject(0).getName().toLowerCase() +
-					" and " + currentRoom.getObject(1).getName().toLowerCase());
+		AdvRouter router = world.getRouter();
+		int[] targets;
+		AdvObject obj = (modifiers.length == 1) ? world.getObject(world.resolve(modifiers[0])) : null;
+		if (obj != null) {
+			int where = placement.getLocation(obj);
+			if (where == AdvObjectPlacement.INVENTORY) {
+				out.println("You are carrying it.");
+				return;
+			}
+			targets = new int[] { where };
 		}
 		else {
-			int i = 0;
-			for (; i < currentRoom.getObjectCount() - 1; i++) {
-				AdvObject o = currentRoom.getObject(i);
-				System.out.print(o.getName().toLowerCase() + ", ");
+			targets = router.findRooms(String.join(" ", modifiers));
+			if (targets.length == 0) {
+				out.println("There is no room or item called " + String.join(" ", modifiers).toLowerCase() + ".");
+				return;
+			}
+		}
+
+		int[] route = router.findRoute(currentRoom.getRoomIndex(), targets, keyId -> {
+			AdvObject key = world.getObject(keyId);
+			return key != null && placement.getLocation(key) == AdvObjectPlacement.INVENTORY;
+		});
+		if (route == null) out.println("You cannot get there from here with what you carry.");
+		else if (route.length == 0) out.println("You are already there.");
+		else if (walk) {
+			for (int dir : route) {
+				out.println(world.getSymbols().getName(dir));
+				executeMotionCommand(dir);
+				if (!runGame) return;
 			}
-			System.out.print("and " + currentRoom.getObject(i).getName().toLowerCase());
 		}
-		System.out.println(" ripe for the taking.");
+		else {
+			out.print("It is " + route.length + ((route.length == 1) ? " move" : " moves") + " away: ");
+			int shown = Math.min(route.length, 20);
+			for (int i = 0; i < shown; i++)
+				out.print(((i > 0) ? ", " : "") + world.getSymbols().getName(route[i]).toLowerCase());
+			out.println((shown < route.length) ? ", ..." : ".");
+		}
+	}
+
+	/**
+	 * Works out the file a SAVE or RESTORE command refers to, complaining if the
+	 * name given is not a plain word.
+	 * @return is the file, or null if the name is not acceptable.
+	 */
+	private Path getSaveFile(String[] modifiers) {
+		if (modifiers != null && modifiers.length > 1) {
+			out.println("Please give the game a one word name.");
+			return null;
+		}
+		String name = saveName(modifiers);
+		if (!name.matches("[A-Z0-9_-]{1,32}")) {
+			out.println("A saved game's name may only use letters, digits, '-' and '_'.");
+			return null;
+		}
+		return SAVE_DIRECTORY.resolve(name + ".sav");
+	}
+
+	private static String saveName(String[] modifiers) {
+		return (modifiers == null) ? DEFAULT_SAVE_NAME : modifiers[0];
+	}
+
+	/* Method: executeLookCommand() */
+	/**
+	 * Implements the LOOK command. This method should give the full description
+	 * of the room and its contents.
+	 */
+	public void executeLookCommand() {
+		out.print(currentRoom.getText());
+		out.print(placement.getListing(currentRoom.getRoomIndex()));
 	}
 
 	/* Method: executeInventoryCommand() */
@@ -464,25 +851,28 @@ public class Adventure {
 	 * what the user is carrying.
 	 */
 	public void executeInventoryCommand() {
-		if (inventory.isEmpty()) {
-			System.out.println("You are destitute of objects.");
+		if (placement.getInventoryCount() == 0) {
+			out.println("You are destitute of objects.");
 			return;
 		}
+		ArrayList<AdvObject> inventory = listed;
+		inventory.clear();
+		placement.collect(AdvObjectPlacement.INVENTORY, inventory);
 
-		System.out.print("You hold ");
+		out.print("You hold ");
 		if (inventory.size() == 1) {
-			System.out.print(inventory.getFirst().getDescription().toLowerCase());
+			out.print(inventory.getFirst().getDescription().toLowerCase());
 		}
 		else if (inventory.size() == 2) {
-			System.out.print(inventory.getFirst().getDescription().toLowerCase() +
+			out.print(inventory.getFirst().getDescription().toLowerCase() +
 					" and " + inventory.getLast().getDescription().toLowerCase());
 		}
 		else {
 			for (int i = 0; i < inventory.size() - 1; i++) {
 				AdvObject o = inventory.get(i);
-				System.out.println(o.getDescription().toLowerCase() + ", ");
+				out.println(o.getDescription().toLowerCase() + ", ");
 			}
-			System.out.print("and " + inventory.getLast().getDescription().toLowerCase());
+			out.print("and " + inventory.getLast().getDescription().toLowerCase());
 		}
 
 		String flavor = switch(inventory.size()) {
@@ -495,7 +885,7 @@ public class Adventure {
 			case 7 -> " strenuously on your person.";
 			default -> " impossibly.";
 		};
-		System.out.println(flavor);
+		out.println(flavor);
 	}
 
 	/* Method: executeTakeCommand(obj) */
@@ -509,18 +899,17 @@ public class Adventure {
 		ArrayList<String> invalidObjectNames = new ArrayList<>();
 
 		if (modifiers == null) {
-			System.out.println("Please include an object to pick up.");
+			out.println("Please include an object to pick up.");
 			return;
 		}
 
 		for (String m : modifiers) {
-			AdvObject o = objects.get(synonyms.get(m));
+			AdvObject o = world.getObject(world.resolve(m));
 			if (o == null) continue;
 
-			if (currentRoom.containsObject(o)) {
-				inventory.add(o);
-				currentRoom.removeObject(o);
-				System.out.println(o.getName().toLowerCase() + " get.");
+			if (placement.getLocation(o) == currentRoom.getRoomIndex()) {
+				placement.moveTo(o, AdvObjectPlacement.INVENTORY);
+				out.println(o.getName().toLowerCase() + " get.");
 				break;
 			}
 			else invalidObjectNames.add(m.toLowerCase());
@@ -532,18 +921,18 @@ public class Adventure {
 		String w = (initialInvalidObject.charAt(initialInvalidObject.length() - 1) == 's') ? "are" : "is";
 		switch(invalidObjectNames.size()) {
 			case 1:
-				System.out.println("There " + w + " no " + initialInvalidObject + " to pick up.");
+				out.println("There " + w + " no " + initialInvalidObject + " to pick up.");
 				break;
 			case 2:
-				System.out.println("There " + w + " no " + initialInvalidObject + " or " + invalidObjectNames.getLast() + " to pick up.");
+				out.println("There " + w + " no " + initialInvalidObject + " or " + invalidObjectNames.getLast() + " to pick up.");
 				break;
 			default:
-				System.out.print("There " + w + " no " + initialInvalidObject);
+				out.print("There " + w + " no " + initialInvalidObject);
 				for (int i = 1; i < invalidObjectNames.size() - 1; i++) {
 					String o = invalidObjectNames.get(i);
-					System.out.print( ", " + o);
+					out.print( ", " + o);
 				}
-				System.out.println(", or " + invalidObjectNames.getLast() + " to pick up.");
+				out.println(", or " + invalidObjectNames.getLast() + " to pick up.");
 		}
 	}
 
@@ -558,25 +947,20 @@ public class Adventure {
 		ArrayList<String> invalidObjects = new ArrayList<>();
 
 		if (modifiers == null) {
-			System.out.println("Please include an object(s) to drop.");
+			out.println("Please include an object(s) to drop.");
 			return;
 		}
 
 		for (String m : modifiers) {
-			boolean found = false;
-			String s = synonyms.get(m);
-			if (s == null) continue;
-
-			for (AdvObject i : inventory) {
-				if (s.equals(i.getName())) {
-					currentRoom.addObject(i);
-					inventory.remove(i);
-					System.out.println(i.getName().toLowerCase() + " dropped.");
-					found = true;
-					break;
-				}
+			int s = world.resolve(m);
+			if (s < 0) continue;
+
+			AdvObject i = world.getObject(s);
+			if (i != null && placement.getLocation(i) == AdvObjectPlacement.INVENTORY) {
+				placement.moveTo(i, currentRoom.getRoomIndex());
+				out.println(i.getName().toLowerCase() + " dropped.");
 			}
-			if (!found) {
+			else {
 				invalidObjects.add(m.toLowerCase());
 			}
 		}
@@ -587,18 +971,18 @@ public class Adventure {
 		String w = (objName.charAt(objName.length() - 1) == 's') ? "are" : "is";
 		switch(invalidObjects.size()) {
 			case 1:
-				System.out.println("There " + w + " no " + objName + " to drop.");
+				out.println("There " + w + " no " + objName + " to drop.");
 				break;
 			case 2:
-				System.out.println("There " + w + " no " + objName + " or " + invalidObjects.getLast() + " to drop.");
+				out.println("There " + w + " no " + objName + " or " + invalidObjects.getLast() + " to drop.");
 				break;
 			default:
-				System.out.print("There " + w + " no " + objName);
+				out.print("There " + w + " no " + objName);
 				for (int i = 1; i < invalidObjects.size() - 1; i++) {
 					String o = invalidObjects.get(i);
-					System.out.print( ", " + o);
+					out.print( ", " + o);
 				}
-				System.out.println(", or " + invalidObjects.getLast() + " to drop.");
+				out.println(", or " + invalidObjects.getLast() + " to drop.");
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,1238 @@
+/*
+ * File: AdventureBenchmark.java
+ * -----------------------------
+ * Rough, self-contained benchmarks for the Adventure engine.  Like
+ * AdventureTest, it expects the game files to be in the project folder.
+ */
+
+import java.io.*;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntPredicate;
+
+public class AdventureBenchmark {
+	public static void main(String[] args) throws Exception {
+		String which = (args.length > 0) ? args[0] : "all";
+		if (which.equals("all") || which.equals("sessions")) benchmarkSessions(10_000);
+		if (which.equals("all") || which.equals("load")) benchmarkWorldLoad("Crowther", 2_000);
+		if (which.equals("all") || which.equals("parse")) benchmarkRoomsParser(500_000);
+		if (which.equals("all") || which.equals("motion")) benchmarkMotionDispatch("Crowther", 1_000);
+		if (which.equals("all") || which.equals("symbols")) benchmarkWordResolution("Crowther", 20_000);
+		if (which.equals("all") || which.equals("help")) benchmarkHelp(1_000, 10_000, 100_000, 500_000);
+		if (which.equals("all") || which.equals("objects")) benchmarkObjectMoves(10, 1_000, 10_000);
+		if (which.equals("all") || which.equals("output")) benchmarkOutput(2_000);
+		if (which.equals("all") || which.equals("forced")) benchmarkForcedChain(100_000, 20);
+		if (which.equals("all") || which.equals("memory")) benchmarkSessionMemory("Crowther", 100_000);
+		if (which.equals("all") || which.equals("snapshot")) benchmarkSessionSnapshot("Crowther", 1_000_000);
+		if (which.equals("all") || which.equals("journal")) benchmarkJournal("Crowther", 5_000);
+		if (which.equals("all") || which.equals("metrics")) benchmarkMetrics("Crowther", 10_000);
+		if (which.equals("all") || which.equals("lazyrooms")) benchmarkLazyRooms("Crowther", 1_000_000, 1_000_000);
+		if (which.equals("all") || which.equals("routes")) benchmarkRoutes(1_000_000, 10_000, 200);
+		if (which.equals("all") || which.equals("parallelload")) benchmarkParallelLoad(1_000_000, 3);
+		if (which.equals("all") || which.equals("reload")) benchmarkReload(200_000, 1_000, 10);
+		if (which.equals("all") || which.equals("worldcache")) benchmarkWorldCache(12, 20_000, 4, 2_000);
+		if (which.equals("all") || which.equals("look")) benchmarkLook("Crowther", 2_000_000);
+		if (which.equals("all") || which.equals("batch")) benchmarkBatch("Crowther", 20_000);
+		if (which.equals("all") || which.equals("words")) benchmarkWordTrie(1_000, 10_000, 100, 10_000, 100_000, 1_000_000);
+	}
+
+	/**
+	 * Replays CrowtherTest.txt in many sessions at once, first on a growing number of
+	 * platform threads (to show how throughput scales with cores) and then with one
+	 * virtual thread per session.
+	 * @param sessions is the number of sessions to run for each measurement.
+	 */
+	public static void benchmarkSessions(int sessions) throws Exception {
+		String transcript = Files.readString(Path.of("CrowtherTest.txt"));
+		long commands = transcript.lines().count() - 1; // the first line is the game name.
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Sessions: " + sessions + " Crowther replays, " + commands + " commands each");
+		runSessions(transcript, sessions / 10, Executors.newFixedThreadPool(cores)); // warm up
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			double seconds = runSessions(transcript, sessions, Executors.newFixedThreadPool(threads));
+			report(threads + " thread(s)", sessions, commands, seconds);
+		}
+		double seconds = runSessions(transcript, sessions, null);
+		report("virtual threads", sessions, commands, seconds);
+	}
+
+	private static double runSessions(String transcript, int sessions, ExecutorService pool) throws Exception {
+		long start = System.nanoTime();
+		if (pool == null) {
+			Thread[] threads = new Thread[sessions];
+			for (int i = 0; i < sessions; i++)
+				threads[i] = Adventure.startSession(new Scanner(transcript), nullOutput());
+			for (Thread t : threads) t.join();
+		}
+		else {
+			for (int i = 0; i < sessions; i++)
+				pool.execute(new Adventure(new Scanner(transcript), nullOutput())::play);
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.HOURS);
+		}
+		return (System.nanoTime() - start) / 1e9;
+	}
+
+	private static AdvOutput nullOutput() {
+		return new AdvOutput.Channel(Channels.newChannel(OutputStream.nullOutputStream()));
+	}
+
+	private static void report(String label, int sessions, long commandsPerSession, double seconds) {
+		System.out.printf("  %-18s %9.0f sessions/s %12.0f commands/s%n",
+				label, sessions / seconds, sessions * commandsPerSession / seconds);
+	}
+
+	/**
+	 * Compares loading a world from its text files with loading its compiled snapshot.
+	 * The first load of each path is reported separately, as it is what a freshly
+	 * started process pays.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param loads is the number of loads to average over.
+	 */
+	public static void benchmarkWorldLoad(String game, int loads) throws Exception {
+		AdvWorldSnapshot.write(AdvWorld.readFromText(game), game);
+		System.out.println("World load: " + game);
+
+		long start = System.nanoTime();
+		AdvWorldSnapshot.read(game);
+		long coldSnapshot = System.nanoTime() - start;
+		start = System.nanoTime();
+		AdvWorld.readFromText(game);
+		long coldText = System.nanoTime() - start;
+
+		double text = timeLoads(() -> AdvWorld.readFromText(game), loads);
+		double snapshot = timeLoads(() -> AdvWorldSnapshot.read(game), loads);
+		System.out.printf("  %-10s first %8.0f us, then %8.1f us/load%n", "text", coldText / 1e3, text);
+		System.out.printf("  %-10s first %8.0f us, then %8.1f us/load%n", "snapshot", coldSnapshot / 1e3, snapshot);
+	}
+
+	private static double timeLoads(Callable<AdvWorld> load, int loads) throws Exception {
+		for (int i = 0; i < loads / 10; i++) load.call(); // warm up
+		long start = System.nanoTime();
+		for (int i = 0; i < loads; i++)
+			if (load.call() == null) throw new IllegalStateException("World failed to load");
+		return (System.nanoTime() - start) / 1e3 / loads;
+	}
+
+	/**
+	 * Measures the rooms parser on a large synthetic ...Rooms.txt file, next to the
+	 * time it takes just to read the same file line by line.
+	 * @param roomCount is the number of rooms in the generated file.
+	 */
+	public static void benchmarkRoomsParser(int roomCount) throws Exception {
+		Path file = Files.createTempFile("Synthetic", "Rooms.txt");
+		try (BufferedWriter w = Files.newBufferedWriter(file)) {
+			for (int i = 1; i <= roomCount; i++) {
+				w.write(i + "\nRoom " + i + "\n");
+				w.write("You are in room number " + i + " of a very large, computer generated cave.\n");
+				w.write("Passages lead off in several directions, some of them locked.\n-----\n");
+				w.write("NORTH      " + (i % roomCount + 1) + "\n");
+				w.write("SOUTH      " + ((i + roomCount - 2) % roomCount + 1) + "\n");
+				w.write("EAST       " + ((i * 7) % roomCount + 1) + "/KEYS\n");
+				w.write("EAST       " + i + "\n\n");
+			}
+		}
+		double megabytes = Files.size(file) / 1e6;
+		System.out.printf("Rooms parser: %d rooms, %.1f MB%n", roomCount, megabytes);
+
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			try (LineNumberReader rd = new LineNumberReader(Files.newBufferedReader(file), 1 << 16)) {
+				while (rd.readLine() != null) ;
+			}
+			double readSeconds = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			AdvWorld world = new AdvWorld();
+			try (LineNumberReader rd = new LineNumberReader(Files.newBufferedReader(file), 1 << 16)) {
+				world.readRooms(rd);
+			}
+			double parseSeconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("  round %d: read lines %6.0f MB/s, parse rooms %6.0f MB/s (%d rooms)%n",
+					round + 1, megabytes / readSeconds, megabytes / parseSeconds, world.getRooms().size());
+		}
+		Files.delete(file);
+	}
+
+	/**
+	 * Compares finding the exit for a move by scanning a copy of the motion table
+	 * (as moves used to) with the per-room motion index.  Every direction typed in
+	 * the game's test transcript is tried in every room of the game.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param rounds is the number of times the whole set of moves is timed.
+	 */
+	public static void benchmarkMotionDispatch(String game, int rounds) throws Exception {
+		AdvWorld world = AdvWorld.readFromText(game);
+		ArrayList<String> directions = new ArrayList<>();
+		for (String line : Files.readAllLines(Path.of(game + "Test.txt"))) {
+			String word = world.getSynonyms().get(line.trim().toUpperCase());
+			if (world.getCommands().get(word) instanceof AdvMotionCommand) directions.add(word);
+		}
+		int[] directionIds = new int[directions.size()];
+		for (int i = 0; i < directionIds.length; i++)
+			directionIds[i] = world.getSymbols().lookup(directions.get(i));
+		List<AdvRoom> rooms = world.getRooms();
+		long moves = (long) directions.size() * rooms.size();
+		System.out.println("Motion dispatch: " + directions.size() + " moves from " + game +
+				"Test.txt in each of " + rooms.size() + " rooms");
+
+		for (int round = 0; round < 3; round++) {
+			long found = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				for (AdvRoom r : rooms)
+					for (String dir : directions)
+						for (AdvMotionTableEntry e : r.getMotionTable())
+							if (e.getDirection().equals(dir)) { found++; break; }
+			double scan = (System.nanoTime() - start) / (double) (moves * rounds);
+
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				for (AdvRoom r : rooms)
+					for (int dir : directionIds)
+						if (r.getMotionCandidates(dir).length > 0) found--;
+			double indexed = (System.nanoTime() - start) / (double) (moves * rounds);
+			if (found != 0) throw new IllegalStateException("The two dispatches disagree");
+			System.out.printf("  round %d: table scan %6.1f ns/move, index %6.1f ns/move%n", round + 1, scan, indexed);
+		}
+	}
+
+	/**
+	 * Compares the cost of turning the words of each command in the game's test
+	 * transcript into a command and objects, once through the name-keyed maps and
+	 * once through the symbol table.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param rounds is the number of times the transcript is resolved.
+	 */
+	public static void benchmarkWordResolution(String game, int rounds) throws Exception {
+		AdvWorld world = AdvWorld.readFromText(game);
+		ArrayList<String[]> lines = new ArrayList<>();
+		List<String> transcript = Files.readAllLines(Path.of(game + "Test.txt"));
+		for (String line : transcript.subList(1, transcript.size())) // the first line is the game name.
+			lines.add(line.trim().toUpperCase().split(" ", 64));
+		Map<String, String> synonyms = world.getSynonyms();
+		Map<String, AdvCommand> commands = world.getCommands();
+		Map<String, AdvObject> objects = world.getObjects();
+		System.out.println("Word resolution: " + lines.size() + " commands from " + game + "Test.txt");
+
+		for (int round = 0; round < 3; round++) {
+			long hits = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				for (String[] words : lines) {
+					String key = synonyms.get(words[0]);
+					if (key != null && commands.get(key) != null) hits++;
+					for (int w = 1; w < words.length; w++)
+						if (objects.get(synonyms.get(words[w])) != null) hits++;
+				}
+			double byName = (System.nanoTime() - start) / (double) (lines.size() * (long) rounds);
+
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				for (String[] words : lines) {
+					if (world.getCommand(world.resolve(words[0])) != null) hits--;
+					for (int w = 1; w < words.length; w++)
+						if (world.getObject(world.resolve(words[w])) != null) hits--;
+				}
+			double bySymbol = (System.nanoTime() - start) / (double) (lines.size() * (long) rounds);
+			if (hits != 0) throw new IllegalStateException("The two resolutions disagree");
+			System.out.printf("  round %d: maps %6.1f ns/command, symbols %6.1f ns/command%n", round + 1, byName, bySymbol);
+		}
+	}
+
+	/**
+	 * Times a HELP lookup in the Small game given synthetic Synonyms files of
+	 * growing size, once by searching the synonyms (as HELP used to) and once
+	 * through the reverse index.
+	 * @param sizes is the number of aliases in each generated Synonyms file.
+	 */
+	public static void benchmarkHelp(int... sizes) throws Exception {
+		String[] words = { "NORTH", "SOUTH", "EAST", "WEST", "TAKE", "DROP", "KEYS", "LAMP" };
+		Path dir = Files.createTempDirectory("adventure");
+		Files.copy(Path.of("SmallRooms.txt"), dir.resolve("SyntheticRooms.txt"));
+		Files.copy(Path.of("SmallObjects.txt"), dir.resolve("SyntheticObjects.txt"));
+		System.out.println("HELP lookup in Small with synthetic synonyms");
+
+		for (int size : sizes) {
+			try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("SyntheticSynonyms.txt"))) {
+				for (int i = 0; i < size; i++)
+					w.write("ALIAS" + i + "=" + words[i % words.length] + "\n");
+			}
+			AdvWorld world = AdvWorld.readFromText(dir.resolve("Synthetic").toString());
+			Map<String, String> synonyms = world.getSynonyms();
+
+			int searches = Math.max(5, 2_000_000 / size);
+			long found = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < searches; i++) {
+				String name = words[i % words.length];
+				for (String k : synonyms.keySet().toArray(new String[0]))
+					if (synonyms.get(k).equals(name)) found++;
+			}
+			double search = (System.nanoTime() - start) / 1e3 / searches;
+
+			int lookups = 1_000_000;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++)
+				found += world.getAliases(words[i % words.length]).length;
+			double index = (System.nanoTime() - start) / 1e3 / lookups;
+			System.out.printf("  %7d aliases: search %10.2f us/HELP, index %6.3f us/HELP%n", size, search, index);
+			if (found == 0) throw new IllegalStateException("No aliases found");
+		}
+		for (Path p : Files.list(dir).toList()) Files.delete(p);
+		Files.delete(dir);
+	}
+
+	/**
+	 * Times taking and dropping objects in a room full of them, once with lists
+	 * searched by name (as rooms and the inventory used to be) and once with an
+	 * AdvObjectPlacement, and then listing the inventory with one of the moved
+	 * objects in it.
+	 * @param counts is the number of objects in the room for each measurement.
+	 */
+	public static void benchmarkObjectMoves(int... counts) throws Exception {
+		Path dir = Files.createTempDirectory("adventure");
+		Files.writeString(dir.resolve("SyntheticRooms.txt"),
+				"1\nStoreroom\nA room full of things.\n-----\nOUT 2\n\n2\nOutside\nOutside.\n-----\nIN 1\n");
+		System.out.println("TAKE and DROP in a room full of objects");
+
+		for (int count : counts) {
+			try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("SyntheticObjects.txt"))) {
+				for (int i = 0; i < count; i++)
+					w.write("THING" + i + "\na thing numbered " + i + "\n1\n\n");
+			}
+			AdvWorld world = AdvWorld.readFromText(dir.resolve("Synthetic").toString());
+			AdvObject[] picks = new AdvObject[1024];
+			Random random = new Random(42);
+			for (int i = 0; i < picks.length; i++)
+				picks[i] = world.getObjectByIndex(random.nextInt(count));
+			int moves = Math.max(10_000, 20_000_000 / count);
+
+			ArrayList<AdvObject> room = new ArrayList<>(world.getObjects().values());
+			ArrayList<AdvObject> inventory = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int i = 0; i < moves; i++) {
+				AdvObject obj = picks[i % picks.length];
+				for (int j = 0; j < room.size(); j++)
+					if (room.get(j).getName().equals(obj.getName())) { inventory.add(room.remove(j)); break; }
+				for (int j = 0; j < inventory.size(); j++)
+					if (inventory.get(j).getName().equals(obj.getName())) { room.add(inventory.remove(j)); break; }
+			}
+			double lists = (System.nanoTime() - start) / (double) moves;
+
+			AdvObjectPlacement placement = new AdvObjectPlacement(world);
+			start = System.nanoTime();
+			for (int i = 0; i < moves; i++) {
+				AdvObject obj = picks[i % picks.length];
+				if (placement.getLocation(obj) == 0) placement.moveTo(obj, AdvObjectPlacement.INVENTORY);
+				if (placement.getLocation(obj) == AdvObjectPlacement.INVENTORY) placement.moveTo(obj, 0);
+			}
+			double placed = (System.nanoTime() - start) / (double) moves;
+
+			// Every object picked above has been moved; with one of them carried, INVENTORY lists it:
+			placement.moveTo(picks[0], AdvObjectPlacement.INVENTORY);
+			ArrayList<AdvObject> carried = new ArrayList<>();
+			start = System.nanoTime();
+			for (int i = 0; i < moves; i++) {
+				carried.clear();
+				placement.collect(AdvObjectPlacement.INVENTORY, carried);
+			}
+			double listed = (System.nanoTime() - start) / (double) moves;
+			System.out.printf("  %6d objects: lists %9.1f ns/take+drop, placement %6.1f ns/take+drop, %6.1f ns/inventory (%d moved)%n",
+					count, lists, placed, listed, placement.getMovedCount());
+		}
+		for (Path p : Files.list(dir).toList()) Files.delete(p);
+		Files.delete(dir);
+	}
+
+	/**
+	 * Replays CrowtherTest.txt in many concurrent sessions that all print to one
+	 * shared PrintStream, as sessions printing to System.out would.  The sessions
+	 * either print every fragment straight to the stream (as the game used to) or
+	 * through the buffered AdvOutput, which writes once per command.
+	 * @param sessions is the number of sessions to run for each measurement.
+	 */
+	public static void benchmarkOutput(int sessions) throws Exception {
+		String transcript = Files.readString(Path.of("CrowtherTest.txt"));
+		long commands = transcript.lines().count() - 1;
+		PrintStream shared = new PrintStream(new BufferedOutputStream(OutputStream.nullOutputStream()));
+		System.out.println("Output: " + sessions + " concurrent Crowther replays sharing one PrintStream");
+
+		for (int round = 0; round < 3; round++) {
+			double direct = replayConcurrently(transcript, sessions, () -> new AdvOutput() {
+				public void print(String text) { shared.print(text); }
+				public void println(String text) { shared.println(text); }
+				public void println() { shared.println(); }
+				protected void write(CharSequence text) {}
+			});
+			double buffered = replayConcurrently(transcript, sessions, () -> new AdvOutput() {
+				protected void write(CharSequence text) { shared.append(text); }
+			});
+			System.out.printf("  round %d: per fragment %10.0f commands/s, per command %10.0f commands/s%n",
+					round + 1, sessions * commands / direct, sessions * commands / buffered);
+		}
+	}
+
+	private static double replayConcurrently(String transcript, int sessions, Callable<AdvOutput> output) throws Exception {
+		Thread[] threads = new Thread[sessions];
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++)
+			threads[i] = Adventure.startSession(new Scanner(transcript), output.call());
+		for (Thread t : threads) t.join();
+		return (System.nanoTime() - start) / 1e9;
+	}
+
+	/**
+	 * Walks a generated world in which going north from the first room leads into
+	 * a long chain of FORCED exits that ends back in the first room, which would
+	 * have overflowed the stack when FORCED exits were followed recursively; then
+	 * works out the routes of the same chain with a key on every exit, which
+	 * would have overflowed it when the routing data followed them recursively.
+	 * @param depth is the number of rooms in the chain.
+	 * @param walks is the number of times the chain is walked.
+	 */
+	public static void benchmarkForcedChain(int depth, int walks) throws Exception {
+		Path dir = Files.createTempDirectory("adventure");
+		try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("ChainRooms.txt"))) {
+			w.write("1\nStart\nThe start of a long slide.\n-----\nNORTH 2\n\n");
+			for (int i = 2; i <= depth + 1; i++)
+				w.write(i + "\nSlide " + i + "\nYou slide on.\n-----\nFORCED " + ((i == depth + 1) ? 1 : i + 1) + "\n\n");
+		}
+		AdvWorld world = AdvWorld.readFromText(dir.resolve("Chain").toString());
+		Adventure session = new Adventure(new Scanner(""), nullOutput());
+		session.start(world);
+		session.execute("NORTH"); // the first walk describes every room in full.
+
+		long start = System.nanoTime();
+		for (int i = 0; i < walks; i++) session.execute("NORTH");
+		double perStep = (System.nanoTime() - start) / (double) walks / depth;
+		System.out.printf("FORCED chain of %d rooms: %.1f ns per room passed through%n", depth, perStep);
+		Files.delete(dir.resolve("ChainRooms.txt"));
+
+		// The same chain with keys: with the KEYS it goes on to the last room, without
+		// them back to the start.  Any room of it might be where a player comes to rest.
+		try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("KeyedRooms.txt"))) {
+			w.write("1\nStart\nThe start of a long slide.\n-----\nNORTH 2\n\n");
+			for (int i = 2; i <= depth; i++)
+				w.write(i + "\nSlide " + i + "\nYou slide on.\n-----\nFORCED " + (i + 1) + "/KEYS\nFORCED 1\n\n");
+			w.write((depth + 1) + "\nEnd\nThe end of the slide.\n-----\nSOUTH 1\n\n");
+		}
+		Files.writeString(dir.resolve("KeyedObjects.txt"), "KEYS\na set of keys\n1\n\n");
+		world = AdvWorld.readFromText(dir.resolve("Keyed").toString());
+		start = System.nanoTime();
+		AdvRouter router = world.getRouter();
+		System.out.printf("Keyed FORCED chain of %d rooms: routing data worked out in %.1f ms, %.1f MB%n",
+				depth, (System.nanoTime() - start) / 1e6, router.estimateSize() / 1e6);
+		Files.delete(dir.resolve("KeyedRooms.txt"));
+		Files.delete(dir.resolve("KeyedObjects.txt"));
+		Files.delete(dir);
+	}
+
+	/**
+	 * Measures the heap each game adds on top of the world it shares with every
+	 * other game: first for games that have only entered the first room, then for
+	 * games that have also walked a few rooms and carried an object.  All games
+	 * share one input and one output, so the figures leave out the I/O buffers a
+	 * connected player would also have.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param sessions is the number of games kept alive at once.
+	 */
+	public static void benchmarkSessionMemory(String game, int sessions) throws Exception {
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		Scanner in = new Scanner("");
+		AdvOutput out = nullOutput();
+		System.out.println("Session memory: " + sessions + " " + game + " games sharing one world");
+
+		Adventure[] games = new Adventure[sessions];
+		long before = usedHeap();
+		for (int i = 0; i < sessions; i++) {
+			games[i] = new Adventure(in, out);
+			games[i].start(world);
+		}
+		long idle = usedHeap();
+		System.out.printf("  %-18s %8.0f bytes/session%n", "idle", (idle - before) / (double) sessions);
+
+		for (Adventure g : games) {
+			g.execute("IN");
+			g.execute("TAKE KEYS");
+			g.execute("OUT");
+			g.execute("DROP KEYS");
+		}
+		long played = usedHeap();
+		System.out.printf("  %-18s %8.0f bytes/session%n", "after 4 commands", (played - before) / (double) sessions);
+		Reference.reachabilityFence(games);
+	}
+
+	/**
+	 * Compares reading a very large world with every room description on the heap
+	 * and with the descriptions left in the mapped rooms file (see AdvRoomFile):
+	 * how long loading takes, how much heap the loaded world keeps, and how long
+	 * a description takes to get, for rooms picked at random and for a small set
+	 * of rooms that stays in the cache.  The world is the game's rooms copied over
+	 * and over, into a temporary folder.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param roomCount is the number of rooms of the large world, at least.
+	 * @param looks is the number of descriptions to get.
+	 */
+	public static void benchmarkLazyRooms(String game, int roomCount, int looks) throws Exception {
+		Path folder = Files.createTempDirectory("adventure");
+		String big = folder.resolve("Big").toString();
+		int copies = writeCopiedRooms(AdvWorld.readFromText(game, false), roomCount, Path.of(big + "Rooms.txt"));
+		System.out.printf("Lazy rooms: %d copies of %s, %d MB of rooms%n", copies, game, Files.size(Path.of(big + "Rooms.txt")) >> 20);
+
+		try {
+			for (boolean lazy : new boolean[] { false, true }) {
+				long before = usedHeap();
+				long start = System.nanoTime();
+				AdvWorld world = AdvWorld.readFromText(big, lazy);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				long loaded = usedHeap();
+				List<AdvRoom> rooms = world.getRooms();
+
+				SplittableRandom random = new SplittableRandom(1);
+				long chars = 0;
+				start = System.nanoTime();
+				for (int i = 0; i < looks; i++)
+					chars += rooms.get(random.nextInt(rooms.size())).getText().length();
+				double scattered = (System.nanoTime() - start) / (double) looks;
+				start = System.nanoTime();
+				for (int i = 0; i < looks; i++)
+					chars += rooms.get(random.nextInt(1_000)).getText().length();
+				double hot = (System.nanoTime() - start) / (double) looks;
+				long played = usedHeap();
+
+				System.out.printf("  %-6s %d rooms loaded in %.2f s, %5d MB kept (%5d MB after getting descriptions)%n",
+						lazy ? "lazy" : "eager", rooms.size(), seconds, (loaded - before) >> 20, (played - before) >> 20);
+				System.out.printf("         description of a random room %7.1f ns, of one of 1000 rooms %7.1f ns (%d chars)%n",
+						scattered, hot, chars);
+				if (lazy) {
+					long[] counts = world.getRoomFile().getCacheCounts();
+					System.out.printf("         cache: %d hits, %d misses, %d descriptions held%n",
+							counts[0], counts[1], world.getRoomFile().getCachedCount());
+				}
+				Reference.reachabilityFence(world);
+			}
+		}
+		finally {
+			Files.deleteIfExists(Path.of(big + "Rooms.txt"));
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * Measures the routes of the HINT command on a generated world: how long
+	 * working out the routing data takes, and how long a route takes to find.  A
+	 * session tours the world, carrying nothing, walking each route to a random
+	 * room, which checks that the route leads there.  The first routes are also
+	 * found by searching from the start only, to check that they are shortest.
+	 * @param roomCount is the number of rooms in the world.
+	 * @param queries is the number of routes the tour asks for.
+	 * @param checked is the number of those also found from the start only.
+	 */
+	public static void benchmarkRoutes(int roomCount, int queries, int checked) throws Exception {
+		Path folder = Files.createTempDirectory("adventure");
+		String prefix = folder.resolve("Routes").toString();
+		AdventureWorldGenerator.Settings settings = new AdventureWorldGenerator.Settings();
+		settings.rooms = roomCount;
+		AdventureWorldGenerator.generate(settings, prefix);
+		try {
+			AdvWorld world = AdvWorld.readFromText(prefix);
+			System.out.println("Routes: " + roomCount + " generated rooms, " + queries + " routes, " +
+					Runtime.getRuntime().availableProcessors() + " core(s)");
+			long start = System.nanoTime();
+			AdvRouter router = world.getRouter();
+			System.out.printf("  routing data worked out in %.2f s%n", (System.nanoTime() - start) / 1e9);
+
+			Adventure session = new Adventure(new Scanner(""), nullOutput());
+			session.start(world);
+			SplittableRandom random = new SplittableRandom(1);
+			IntPredicate nothing = key -> false;
+			int[] starts = new int[queries], targets = new int[queries], lengths = new int[queries];
+			long nanos = 0, unreachableNanos = 0, moves = 0;
+			int unreachable = 0;
+			for (int i = 0; i < queries; i++) {
+				starts[i] = session.getRoomIndex();
+				targets[i] = random.nextInt(roomCount);
+				start = System.nanoTime();
+				int[] route = router.findRoute(starts[i], new int[] { targets[i] }, nothing);
+				long took = System.nanoTime() - start;
+				lengths[i] = (route == null) ? -1 : route.length;
+				if (route == null) {
+					unreachableNanos += took;
+					unreachable++;
+					continue;
+				}
+				nanos += took;
+				moves += route.length;
+				for (int dir : route) session.execute(world.getSymbols().getName(dir));
+				if (session.getRoomIndex() != targets[i])
+					throw new IllegalStateException("The route from room " + (starts[i] + 1) + " to room " +
+							(targets[i] + 1) + " leads to room " + (session.getRoomIndex() + 1));
+			}
+			System.out.printf("  from both ends   %9.1f us/route (%.1f moves on average); %d unreachable, %.1f us each%n",
+					nanos / 1e3 / (queries - unreachable), moves / (double) (queries - unreachable), unreachable,
+					unreachableNanos / 1e3 / Math.max(1, unreachable));
+
+			AdvRouter oneEnded = AdvRouter.buildOneEnded(world);
+			checked = Math.min(checked, queries);
+			nanos = 0;
+			for (int i = 0; i < checked; i++) {
+				start = System.nanoTime();
+				int[] route = oneEnded.findRoute(starts[i], new int[] { targets[i] }, nothing);
+				nanos += System.nanoTime() - start;
+				if (((route == null) ? -1 : route.length) != lengths[i])
+					throw new IllegalStateException("The route from room " + (starts[i] + 1) + " to room " +
+							(targets[i] + 1) + " is " + lengths[i] + " moves from both ends but " +
+							((route == null) ? -1 : route.length) + " without");
+			}
+			System.out.printf("  from the start   %9.1f us/route (the first %d, which match)%n", nanos / 1e3 / checked, checked);
+		}
+		finally {
+			for (String kind : new String[] { "Rooms", "Objects", "Synonyms", "Test" })
+				Files.deleteIfExists(Path.of(prefix + kind + ".txt"));
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * Measures loading a large generated world from its text files on fork/join
+	 * pools of 1, 2, 4, ... threads, up to the number of cores, with the room
+	 * descriptions read eagerly and lazily.
+	 * @param roomCount is the number of rooms in the world.
+	 * @param rounds is the number of loads per measurement, of which the fastest counts.
+	 */
+	public static void benchmarkParallelLoad(int roomCount, int rounds) throws Exception {
+		Path folder = Files.createTempDirectory("adventure");
+		String prefix = folder.resolve("Load").toString();
+		AdventureWorldGenerator.Settings settings = new AdventureWorldGenerator.Settings();
+		settings.rooms = roomCount;
+		AdventureWorldGenerator.generate(settings, prefix);
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.printf("Parallel load: %d generated rooms, %d MB of rooms, %d core(s)%n",
+				roomCount, Files.size(Path.of(prefix + "Rooms.txt")) >> 20, cores);
+		try {
+			for (boolean lazy : new boolean[] { false, true }) {
+				for (int threads = 1; threads <= cores; threads *= 2) {
+					ForkJoinPool pool = new ForkJoinPool(threads);
+					double best = Double.MAX_VALUE;
+					for (int round = 0; round < rounds; round++) {
+						long start = System.nanoTime();
+						AdvWorld world = pool.submit(() -> AdvWorld.readFromText(prefix, lazy)).get();
+						best = Math.min(best, (System.nanoTime() - start) / 1e9);
+						Reference.reachabilityFence(world);
+					}
+					pool.shutdown();
+					System.out.printf("  %-5s %2d thread(s): %6.2f s%n", lazy ? "lazy" : "eager", threads, best);
+				}
+			}
+		}
+		finally {
+			for (String kind : new String[] { "Rooms", "Objects", "Synonyms", "Test" })
+				Files.deleteIfExists(Path.of(prefix + kind + ".txt"));
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * Measures the pause that hot reloading causes the sessions playing a world.
+	 * Sessions replay a generated game's walkthrough over and over, with a
+	 * millisecond to think between commands, while its objects file is replaced
+	 * (with one object described differently each time) and an AdvWorldWatcher
+	 * reloads it.  The first command of each session after a swap moves it onto
+	 * the new version, and is reported apart from the others.
+	 * @param roomCount is the number of rooms in the world.
+	 * @param sessions is the number of sessions playing it.
+	 * @param swaps is the number of times the objects file is replaced.
+	 */
+	public static void benchmarkReload(int roomCount, int sessions, int swaps) throws Exception {
+		Path folder = Files.createTempDirectory("adventure");
+		String prefix = folder.resolve("Reload").toString();
+		AdventureWorldGenerator.Settings settings = new AdventureWorldGenerator.Settings();
+		settings.rooms = roomCount;
+		AdventureWorldGenerator.generate(settings, prefix);
+		Path objects = Path.of(prefix + "Objects.txt"), replacement = Path.of(prefix + "Objects.new");
+		try {
+			List<String> walkthrough = Files.readAllLines(Path.of(prefix + "Test.txt"));
+			List<String> commands = walkthrough.subList(1, walkthrough.size());
+			AdvWorldCache cache = new AdvWorldCache();
+			cache.get(prefix);
+			System.out.println("Reload: " + roomCount + " generated rooms, " + sessions + " sessions, " + swaps + " swaps, " +
+					Runtime.getRuntime().availableProcessors() + " core(s)");
+
+			AdvHistogram steady = new AdvHistogram(), moving = new AdvHistogram(), reloading = new AdvHistogram();
+			BlockingQueue<AdvWorldWatcher.Reload> reloads = new LinkedBlockingQueue<>();
+			CountDownLatch stop = new CountDownLatch(1);
+			Thread[] players = new Thread[sessions];
+			AdvWorldWatcher watcher = new AdvWorldWatcher(cache, prefix, reloads::add);
+			try {
+				for (int i = 0; i < sessions; i++) {
+					players[i] = Thread.ofVirtual().start(() -> {
+						// Sessions only hold the version they play, since every version leads to the next:
+						Adventure session = new Adventure(new Scanner(""), nullOutput());
+						try {
+							session.start(cache.get(prefix));
+							for (int line = 0; !stop.await(1, TimeUnit.MILLISECONDS); ) {
+								AdvWorld before = session.getWorld();
+								long start = System.nanoTime();
+								boolean going = session.execute(commands.get(line++));
+								long took = System.nanoTime() - start;
+								(session.getWorld() == before ? steady : moving).record(took);
+								if (!going || line == commands.size()) {
+									session.start(session.getWorld());
+									line = 0;
+								}
+							}
+						}
+						catch (IOException exception) {
+							throw new UncheckedIOException(exception);
+						}
+						catch (InterruptedException exception) {
+							Thread.currentThread().interrupt();
+						}
+					});
+				}
+				Thread.sleep(1000);
+
+				List<String> lines = Files.readAllLines(objects);
+				String description = lines.get(1);
+				for (int swap = 1; swap <= swaps; swap++) {
+					lines.set(1, description + " (version " + swap + ")");
+					Files.write(replacement, lines);
+					Files.move(replacement, objects, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					AdvWorldWatcher.Reload reload = reloads.poll(1, TimeUnit.MINUTES);
+					if (reload == null || reload.diff() == null || reload.diff().isEmpty())
+						throw new IllegalStateException("The new objects file was not swapped in: " + reload);
+					reloading.record(reload.nanos());
+					Thread.sleep(500);
+				}
+				stop.countDown();
+				for (Thread t : players) t.join();
+			}
+			finally {
+				watcher.close();
+			}
+
+			System.out.printf("  %-28s %10s %10s %10s %10s%n", "", "count", "p50 us", "p99 us", "max us");
+			for (Object[] row : new Object[][] { { "reload, in the background", reloading.snapshot() },
+					{ "commands on the same world", steady.snapshot() },
+					{ "commands moving to a new one", moving.snapshot() } }) {
+				AdvHistogram.Snapshot h = (AdvHistogram.Snapshot) row[1];
+				System.out.printf("  %-28s %10d %10.1f %10.1f %10.1f%n", row[0], h.getCount(),
+						h.getPercentile(0.5) / 1e3, h.getPercentile(0.99) / 1e3, h.getMax() / 1e3);
+			}
+		}
+		finally {
+			for (String kind : new String[] { "Rooms", "Objects", "Synonyms", "Test" })
+				Files.deleteIfExists(Path.of(prefix + kind + ".txt"));
+			Files.deleteIfExists(replacement);
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * Measures a world cache hosting more games than its budget holds.  Sessions
+	 * one after another pick one of the games, the first few much more often than
+	 * the rest, and play a short game of it.  Asking the cache for a world is
+	 * timed, apart for the times it is found and the times it has to be loaded.
+	 * The size the cache budgets by is checked against the heap a world takes.
+	 * @param games is the number of generated games.
+	 * @param roomCount is the number of rooms of each.
+	 * @param budgetGames is how many of the games the cache's budget holds.
+	 * @param sessions is the number of sessions.
+	 */
+	public static void benchmarkWorldCache(int games, int roomCount, int budgetGames, int sessions) throws Exception {
+		Path folder = Files.createTempDirectory("adventure");
+		String[] prefixes = new String[games];
+		AdventureWorldGenerator.Settings settings = new AdventureWorldGenerator.Settings();
+		settings.rooms = roomCount;
+		for (int g = 0; g < games; g++) {
+			prefixes[g] = folder.resolve("Game" + g).toString();
+			settings.seed = g + 1;
+			AdventureWorldGenerator.generate(settings, prefixes[g]);
+		}
+		try {
+			long before = usedHeap();
+			AdvWorld sample = AdvWorld.load(prefixes[0]);
+			long measured = usedHeap() - before;
+			long estimate = sample.estimateSize();
+			Reference.reachabilityFence(sample);
+			sample = null;
+			System.out.printf("World cache: %d games of %d rooms, a budget of %d, %d sessions%n", games, roomCount, budgetGames, sessions);
+			System.out.printf("  one world takes %.1f MB of heap, estimated as %.1f MB%n", measured / 1e6, estimate / 1e6);
+
+			AdvWorldCache cache = new AdvWorldCache(budgetGames * estimate + estimate / 2);
+			AdvHistogram found = new AdvHistogram(), loaded = new AdvHistogram();
+			SplittableRandom random = new SplittableRandom(1);
+			for (int i = 0; i < sessions; i++) {
+				String game = prefixes[(int) (games * Math.pow(random.nextDouble(), 3))];
+				long misses = cache.getCounts()[1];
+				long start = System.nanoTime();
+				AdvWorld world = cache.get(game);
+				long took = System.nanoTime() - start;
+				(cache.getCounts()[1] == misses ? found : loaded).record(took);
+				new Adventure(new Scanner("look\ninventory\nquit\ny\n"), nullOutput()).play(world);
+			}
+			long[] counts = cache.getCounts();
+			AdvHistogram.Snapshot hit = found.snapshot(), miss = loaded.snapshot();
+			System.out.printf("  %d hits (%.1f%%), %d misses, %d evictions; %.1f of %.1f MB held at the end%n", counts[0],
+					100.0 * counts[0] / (counts[0] + counts[1]), counts[1], counts[2], cache.getUsedBytes() / 1e6, cache.getBudget() / 1e6);
+			System.out.printf("  found in the cache: %10.1f us p50 %10.1f us p99%n", hit.getPercentile(0.5) / 1e3, hit.getPercentile(0.99) / 1e3);
+			System.out.printf("  loaded:             %10.1f ms p50 %10.1f ms p99%n", miss.getPercentile(0.5) / 1e6, miss.getPercentile(0.99) / 1e6);
+		}
+		finally {
+			for (String prefix : prefixes)
+				for (String kind : new String[] { "Rooms", "Objects", "Synonyms", "Test" })
+					Files.deleteIfExists(Path.of(prefix + kind + ".txt"));
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * Measures LOOK in the first rooms of a game: in the well house as the game
+	 * starts it (with the objects it starts with), after one of them has been
+	 * taken, and in the room outside, which has no objects.  Reports the time and
+	 * the bytes allocated per LOOK, with the session's output flushed to nowhere
+	 * every 64 looks.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param looks is the number of looks per room.
+	 */
+	public static void benchmarkLook(String game, int looks) throws Exception {
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+		System.out.println("Look: " + game + ", " + looks + " looks per room");
+		String[][] setups = { { "in" }, { "in", "take keys" }, {} };
+		String[] labels = { "room as it starts", "room changed", "room with no objects" };
+		for (int round = 0; round < 2; round++) { // the first round warms up
+			for (int i = 0; i < setups.length; i++) {
+				Adventure session = new Adventure(new Scanner(""), nullOutput());
+				session.start(world);
+				for (String command : setups[i]) session.execute(command);
+				long allocated = threads.getCurrentThreadAllocatedBytes();
+				long start = System.nanoTime();
+				for (int n = 0; n < looks; n++) {
+					session.executeLookCommand();
+					if ((n & 63) == 63) session.getOutput().flush();
+				}
+				long nanos = System.nanoTime() - start;
+				allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+				if (round == 1)
+					System.out.printf("  %-22s %8.1f ns/look %8.1f bytes allocated/look%n", labels[i],
+							nanos / (double) looks, allocated / (double) looks);
+			}
+		}
+	}
+
+	/**
+	 * Plays the game's test transcript, one game after another, with a command per
+	 * call and with the whole walkthrough as one batch: typed into play() a line
+	 * per command and as a single line of commands separated by ';', and fed to
+	 * execute() one command at a time and to executeBatch() all at once.  The
+	 * output is written to a pipe, at a system call per flush as with a socket,
+	 * and thrown away on the other end by a thread of its own.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param games is the number of games per measurement.
+	 */
+	public static void benchmarkBatch(String game, int games) throws Exception {
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		List<String> transcript = Files.readAllLines(Path.of(game + "Test.txt"));
+		List<String> commands = transcript.subList(1, transcript.size());
+		String lines = String.join("\n", commands) + "\n";
+		String line = String.join("; ", commands) + "\n";
+		String answer = commands.getLast(); // QUIT asks whether the player is sure
+		List<String> asked = commands.subList(0, commands.size() - 1);
+		System.out.println("Batch: " + games + " " + game + " games, " + commands.size() + " commands each");
+		Pipe pipe = Pipe.open();
+		Thread.ofPlatform().daemon().start(() -> {
+			ByteBuffer discarded = ByteBuffer.allocateDirect(1 << 16);
+			try {
+				while (pipe.source().read(discarded.clear()) >= 0) { }
+			}
+			catch (IOException exception) {
+				// The pipe has been closed.
+			}
+		});
+		Callable<AdvOutput> toPipe = () -> new AdvOutput.Channel(pipe.sink());
+
+		String[] labels = { "play, line per command", "play, one line", "execute per command", "executeBatch" };
+		for (int round = 0; round < 2; round++) { // the first round warms up
+			for (int i = 0; i < labels.length; i++) {
+				long start = System.nanoTime();
+				for (int g = 0; g < games; g++) {
+					switch (i) {
+						case 0 -> new Adventure(new Scanner(lines), toPipe.call()).play(world);
+						case 1 -> new Adventure(new Scanner(line), toPipe.call()).play(world);
+						case 2 -> {
+							Adventure session = new Adventure(new Scanner(answer), toPipe.call());
+							session.start(world);
+							for (String command : asked) session.execute(command);
+						}
+						default -> {
+							Adventure session = new Adventure(new Scanner(""), toPipe.call());
+							session.start(world);
+							session.executeBatch(commands);
+						}
+					}
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+				if (round == 1)
+					System.out.printf("  %-24s %10.0f commands/s %8.0f ns/command%n", labels[i],
+							(double) games * commands.size() / seconds, seconds * 1e9 / games / commands.size());
+			}
+		}
+		pipe.sink().close();
+	}
+
+	/**
+	 * Measures resolving typed words in generated worlds with growing numbers of
+	 * synonyms, whose made-up words of 4, 6 and 8 letters are close together.  For each, times building
+	 * the world's AdvWordTrie, then resolving words of its vocabulary typed in
+	 * full, without their last letter, with a letter changed, with two letters
+	 * swapped and one changed, and random words, and reports how many of the
+	 * mangled words were taken for the word meant (the rest being ambiguous or
+	 * too far off).  A few of the misspellings are also corrected by computing
+	 * their distance to every word, for comparison.
+	 * @param rooms is the number of rooms of each world.
+	 * @param lookups is the number of words resolved of each kind.
+	 * @param scanned is the number of misspellings corrected by scanning.
+	 * @param sizes is the number of synonyms of each world.
+	 */
+	public static void benchmarkWordTrie(int rooms, int lookups, int scanned, int... sizes) throws Exception {
+		Path folder = Files.createTempDirectory("adventure");
+		String prefix = folder.resolve("Words").toString();
+		System.out.println("Words: generated worlds of " + rooms + " rooms, " + lookups + " lookups of each kind");
+		String[] kinds = { "in full", "last letter cut", "one letter changed", "swap and change", "random" };
+		try {
+			for (int size : sizes) {
+				AdventureWorldGenerator.Settings settings = new AdventureWorldGenerator.Settings();
+				settings.rooms = rooms;
+				settings.synonyms = size;
+				AdventureWorldGenerator.generate(settings, prefix);
+				AdvWorld world = AdvWorld.readFromText(prefix);
+				Map<String, String> synonyms = world.getSynonyms();
+				HashMap<String, Integer> typeable = new HashMap<>();
+				for (String alias : synonyms.keySet()) typeable.put(alias, world.resolve(alias));
+				String[] vocabulary = typeable.keySet().toArray(new String[0]);
+				for (int warm = 0; warm < 3; warm++) new AdvWordTrie(typeable); // the world's was built cold
+				long start = System.nanoTime();
+				AdvWordTrie trie = new AdvWordTrie(typeable);
+				System.out.printf("  %d words: trie of %d nodes (%.1f MB) built in %.1f ms%n", vocabulary.length,
+						trie.getNodeCount(), trie.estimateSize() / 1e6, (System.nanoTime() - start) / 1e6);
+
+				SplittableRandom random = new SplittableRandom(size);
+				String[][] typed = new String[kinds.length][lookups];
+				int[] meant = new int[lookups];
+				for (int i = 0; i < lookups; i++) {
+					String word;
+					do word = vocabulary[random.nextInt(vocabulary.length)]; while (word.length() < 4);
+					meant[i] = typeable.get(word);
+					char[] letters = word.toCharArray();
+					typed[0][i] = word;
+					typed[1][i] = word.substring(0, word.length() - 1);
+					letters[random.nextInt(letters.length)] = (char) ('A' + random.nextInt(26));
+					typed[2][i] = new String(letters);
+					int at = random.nextInt(letters.length - 1);
+					char c = letters[at];
+					letters[at] = letters[at + 1];
+					letters[at + 1] = c;
+					typed[3][i] = new String(letters);
+					for (int j = 0; j < letters.length; j++) letters[j] = (char) ('A' + random.nextInt(26));
+					typed[4][i] = new String(letters);
+				}
+				for (int round = 0; round < 2; round++) { // the first round warms up
+					for (int k = 0; k < kinds.length; k++) {
+						int right = 0;
+						start = System.nanoTime();
+						for (int i = 0; i < lookups; i++)
+							if (world.resolve(typed[k][i]) == meant[i]) right++;
+						long nanos = System.nanoTime() - start;
+						if (round == 1)
+							System.out.printf("    %-20s %8.2f us/word, %5.1f%% taken for the word meant%n", kinds[k],
+									nanos / 1e3 / lookups, 100.0 * right / lookups);
+					}
+				}
+				start = System.nanoTime();
+				int right = 0;
+				for (int i = 0; i < scanned; i++) {
+					String closest = null;
+					int best = AdvWordTrie.MAX_EDITS + 1;
+					for (String word : vocabulary) {
+						int d = editDistance(typed[2][i], word);
+						if (d < best) {
+							best = d;
+							closest = word;
+						}
+					}
+					if (closest != null && typeable.get(closest) == meant[i]) right++;
+				}
+				System.out.printf("    %-20s %8.2f us/word, scanning every word (%d of %d right)%n", kinds[2],
+						(System.nanoTime() - start) / 1e3 / scanned, right, scanned);
+			}
+		}
+		finally {
+			for (String kind : new String[] { "Rooms", "Objects", "Synonyms", "Test" })
+				Files.deleteIfExists(Path.of(prefix + kind + ".txt"));
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * @return is the number of letters inserted, deleted, changed or swapped with
+	 * their neighbour it takes to turn one word into the other.
+	 */
+	private static int editDistance(String a, String b) {
+		int[][] d = new int[a.length() + 1][b.length() + 1];
+		for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+		for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+		for (int i = 1; i <= a.length(); i++) {
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+				d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+				if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+					d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+
+	/**
+	 * Writes the rooms of a world to a rooms file as many times as it takes to get
+	 * to roomCount rooms, each copy numbered after the one before it and its exits
+	 * leading within itself.
+	 * @return is the number of copies written.
+	 */
+	private static int writeCopiedRooms(AdvWorld world, int roomCount, Path file) throws IOException {
+		List<AdvRoom> rooms = world.getRooms();
+		int copies = (roomCount + rooms.size() - 1) / rooms.size();
+		try (BufferedWriter out = Files.newBufferedWriter(file)) {
+			for (int copy = 0; copy < copies; copy++) {
+				int first = copy * rooms.size();
+				for (AdvRoom r : rooms) {
+					out.write((first + r.getRoomIndex() + 1) + "\n" + r.getName() + "\n");
+					for (String line : r.getDescription()) out.write(line + "\n");
+					out.write("-----\n");
+					for (AdvMotionTableEntry e : r.getMotionTable()) {
+						int destination = e.getDestinationRoom();
+						out.write(e.getDirection() + " " + ((destination < 0) ? 0 : first + destination + 1));
+						out.write((e.getKeyName() == null) ? "\n" : "/" + e.getKeyName() + "\n");
+					}
+					out.write("\n");
+				}
+			}
+		}
+		return copies;
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Measures the size of a saved game and how long it takes to write and read
+	 * it, for a game that has only entered the first room and for one that has
+	 * played most of the game's test transcript.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param rounds is the number of snapshots written and read for each game.
+	 */
+	public static void benchmarkSessionSnapshot(String game, int rounds) throws Exception {
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		List<String> transcript = Files.readAllLines(Path.of(game + "Test.txt"));
+		System.out.println("Session snapshot: " + game + ", " + rounds + " rounds");
+
+		Adventure fresh = new Adventure(new Scanner(""), nullOutput());
+		fresh.start(world);
+		Adventure played = new Adventure(new Scanner(""), nullOutput());
+		played.start(world);
+		for (String line : transcript.subList(1, transcript.size() - 10)) played.execute(line);
+
+		ByteBuffer buffer = ByteBuffer.allocate(AdvSessionSnapshot.maxSize(world));
+		for (Adventure session : List.of(fresh, played)) {
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < rounds; i++) {
+					buffer.clear();
+					AdvSessionSnapshot.write(session, buffer);
+				}
+				double write = (System.nanoTime() - start) / (double) rounds;
+				int size = buffer.position();
+
+				start = System.nanoTime();
+				for (int i = 0; i < rounds; i++) {
+					buffer.rewind();
+					AdvSessionSnapshot.read(session, buffer);
+				}
+				double read = (System.nanoTime() - start) / (double) rounds;
+				System.out.printf("  %-7s round %d: %4d bytes, write %6.1f ns, read %6.1f ns%n",
+						(session == fresh) ? "fresh" : "played", round + 1, size, write, read);
+			}
+		}
+	}
+
+	/**
+	 * Plays the first part of the game's test transcript in many sessions at once,
+	 * each on its own virtual thread, first without and then with a journal, and
+	 * reports the journal's batching.  Then measures rebuilding the sessions from
+	 * the journal, before and after a checkpoint.  Last, plays the sessions again
+	 * with a checkpoint every few milliseconds, and checks that the journal brings
+	 * back every game in the state it was left in.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param sessions is the number of sessions playing at once.
+	 */
+	public static void benchmarkJournal(String game, int sessions) throws Exception {
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		List<String> transcript = Files.readAllLines(Path.of(game + "Test.txt"));
+		List<String> commands = transcript.subList(1, transcript.size() / 2);
+		Path directory = Files.createTempDirectory("journal");
+		System.out.println("Journal: " + sessions + " " + game + " sessions, " + commands.size() + " commands each, in " + directory);
+
+		for (int round = 0; round < 2; round++) {
+			double seconds = playJournalled(world, commands, sessions, null, null);
+			System.out.printf("  %-22s %10.0f commands/s%n", "no journal", sessions * commands.size() / seconds);
+		}
+		AdvJournal journal = AdvJournal.open(directory);
+		double seconds = playJournalled(world, commands, sessions, journal, null);
+		System.out.printf("  %-22s %10.0f commands/s, %d records in %d forced batches (%.0f records/batch)%n",
+				"journal", sessions * commands.size() / seconds, journal.getRecordCount(), journal.getBatchCount(),
+				journal.getRecordCount() / (double) journal.getBatchCount());
+
+		long start = System.nanoTime();
+		journal.close();
+		AdvJournal recovered = AdvJournal.open(directory);
+		System.out.printf("  %-22s %10.1f ms for %d sessions%n", "recovery",
+				(System.nanoTime() - start) / 1e6, recovered.getRecovered().size());
+
+		for (AdvJournal.Recovered r : recovered.getRecovered()) {
+			Adventure session = new Adventure(new Scanner(""), nullOutput());
+			session.start(AdvWorldCache.shared().get(r.gameDirectory()));
+			AdvSessionSnapshot.read(session, ByteBuffer.wrap(r.state()));
+			recovered.register(session, r.id());
+		}
+		start = System.nanoTime();
+		recovered.checkpoint();
+		System.out.printf("  %-22s %10.1f ms%n", "checkpoint", (System.nanoTime() - start) / 1e6);
+		start = System.nanoTime();
+		recovered.close();
+		AdvJournal reopened = AdvJournal.open(directory);
+		System.out.printf("  %-22s %10.1f ms for %d sessions%n", "recovery after it",
+				(System.nanoTime() - start) / 1e6, reopened.getRecovered().size());
+
+		reopened.checkpoint(); // drops the games recovered above, which nobody claims
+		reopened.checkpointEvery(Duration.ofMillis(5));
+		Map<Long, Adventure> live = new ConcurrentHashMap<>();
+		playJournalled(world, commands, sessions, reopened, live);
+		reopened.close();
+		AdvJournal checked = AdvJournal.open(directory);
+		for (AdvJournal.Recovered r : checked.getRecovered()) {
+			Adventure session = new Adventure(new Scanner(""), nullOutput());
+			session.start(AdvWorldCache.shared().get(r.gameDirectory()));
+			AdvSessionSnapshot.read(session, ByteBuffer.wrap(r.state()));
+			Adventure played = live.get(r.id());
+			if (played == null || !sameState(played, session))
+				throw new IllegalStateException("Session " + r.id() + " was recovered in another state than it was left in");
+		}
+		if (checked.getRecovered().size() != live.size())
+			throw new IllegalStateException(live.size() - checked.getRecovered().size() + " sessions were not recovered");
+		checked.close();
+		System.out.printf("  %-22s %10d checkpoints while playing, all %d sessions recovered as left%n",
+				"checkpointed", reopened.getCheckpointCount() - 1, live.size());
+
+		try (var files = Files.list(directory)) {
+			for (Path p : files.toList()) Files.delete(p);
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Plays the commands in many sessions at once, each on its own virtual thread.
+	 * @param journal is the journal to register the sessions with, or null.
+	 * @param registered is where to put each session under its journal id, or null.
+	 * @return is the seconds it took.
+	 */
+	private static double playJournalled(AdvWorld world, List<String> commands, int sessions, AdvJournal journal,
+			Map<Long, Adventure> registered) throws Exception {
+		Thread[] threads = new Thread[sessions];
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			threads[i] = Thread.ofVirtual().start(() -> {
+				Adventure session = new Adventure(new Scanner(""), nullOutput());
+				session.start(world);
+				try {
+					if (journal != null) {
+						long id = journal.register(session);
+						if (registered != null) registered.put(id, session);
+					}
+				}
+				catch (IOException exception) {
+					throw new UncheckedIOException(exception);
+				}
+				for (String line : commands) session.execute(line);
+			});
+		}
+		for (Thread t : threads) t.join();
+		return (System.nanoTime() - start) / 1e9;
+	}
+
+	/**
+	 * @return is whether two games of the same world are in the same state: in
+	 * the same room, with the same rooms visited and the same objects in the same
+	 * order at every location.
+	 */
+	private static boolean sameState(Adventure a, Adventure b) {
+		if (a.getRoomIndex() != b.getRoomIndex() || !a.getVisited().equals(b.getVisited())) return false;
+		ArrayList<AdvObject> here = new ArrayList<>(), there = new ArrayList<>();
+		for (int where = AdvObjectPlacement.INVENTORY; where < a.getWorld().getRooms().size(); where++) {
+			if (where == AdvObjectPlacement.INVENTORY + 1) continue; // not a location
+			here.clear();
+			there.clear();
+			a.getPlacement().collect(where, here);
+			b.getPlacement().collect(where, there);
+			if (!here.equals(there)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Measures what the metrics cost: the game's test transcript is played in a
+	 * loop, in rounds that alternate between measuring and not, and the time per
+	 * command of each is compared.  The figures collected are printed at the end.
+	 * @param game is the path prefix of the game, e.g. "Crowther".
+	 * @param replays is the number of times the transcript is played per round.
+	 */
+	public static void benchmarkMetrics(String game, int replays) throws Exception {
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		List<String> transcript = Files.readAllLines(Path.of(game + "Test.txt"));
+		List<String> commands = transcript.subList(1, transcript.size() - 10); // stop short of winning
+		AdvOutput out = nullOutput();
+		System.out.println("Metrics overhead: " + game + ", " + replays + " replays of " + commands.size() + " commands per round");
+
+		double[] best = { Double.MAX_VALUE, Double.MAX_VALUE };
+		for (int round = -2; round < 20; round++) { // the first two warm up
+			boolean measured = (round % 2 == 0);
+			AdvMetrics.setEnabled(measured);
+			long start = System.nanoTime();
+			for (int i = 0; i < replays; i++) {
+				Adventure session = new Adventure(new Scanner(""), out);
+				session.start(world);
+				for (String line : commands) session.execute(line);
+			}
+			double perCommand = (System.nanoTime() - start) / (double) replays / commands.size();
+			if (round < 0) continue;
+			best[measured ? 1 : 0] = Math.min(best[measured ? 1 : 0], perCommand);
+			System.out.printf("  round %2d: metrics %-3s %7.1f ns/command%n", round + 1, measured ? "on" : "off", perCommand);
+		}
+		AdvMetrics.setEnabled(true);
+		System.out.printf("  best: off %.1f ns, on %.1f ns, overhead %.1f%%%n", best[0], best[1], 100 * (best[1] / best[0] - 1));
+		System.out.print(AdvMetrics.snapshot());
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * File: AdventureLoadClient.java
+ * ------------------------------
+ * Plays a transcript over many connections to an AdventureServer at once.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Class: AdventureLoadClient */
+/**
+ * This program opens many connections to an AdventureServer on this machine and
+ * plays the same transcript on each, like SmallTest.txt without its first line
+ * (which names the game, and the server only serves one).  Each connection sends
+ * a command, waits for the whole reply (up to the prompt) and only then sends
+ * the next one, so the time between the two is what a player would see.
+ *
+ * Usage: java AdventureLoadClient [--port n] [--connections n] transcript
+ *
+ * The program reports commands per second, the latency of a command at several
+ * percentiles, and the connections that failed.
+ */
+
+public class AdventureLoadClient {
+
+	private static final byte[] PROMPT = AdventureServer.PROMPT.getBytes(StandardCharsets.UTF_8);
+
+	public static void main(String[] args) throws Exception {
+		int port = 4000, connections = 10_000;
+		String transcript = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--port" -> port = Integer.parseInt(args[++i]);
+				case "--connections" -> connections = Integer.parseInt(args[++i]);
+				default -> transcript = args[i];
+			}
+		}
+		if (transcript == null) {
+			System.out.println("Usage: java AdventureLoadClient [--port n] [--connections n] transcript");
+			System.exit(2);
+		}
+		List<String> lines = Files.readAllLines(Path.of(transcript));
+		List<String> commands = lines.subList(1, lines.size());
+
+		InetSocketAddress server = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		long[][] latencies = new long[connections][];
+		AtomicInteger failures = new AtomicInteger();
+		Semaphore connecting = new Semaphore(1024); // stay within the server's accept backlog
+		Thread[] threads = new Thread[connections];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < connections; i++) {
+			int connection = i;
+			threads[i] = Thread.ofVirtual().start(() -> {
+				try {
+					latencies[connection] = play(server, commands, connecting);
+				}
+				catch (IOException exception) {
+					failures.incrementAndGet();
+				}
+			});
+		}
+		for (Thread t : threads) t.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		int count = 0;
+		for (long[] l : latencies) if (l != null) count += l.length;
+		long[] all = new long[count];
+		count = 0;
+		for (long[] l : latencies) {
+			if (l == null) continue;
+			System.arraycopy(l, 0, all, count, l.length);
+			count += l.length;
+		}
+		Arrays.sort(all);
+
+		System.out.printf("%d connections, %d commands in %.2f s: %.0f commands/s%n",
+				connections, all.length, seconds, all.length / seconds);
+		if (all.length > 0)
+			System.out.printf("latency per command: p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+					percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6,
+					percentile(all, 0.999) / 1e6, all[all.length - 1] / 1e6);
+		System.out.println(failures.get() + " connection(s) failed");
+		if (failures.get() > 0) System.exit(1);
+	}
+
+	/**
+	 * Plays the commands over one connection.
+	 * @return is the latency of each command that got a reply, in nanoseconds.
+	 */
+	private static long[] play(InetSocketAddress server, List<String> commands, Semaphore connecting) throws IOException {
+		Socket socket = new Socket();
+		connecting.acquireUninterruptibly();
+		try {
+			socket.connect(server);
+		}
+		catch (IOException exception) {
+			socket.close();
+			throw exception;
+		}
+		finally {
+			connecting.release();
+		}
+
+		try (socket) {
+			socket.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			if (!readReply(in)) throw new EOFException("The server closed the connection at once");
+
+			long[] latencies = new long[commands.size()];
+			int done = 0;
+			for (String command : commands) {
+				long sent = System.nanoTime();
+				out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+				boolean more = readReply(in);
+				latencies[done++] = System.nanoTime() - sent;
+				if (!more) break; // the game is over, so the rest of the transcript is not played.
+			}
+			return Arrays.copyOf(latencies, done);
+		}
+	}
+
+	/**
+	 * Reads one reply, up to the prompt that ends it.  The prompt is the only text
+	 * that starts a line with "> ".
+	 * @return is false if the connection was closed instead.
+	 */
+	private static boolean readReply(InputStream in) throws IOException {
+		int matched = 0;
+		boolean lineStart = true;
+		for (int b; (b = in.read()) >= 0; ) {
+			if (matched < PROMPT.length && b == PROMPT[matched] && (matched > 0 || lineStart)) {
+				if (++matched == PROMPT.length) return true;
+			}
+			else matched = 0;
+			lineStart = (b == '\n');
+		}
+		return false;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * File: AdventureReplay.java
+ * --------------------------
+ * Replays a folder of transcripts headlessly and checks their output.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Class: AdventureReplay */
+/**
+ * This program replays every transcript in a folder, each in its own session,
+ * on all cores at once, and compares the output of each with its golden file.
+ * A transcript is any .txt file; like SmallTest.txt, its first line names the
+ * game (relative to the folder the program is run from) and the other lines are
+ * the player's input.  The golden file of X.txt is X.golden next to it.
+ *
+ * Usage: java AdventureReplay [--update] folder
+ *
+ * With --update, missing or different golden files are (re)written from the
+ * current output instead of being reported.  The program reports commands per
+ * second, the latency of each transcript and every mismatch, and exits with
+ * status 1 if there was any mismatch or failure.
+ */
+
+public class AdventureReplay {
+
+	/**
+	 * The outcome of replaying one transcript.
+	 */
+	public static class Result {
+		Path transcript;
+		int commands;
+		long nanos;
+		String problem; // null if the output matched its golden file
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean update = args.length > 0 && args[0].equals("--update");
+		if (args.length != (update ? 2 : 1)) {
+			System.out.println("Usage: java AdventureReplay [--update] folder");
+			System.exit(2);
+		}
+
+		List<Path> transcripts;
+		try (var files = Files.list(Path.of(args[args.length - 1]))) {
+			transcripts = files.filter(p -> p.toString().endsWith(".txt")).sorted().toList();
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		List<Result> results = replayAll(transcripts, threads, update);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long commands = 0;
+		long[] latencies = new long[results.size()];
+		int failures = 0;
+		for (int i = 0; i < results.size(); i++) {
+			Result r = results.get(i);
+			commands += r.commands;
+			latencies[i] = r.nanos;
+			System.out.printf("%-40s %5d commands %9.2f ms%s%n", r.transcript.getFileName(), r.commands,
+					r.nanos / 1e6, (r.problem == null) ? "" : "  MISMATCH: " + r.problem);
+			if (r.problem != null) failures++;
+		}
+		Arrays.sort(latencies);
+
+		System.out.printf("%d transcripts on %d threads in %.2f s: %.0f commands/s%n",
+				results.size(), threads, seconds, commands / seconds);
+		if (latencies.length > 0)
+			System.out.printf("latency per transcript: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+					percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+					latencies[latencies.length - 1] / 1e6);
+		System.out.println(failures + " mismatch(es)");
+		if (failures > 0) System.exit(1);
+	}
+
+	/* Method: replayAll(transcripts, threads, update) */
+	/**
+	 * Replays transcripts concurrently and checks them against their golden files.
+	 *
+	 * @usage List<Result> results = AdventureReplay.replayAll(transcripts, threads, update);
+	 * @param transcripts is the transcripts to replay.
+	 * @param threads is the number of transcripts replayed at the same time.
+	 * @param update is true to write golden files instead of reporting differences.
+	 * @return is one result per transcript, in the same order.
+	 */
+	public static List<Result> replayAll(List<Path> transcripts, int threads, boolean update) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Callable<Result>> tasks = new ArrayList<>();
+			for (Path t : transcripts)
+				tasks.add(() -> replay(t, update));
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> f : pool.invokeAll(tasks)) {
+				try { results.add(f.get()); }
+				catch (ExecutionException exception) { throw new IllegalStateException(exception.getCause()); }
+			}
+			return results;
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/* Method: replay(transcript, update) */
+	/**
+	 * Replays one transcript in a new session and checks its output.
+	 *
+	 * @usage Result r = AdventureReplay.replay(transcript, update);
+	 * @param transcript is the transcript to replay.
+	 * @param update is true to write the golden file instead of reporting differences.
+	 * @return is the outcome of the replay.
+	 */
+	public static Result replay(Path transcript, boolean update) throws IOException {
+		Result result = new Result();
+		result.transcript = transcript;
+		String input = Files.readString(transcript);
+		result.commands = (int) Math.max(0, input.lines().count() - 1);
+
+		AdvOutput.Memory out = new AdvOutput.Memory();
+		long start = System.nanoTime();
+		try {
+			new Adventure(new Scanner(input), out).play();
+		}
+		catch (RuntimeException exception) {
+			result.nanos = System.nanoTime() - start;
+			result.problem = "the game failed with " + exception;
+			return result;
+		}
+		result.nanos = System.nanoTime() - start;
+
+		Path golden = goldenFile(transcript);
+		String actual = out.getText();
+		if (!Files.exists(golden)) {
+			if (update) Files.writeString(golden, actual);
+			else result.problem = "there is no " + golden.getFileName();
+		}
+		else {
+			String expected = Files.readString(golden);
+			if (!expected.equals(actual)) {
+				if (update) Files.writeString(golden, actual);
+				else result.problem = firstDifference(expected, actual);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return is the golden file of a transcript: X.txt has X.golden.
+	 */
+	public static Path goldenFile(Path transcript) {
+		String name = transcript.getFileName().toString();
+		return transcript.resolveSibling(name.substring(0, name.length() - ".txt".length()) + ".golden");
+	}
+
+	/**
+	 * Describes the first line on which two outputs differ.
+	 */
+	private static String firstDifference(String expected, String actual) {
+		String[] e = expected.split("\n", -1);
+		String[] a = actual.split("\n", -1);
+		int line = 0;
+		while (line < e.length && line < a.length && e[line].equals(a[line])) line++;
+		String want = (line < e.length) ? "\"" + e[line] + "\"" : "end of output";
+		String got = (line < a.length) ? "\"" + a[line] + "\"" : "end of output";
+		return "line " + (line + 1) + ": expected " + want + " but got " + got;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * File: AdventureServer.java
+ * --------------------------
+ * Lets remote players play a game over TCP, one line of text at a time.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Class: AdventureServer */
+/**
+ * This program serves one game to players connecting over TCP.  Each connection
+ * is a session of its own, running on a virtual thread that blocks on the socket
+ * like the console game blocks on System.in, so tens of thousands of players
+ * cost tens of thousands of small stacks rather than threads.
+ *
+ * The protocol is the console game's: the player sends one command per line,
+ * and the game's reply is sent, followed by the prompt "> ", once it is waiting
+ * for the next line.  A reply and its prompt go out in one write, so a client
+ * that has read up to the prompt has read the whole reply.  The last reply of a
+ * game has no prompt; the connection is closed after it.  It is also closed when
+ * the player sends a line longer than the line limit, or sends nothing for the
+ * idle timeout.
+ *
+ * Usage: java AdventureServer [--port n] [--max-connections n] [--max-line n]
+ *                             [--idle-seconds n] [--metrics-seconds n] [--watch] game
+ *
+ * With --metrics-seconds, the server prints its metrics (see AdvMetrics) and
+ * those of its world cache (see AdvWorldCache) that often.  With --watch, the
+ * game is reloaded whenever its files change (see AdvWorldWatcher); players
+ * already connected move onto the new version.
+ *
+ * The server only listens on the loopback address.
+ */
+
+public class AdventureServer implements Closeable {
+
+	/** The text that ends every reply the player is expected to answer */
+	public static final String PROMPT = "> ";
+
+	private volatile AdvWorld world; // moved on to the newest version as players connect
+	private final ServerSocket listener;
+	private final Semaphore slots;
+	private final int maxLine;
+	private final int idleMillis;
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong refused = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong overLong = new AtomicLong();
+	private Thread acceptor;
+
+	public static void main(String[] args) throws IOException {
+		int port = 4000, maxConnections = 50_000, maxLine = 256, idleSeconds = 300, metricsSeconds = 0;
+		boolean watch = false;
+		String game = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--port" -> port = Integer.parseInt(args[++i]);
+				case "--max-connections" -> maxConnections = Integer.parseInt(args[++i]);
+				case "--max-line" -> maxLine = Integer.parseInt(args[++i]);
+				case "--idle-seconds" -> idleSeconds = Integer.parseInt(args[++i]);
+				case "--metrics-seconds" -> metricsSeconds = Integer.parseInt(args[++i]);
+				case "--watch" -> watch = true;
+				default -> game = args[i];
+			}
+		}
+		if (game == null) {
+			System.out.println("Usage: java AdventureServer [--port n] [--max-connections n] [--max-line n] [--idle-seconds n] [--metrics-seconds n] [--watch] game");
+			System.exit(2);
+		}
+
+		AdvWorld world = AdvWorldCache.shared().get(game);
+		if (world == null) {
+			System.out.println(game + " did not have a Rooms file!");
+			System.exit(1);
+		}
+		AdventureServer server = new AdventureServer(world, port, maxConnections, maxLine, idleSeconds * 1000);
+		server.start();
+		System.out.println("Serving " + game + " on " + server.getAddress());
+		if (watch) new AdvWorldWatcher(AdvWorldCache.shared(), game, System.out::println);
+
+		if (metricsSeconds > 0) {
+			long period = metricsSeconds * 1000L;
+			Thread.ofPlatform().daemon().name("adventure-metrics").start(() -> {
+				try {
+					while (true) {
+						Thread.sleep(period);
+						System.out.print(AdvMetrics.snapshot());
+						System.out.println(AdvWorldCache.shared());
+					}
+				}
+				catch (InterruptedException exception) {
+					// The server is going away.
+				}
+			});
+		}
+	}
+
+	/* Constructor: AdventureServer(world, port, maxConnections, maxLine, idleMillis) */
+	/**
+	 * Creates a server listening on the loopback address.  It does not accept
+	 * connections until it is started.
+	 *
+	 * @param world is the world every player plays.
+	 * @param port is the port to listen on, or 0 for any free port.
+	 * @param maxConnections is the most players connected at once; others are turned away.
+	 * @param maxLine is the longest line, in bytes, a player may send.
+	 * @param idleMillis is how long a player may send nothing before being disconnected.
+	 */
+	public AdventureServer(AdvWorld world, int port, int maxConnections, int maxLine, int idleMillis) throws IOException {
+		this.world = world;
+		this.slots = new Semaphore(maxConnections);
+		this.maxLine = maxLine;
+		this.idleMillis = idleMillis;
+		listener = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Starts accepting connections on a thread of its own.
+	 */
+	public void start() {
+		acceptor = Thread.ofPlatform().name("adventure-acceptor").start(this::acceptConnections);
+	}
+
+	/**
+	 * @return is the address the server listens on.
+	 */
+	public InetSocketAddress getAddress() {
+		return (InetSocketAddress) listener.getLocalSocketAddress();
+	}
+
+	/**
+	 * @return is the number of connections accepted, refused because the server
+	 * was full, closed for being idle, and closed for sending an overlong line.
+	 */
+	public long[] getCounts() {
+		return new long[] { accepted.get(), refused.get(), timedOut.get(), overLong.get() };
+	}
+
+	/**
+	 * Stops accepting connections.  Players already connected go on playing.
+	 */
+	public void close() throws IOException {
+		listener.close();
+		if (acceptor != null) {
+			try { acceptor.join(); }
+			catch (InterruptedException exception) { Thread.currentThread().interrupt(); }
+		}
+	}
+
+	private void acceptConnections() {
+		while (!listener.isClosed()) {
+			Socket socket;
+			try {
+				socket = listener.accept();
+			}
+			catch (IOException exception) {
+				if (listener.isClosed()) return;
+				continue; // e.g. the client gave up before it was accepted.
+			}
+			if (!slots.tryAcquire()) {
+				refused.incrementAndGet();
+				Thread.ofVirtual().start(() -> refuse(socket));
+				continue;
+			}
+			accepted.incrementAndGet();
+			Thread.ofVirtual().start(() -> {
+				try { serve(socket); }
+				finally { slots.release(); }
+			});
+		}
+	}
+
+	private static void refuse(Socket socket) {
+		try (socket) {
+			socket.getOutputStream().write("The cave is full.  Please come back later.\n".getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException exception) {
+			// They are turned away either way.
+		}
+	}
+
+	/**
+	 * Plays one connection's game until it ends or the connection is closed.
+	 */
+	private void serve(Socket socket) {
+		try (socket) {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(idleMillis);
+			SocketOutput out = new SocketOutput(socket.getOutputStream());
+			LineLimitInputStream in = new LineLimitInputStream(socket.getInputStream(), maxLine, out);
+			try {
+				AdvWorld newest = world.getNewest();
+				world = newest;
+				new Adventure(new Scanner(in, StandardCharsets.UTF_8), out).play(newest);
+				out.send(false);
+			}
+			catch (NoSuchElementException endOfInput) {
+				// The Scanner swallows I/O errors; find out whether it was one of ours:
+				if (in.failure instanceof SocketTimeoutException) {
+					timedOut.incrementAndGet();
+					out.println("You have been idle for too long.  Goodbye!");
+				}
+				else if (in.failure instanceof LineTooLongException) {
+					overLong.incrementAndGet();
+					out.println("That line is too long.  Goodbye!");
+				}
+				out.flush();
+				out.send(false);
+			}
+		}
+		catch (IOException | UncheckedIOException exception) {
+			// The player went away; their game goes with them.
+		}
+	}
+
+	/**
+	 * Thrown by LineLimitInputStream when a line is longer than allowed.
+	 */
+	private static class LineTooLongException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		LineTooLongException(int limit) {
+			super("line longer than " + limit + " bytes");
+		}
+	}
+
+	/**
+	 * An input stream that fails once a line longer than a limit comes through,
+	 * and remembers why it failed, since Scanner does not pass the reason on.
+	 * Before it waits for the player, it sends them the reply so far.
+	 */
+	private static class LineLimitInputStream extends FilterInputStream {
+		private final int limit;
+		private final SocketOutput reply;
+		private int lineLength;
+		IOException failure;
+
+		LineLimitInputStream(InputStream in, int limit, SocketOutput reply) {
+			super(in);
+			this.limit = limit;
+			this.reply = reply;
+		}
+
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				if (in.available() == 0) reply.send(true);
+				int n = super.read(b, off, len);
+				for (int i = off; i < off + n; i++) {
+					if (b[i] == '\n') lineLength = 0;
+					else if (++lineLength > limit) throw new LineTooLongException(limit);
+				}
+				return n;
+			}
+			catch (IOException exception) {
+				failure = exception;
+				throw exception;
+			}
+		}
+	}
+
+	/**
+	 * The output of one connection.  What the game flushes is held until the game
+	 * waits for input or ends, and is then sent with a single write.
+	 */
+	private static class SocketOutput extends AdvOutput {
+		private final OutputStream socket;
+		private final StringBuilder reply = new StringBuilder();
+
+		SocketOutput(OutputStream socket) {
+			this.socket = socket;
+		}
+
+		protected void write(CharSequence text) {
+			reply.append(text);
+		}
+
+		/**
+		 * Sends the reply held so far, if any.
+		 * @param prompt is true to end it with the prompt.
+		 */
+		void send(boolean prompt) throws IOException {
+			if (prompt) reply.append(PROMPT);
+			if (reply.isEmpty()) return;
+			socket.write(reply.toString().getBytes(StandardCharsets.UTF_8));
+			reply.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,498 @@
+/*
+ * File: AdventureWorldGenerator.java
+ * ----------------------------------
+ * Writes synthetic games of any size, with a walkthrough, for scale testing.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/* Class: AdventureWorldGenerator */
+/**
+ * This program writes the ...Rooms.txt, ...Objects.txt, ...Synonyms.txt and
+ * ...Test.txt files of a made-up game, in the formats the game reads, so that
+ * the loader and the engine can be tried on worlds far larger than the bundled
+ * ones.
+ *
+ * The world is built around a path through every room in order: room n has an
+ * exit to room n + 1, and the last room has one out of the cave, which wins the
+ * game.  The other exits (up to the branching factor) lead to rooms picked at
+ * random.  Some exits along the path need a key, which lies a few rooms earlier
+ * and may have an exit without a key in the same direction to fall back on.
+ * Some rooms on the path only have a FORCED exit to the next room, in chains
+ * no longer than a given length.  Objects are scattered at random, and some
+ * words are given made-up synonyms.
+ *
+ * The test file walks the path: it takes each key where it lies and drops it
+ * once it has been used, picks up some of the other objects it passes and drops
+ * them again in the next room, now and then looks around or takes inventory, and
+ * uses the synonyms as often as the canonical words.  Its last move wins the
+ * game.  With --check, the walkthrough is replayed after the files are written,
+ * checking the room and the number of objects carried after every line.
+ *
+ * Usage: java AdventureWorldGenerator [options] prefix
+ *
+ *   --rooms n            number of rooms (1000)
+ *   --branching n        exits per room, counting the one along the path (3)
+ *   --keyed p            fraction of the exits along the path that need a key (0.05)
+ *   --forced p           fraction of the rooms that only have a FORCED exit (0.02)
+ *   --forced-length n    longest chain of FORCED rooms (3)
+ *   --objects p          objects per room, besides the keys (0.2)
+ *   --directions n       number of direction words (12)
+ *   --synonyms n         number of made-up synonyms (20)
+ *   --lines n            lines of description per room (3)
+ *   --seed n             seed of the random choices (1)
+ *   --check              replay the walkthrough once the files are written
+ *
+ * The prefix is where the files go, e.g. "target/Big" writes target/BigRooms.txt
+ * and so on, and is the first line of the test file, which names the game.
+ */
+
+public class AdventureWorldGenerator {
+
+	private static final String[] STANDARD_DIRECTIONS = {
+		"NORTH", "SOUTH", "EAST", "WEST", "UP", "DOWN", "IN", "OUT", "NE", "NW", "SE", "SW"
+	};
+	private static final String[] STANDARD_ALIASES = { "N", "S", "E", "W", "U", "D" };
+	private static final String[] RESERVED = {
+		"QUIT", "HELP", "INVENTORY", "LOOK", "TAKE", "DROP", "SAVE", "RESTORE", "HINT", "GOTO", "FORCED", "Q", "Y", "I", "L"
+	};
+	private static final String[] PLACES = {
+		"hall", "cave", "passage", "chamber", "room", "tunnel", "pit", "canyon", "grotto", "crawl"
+	};
+	private static final String CONSONANTS = "BCDFGHJKLMNPRSTVZ";
+	private static final String VOWELS = "AEIOU";
+
+	/**
+	 * The shape of a generated world; see the class comment for what each field
+	 * means.
+	 */
+	public static class Settings {
+		public int rooms = 1000;
+		public int branching = 3;
+		public double keyed = 0.05;
+		public double forced = 0.02;
+		public int forcedLength = 3;
+		public double objects = 0.2;
+		public int directions = 12;
+		public int synonyms = 20;
+		public int lines = 3;
+		public long seed = 1;
+	}
+
+	/**
+	 * What a generated game's walkthrough should do, line by line: the room the
+	 * player should be in, and the number of objects they should carry, after
+	 * each line of the test file.
+	 */
+	public static class Walkthrough {
+		String[] commands;
+		int[] rooms;
+		int[] carried;
+		int objectCount;
+		int synonymCount;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Settings settings = new Settings();
+		boolean check = false;
+		String prefix = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--rooms" -> settings.rooms = Integer.parseInt(args[++i]);
+				case "--branching" -> settings.branching = Integer.parseInt(args[++i]);
+				case "--keyed" -> settings.keyed = Double.parseDouble(args[++i]);
+				case "--forced" -> settings.forced = Double.parseDouble(args[++i]);
+				case "--forced-length" -> settings.forcedLength = Integer.parseInt(args[++i]);
+				case "--objects" -> settings.objects = Double.parseDouble(args[++i]);
+				case "--directions" -> settings.directions = Integer.parseInt(args[++i]);
+				case "--synonyms" -> settings.synonyms = Integer.parseInt(args[++i]);
+				case "--lines" -> settings.lines = Integer.parseInt(args[++i]);
+				case "--seed" -> settings.seed = Long.parseLong(args[++i]);
+				case "--check" -> check = true;
+				default -> prefix = args[i];
+			}
+		}
+		if (prefix == null) {
+			System.out.println("Usage: java AdventureWorldGenerator [--rooms n] [--branching n] [--keyed p] [--forced p] [--forced-length n]");
+			System.out.println("                                    [--objects p] [--directions n] [--synonyms n] [--lines n] [--seed n] [--check] prefix");
+			System.exit(2);
+		}
+
+		long start = System.nanoTime();
+		Walkthrough walkthrough = generate(settings, prefix);
+		System.out.printf("Wrote %d rooms, %d objects, %d synonyms and a walkthrough of %d lines in %.2f s%n",
+				settings.rooms, walkthrough.objectCount, walkthrough.synonymCount, walkthrough.commands.length,
+				(System.nanoTime() - start) / 1e9);
+
+		if (check) {
+			start = System.nanoTime();
+			String problem = check(prefix, walkthrough);
+			System.out.printf("%s in %.2f s%n", (problem == null) ? "The walkthrough wins the game" : problem,
+					(System.nanoTime() - start) / 1e9);
+			if (problem != null) System.exit(1);
+		}
+	}
+
+	/* Method: generate(settings, prefix) */
+	/**
+	 * Writes the four files of a game.
+	 *
+	 * @usage Walkthrough walkthrough = AdventureWorldGenerator.generate(settings, prefix);
+	 * @param settings is the shape of the world.
+	 * @param prefix is the path prefix of the files, which also names the game.
+	 * @return is what the walkthrough in the test file should do.
+	 */
+	public static Walkthrough generate(Settings settings, String prefix) throws IOException {
+		if (settings.rooms < 1) throw new IllegalArgumentException("A world needs at least one room");
+		if (settings.directions < 2 || settings.directions < settings.branching)
+			throw new IllegalArgumentException("There must be at least two directions and one per exit of a room");
+		return new AdventureWorldGenerator(settings).write(prefix);
+	}
+
+	private final Settings settings;
+	private final SplittableRandom random;
+	private final Set<String> words = new HashSet<>(); // every word used so far, so that none is used twice
+	private final String[] directions;
+	private final String[] sentences = new String[256];
+	private final Map<String, List<String>> aliases = new HashMap<>();
+
+	// The path, worked out before anything is written, indexed by room:
+	private final int n;
+	private final boolean[] forced;
+	private final int[] pathDirection;
+	private final int[] pathKey;        // the object needed to take the exit along the path, or -1
+	private final int[] firstObject;    // the first of the objects lying in the room, or -1
+
+	// The objects, indexed by object; the keys come first:
+	private final ArrayList<String> objectNames = new ArrayList<>();
+	private int keyCount;
+	private final IntList objectRooms = new IntList();
+	private final IntList nextObject = new IntList(); // the next object lying in the same room, or -1
+
+	private AdventureWorldGenerator(Settings settings) {
+		this.settings = settings;
+		this.random = new SplittableRandom(settings.seed);
+		this.n = settings.rooms;
+		forced = new boolean[n];
+		pathDirection = new int[n];
+		pathKey = new int[n];
+		firstObject = new int[n];
+		Arrays.fill(pathKey, -1);
+		Arrays.fill(firstObject, -1);
+
+		Collections.addAll(words, RESERVED);
+		Collections.addAll(words, STANDARD_ALIASES);
+		Collections.addAll(words, STANDARD_DIRECTIONS);
+		directions = new String[settings.directions];
+		for (int i = 0; i < directions.length; i++)
+			directions[i] = (i < STANDARD_DIRECTIONS.length) ? STANDARD_DIRECTIONS[i] : newWord();
+		for (int i = 0; i < sentences.length; i++)
+			sentences[i] = newSentence();
+	}
+
+	private Walkthrough write(String prefix) throws IOException {
+		planPath();
+		keyCount = objectNames.size();
+		scatterObjects();
+		int synonymCount = writeSynonyms(Path.of(prefix + "Synonyms.txt"));
+		writeObjects(Path.of(prefix + "Objects.txt"));
+		writeRooms(Path.of(prefix + "Rooms.txt"));
+		Walkthrough walkthrough = writeTest(Path.of(prefix + "Test.txt"), prefix);
+		walkthrough.objectCount = objectNames.size();
+		walkthrough.synonymCount = synonymCount;
+		return walkthrough;
+	}
+
+	/**
+	 * Picks the FORCED rooms along the path, the direction of each step, and the
+	 * steps that need a key, placing each key in one of the rooms before it that
+	 * the player stops in.
+	 */
+	private void planPath() {
+		int chain = 0;
+		int[] stops = new int[8]; // the last few rooms the player stops in, as a ring
+		int stopCount = 0;
+		for (int r = 0; r < n; r++) {
+			// The first room is entered without moving, and the last one must be left by hand:
+			forced[r] = r > 0 && r < n - 1 && chain < settings.forcedLength && random.nextDouble() < settings.forced;
+			chain = forced[r] ? chain + 1 : 0;
+			if (forced[r]) continue;
+
+			pathDirection[r] = random.nextInt(directions.length);
+			if (stopCount > 0 && random.nextDouble() < settings.keyed) {
+				int home = stops[(stopCount - 1 - random.nextInt(Math.min(stopCount, stops.length))) % stops.length];
+				pathKey[r] = addObject(newWord(), home);
+			}
+			stops[stopCount++ % stops.length] = r;
+		}
+	}
+
+	private void scatterObjects() {
+		long count = (long) (settings.objects * n);
+		for (long i = 0; i < count; i++)
+			addObject(newWord(), random.nextInt(n));
+	}
+
+	private int addObject(String name, int room) {
+		int index = objectNames.size();
+		objectNames.add(name);
+		objectRooms.add(room);
+		nextObject.add(firstObject[room]);
+		firstObject[room] = index;
+		return index;
+	}
+
+	/**
+	 * Writes the synonyms: the usual one-letter ones for the usual directions,
+	 * then made-up ones for directions, objects and verbs picked at random.
+	 * @return is the number of synonyms written.
+	 */
+	private int writeSynonyms(Path file) throws IOException {
+		String[] verbs = { "TAKE", "DROP", "LOOK", "INVENTORY" };
+		int count = 0;
+		try (Writer out = newWriter(file)) {
+			for (int i = 0; i < STANDARD_ALIASES.length && i < directions.length; i++) {
+				addSynonym(out, STANDARD_ALIASES[i], directions[i]);
+				count++;
+			}
+			for (int i = 0; i < settings.synonyms; i++) {
+				int pick = random.nextInt(directions.length + objectNames.size() + verbs.length);
+				String word;
+				if (pick < directions.length) word = directions[pick];
+				else if (pick < directions.length + objectNames.size()) word = objectNames.get(pick - directions.length);
+				else word = verbs[pick - directions.length - objectNames.size()];
+				addSynonym(out, newWord(), word);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void addSynonym(Writer out, String alias, String word) throws IOException {
+		out.write(alias + "=" + word + "\n");
+		aliases.computeIfAbsent(word, w -> new ArrayList<>()).add(alias);
+	}
+
+	private void writeObjects(Path file) throws IOException {
+		try (Writer out = newWriter(file)) {
+			for (int i = 0; i < objectNames.size(); i++) {
+				String name = objectNames.get(i);
+				out.write(name);
+				out.write("\na ");
+				out.write(name.toLowerCase());
+				out.write((i < keyCount) ? " key\n" : " thing\n");
+				out.write(Integer.toString(objectRooms.get(i) + 1));
+				out.write("\n\n");
+			}
+		}
+	}
+
+	private void writeRooms(Path file) throws IOException {
+		boolean[] used = new boolean[directions.length];
+		try (Writer out = newWriter(file)) {
+			for (int r = 0; r < n; r++) {
+				out.write(Integer.toString(r + 1));
+				out.write('\n');
+				String sentence = sentences[random.nextInt(sentences.length)]; // named after its first word
+				out.write(sentence, 0, sentence.indexOf(' '));
+				out.write(' ');
+				out.write(PLACES[random.nextInt(PLACES.length)]);
+				out.write('\n');
+				for (int i = 0; i < settings.lines; i++) {
+					out.write(sentences[random.nextInt(sentences.length)]);
+					out.write('\n');
+				}
+				out.write("-----\n");
+
+				int next = (r == n - 1) ? 0 : r + 2; // room numbers count from 1; 0 wins the game.
+				if (forced[r]) {
+					out.write("FORCED " + next + "\n\n");
+					continue;
+				}
+				Arrays.fill(used, false);
+				int dir = pathDirection[r];
+				used[dir] = true;
+				if (pathKey[r] < 0) writeExit(out, directions[dir], next, null);
+				else {
+					writeExit(out, directions[dir], next, objectNames.get(pathKey[r]));
+					if (random.nextBoolean()) writeExit(out, directions[dir], random.nextInt(n) + 1, null);
+				}
+				for (int i = 1; i < settings.branching; i++) {
+					do dir = random.nextInt(directions.length); while (used[dir]);
+					used[dir] = true;
+					writeExit(out, directions[dir], random.nextInt(n) + 1, null);
+				}
+				out.write('\n');
+			}
+		}
+	}
+
+	private static void writeExit(Writer out, String direction, int room, String key) throws IOException {
+		out.write(direction);
+		out.write(' ');
+		out.write(Integer.toString(room));
+		if (key != null) {
+			out.write('/');
+			out.write(key);
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * Writes the walkthrough and works out where it should take the player.
+	 */
+	private Walkthrough writeTest(Path file, String prefix) throws IOException {
+		ArrayList<String> commands = new ArrayList<>();
+		IntList rooms = new IntList(), carried = new IntList();
+		IntList toDrop = new IntList();
+		int carrying = 0;
+
+		try (Writer out = newWriter(file)) {
+			out.write(prefix + "\n");
+			for (int r = 0; r < n; ) {
+				// Drop what was picked up in the room before, including the key used to get here:
+				for (int i = 0; i < toDrop.size(); i++) {
+					step(out, commands, rooms, carried, say("DROP") + " " + say(objectNames.get(toDrop.get(i))), r, --carrying);
+				}
+				toDrop.clear();
+
+				for (int obj = firstObject[r]; obj >= 0; obj = nextObject.get(obj)) {
+					boolean isKey = obj < keyCount;
+					if (!isKey && random.nextInt(4) != 0) continue;
+					step(out, commands, rooms, carried, say("TAKE") + " " + say(objectNames.get(obj)), r, ++carrying);
+					if (!isKey) toDrop.add(obj);
+				}
+				if (random.nextInt(16) == 0) step(out, commands, rooms, carried, say("LOOK"), r, carrying);
+				if (random.nextInt(16) == 0) step(out, commands, rooms, carried, say("INVENTORY"), r, carrying);
+
+				if (pathKey[r] >= 0) toDrop.add(pathKey[r]);
+				int next = r + 1;
+				while (next < n && forced[next]) next++;
+				step(out, commands, rooms, carried, say(directions[pathDirection[r]]), (next < n) ? next : -1, carrying);
+				r = next;
+			}
+		}
+
+		Walkthrough walkthrough = new Walkthrough();
+		walkthrough.commands = commands.toArray(new String[0]);
+		walkthrough.rooms = rooms.toArray();
+		walkthrough.carried = carried.toArray();
+		return walkthrough;
+	}
+
+	private static void step(Writer out, List<String> commands, IntList rooms, IntList carried,
+			String command, int room, int carrying) throws IOException {
+		out.write(command);
+		out.write('\n');
+		commands.add(command);
+		rooms.add(room);
+		carried.add(carrying);
+	}
+
+	/**
+	 * @return is a word, or one of its synonyms, as a player would type it.
+	 */
+	private String say(String word) {
+		List<String> options = aliases.get(word);
+		if (options == null || random.nextBoolean()) return word.toLowerCase();
+		return options.get(random.nextInt(options.size())).toLowerCase();
+	}
+
+	/* Method: check(prefix, walkthrough) */
+	/**
+	 * Plays a generated game's walkthrough, checking that every line leaves the
+	 * player where it should and that the last one wins the game.
+	 *
+	 * @usage String problem = AdventureWorldGenerator.check(prefix, walkthrough);
+	 * @param prefix is the path prefix of the game's files.
+	 * @param walkthrough is what generate returned for the game.
+	 * @return is a description of the first line that went wrong, or null if none did.
+	 */
+	public static String check(String prefix, Walkthrough walkthrough) throws IOException {
+		AdvWorld world = AdvWorld.readFromText(prefix);
+		if (world == null) return "The game has no Rooms file";
+		Adventure session = new Adventure(new Scanner(""), new AdvOutput() {
+			protected void write(CharSequence text) {}
+		});
+		session.start(world);
+		String[] commands = walkthrough.commands;
+		for (int i = 0; i < commands.length; i++) {
+			boolean going = session.execute(commands[i]);
+			boolean last = i == commands.length - 1;
+			if (going == last)
+				return "Line " + (i + 2) + " (" + commands[i] + ") " + (last ? "does not win the game" : "ends the game");
+			if (last) break;
+			if (session.getRoomIndex() != walkthrough.rooms[i])
+				return "Line " + (i + 2) + " (" + commands[i] + ") leads to room " + (session.getRoomIndex() + 1) +
+						" instead of " + (walkthrough.rooms[i] + 1);
+			if (session.getPlacement().getInventoryCount() != walkthrough.carried[i])
+				return "Line " + (i + 2) + " (" + commands[i] + ") leaves " + session.getPlacement().getInventoryCount() +
+						" objects carried instead of " + walkthrough.carried[i];
+		}
+		return null;
+	}
+
+	/**
+	 * @return is a made-up word of two to four syllables that has not been used yet.
+	 */
+	private String newWord() {
+		StringBuilder word = new StringBuilder(8);
+		do {
+			word.setLength(0);
+			int syllables = 2 + random.nextInt(3);
+			for (int i = 0; i < syllables; i++)
+				word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length()))).append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+		} while (!words.add(word.toString()));
+		return word.toString();
+	}
+
+	private String newSentence() {
+		StringBuilder sentence = new StringBuilder(64);
+		int length = 6 + random.nextInt(6);
+		for (int i = 0; i < length; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int s = 1 + random.nextInt(3); s > 0; s--)
+				word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length()))).append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+			if (i > 0) sentence.append(' ');
+			sentence.append(word.toString().toLowerCase());
+		}
+		sentence.setCharAt(0, Character.toUpperCase(sentence.charAt(0)));
+		return sentence.append('.').toString();
+	}
+
+	private static Writer newWriter(Path file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * A growable list of ints, so that a million rooms do not need a million Integers.
+	 */
+	private static final class IntList {
+		private int[] values = new int[16];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int get(int index) {
+			return values[index];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}